@@ -6,6 +6,7 @@ import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Scanner;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -24,7 +25,16 @@ public class ConfigHandler {
 		this.configFile = new File(FILE_NAME);
 	}
 	
+	// Configuration that is not read from a file, load() does nothing
+	public ConfigHandler(JSONObject json) {
+		this.json = json;
+	}
+	
 	public void load() {
+		if(configFile == null) {
+			return;
+		}
+		
 		Path configPath = configFile.toPath();
 		
 		if(!configFile.exists()) {
@@ -44,6 +54,20 @@ public class ConfigHandler {
 		}	
 	}
 	
+	// Reads the given file, or if there is none the configuration the program would use: the
+	// config.json in the working directory, or the default one if that does not exist either
+	public static JSONObject read(String file) throws IOException {
+		Path path = new File(file == null ? FILE_NAME : file).toPath();
+		if(file == null && !Files.exists(path)) {
+			try(InputStream in = ConfigHandler.class.getClassLoader().getResourceAsStream(FILE_NAME);
+					Scanner scanner = new Scanner(in, "UTF-8")) {
+				return new JSONObject(scanner.useDelimiter("\\A").next());
+			}
+		}
+		
+		return new JSONObject(new String(Files.readAllBytes(path), Charset.defaultCharset()));
+	}
+	
 	public JSONObject getJson() {
 		return json;
 	}
@@ -1,5 +1,9 @@
 package tech.mistermel.edisoncontrol;
 
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,13 +11,31 @@ import tech.mistermel.edisoncontrol.SystemHealthHandler.HealthStatus;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.HealthStatusType;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.Service;
 import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.navigation.map.ObstacleMap;
+import tech.mistermel.edisoncontrol.navigation.magnetometer.BNO055Interface;
+import tech.mistermel.edisoncontrol.navigation.magnetometer.MagnetometerProvider;
+import tech.mistermel.edisoncontrol.scheduler.Clock;
+import tech.mistermel.edisoncontrol.scheduler.LoopScheduler;
+import tech.mistermel.edisoncontrol.scheduler.ManualClock;
 import tech.mistermel.edisoncontrol.sensor.INA219Interface;
 import tech.mistermel.edisoncontrol.serial.DWMSerialInterface;
 import tech.mistermel.edisoncontrol.serial.SerialInterface;
+import tech.mistermel.edisoncontrol.simulation.Simulation;
+import tech.mistermel.edisoncontrol.startup.StartupOrchestrator;
+import tech.mistermel.edisoncontrol.telemetry.BlackBoxRecorder;
+import tech.mistermel.edisoncontrol.telemetry.TelemetryRecorder;
+import tech.mistermel.edisoncontrol.web.BootTimelineRoute;
+import tech.mistermel.edisoncontrol.web.LatencyRoute;
+import tech.mistermel.edisoncontrol.web.SchedulerStatsRoute;
+import tech.mistermel.edisoncontrol.web.SerialStatsRoute;
+import tech.mistermel.edisoncontrol.web.TelemetryRoute;
 import tech.mistermel.edisoncontrol.web.WebHandler;
 import tech.mistermel.edisoncontrol.web.WiFiConfigurationsRoute;
 import tech.mistermel.edisoncontrol.web.packet.ControlPacket;
 import tech.mistermel.edisoncontrol.web.packet.HeartbeatPacket;
+import tech.mistermel.edisoncontrol.web.packet.LatencyPacket;
+import tech.mistermel.edisoncontrol.web.packet.MapEditPacket;
+import tech.mistermel.edisoncontrol.web.packet.MapPacket;
 import tech.mistermel.edisoncontrol.web.packet.NavigationCreateWaypointPacket;
 import tech.mistermel.edisoncontrol.web.packet.NavigationTelemetryPacket;
 import tech.mistermel.edisoncontrol.web.packet.NavigationTogglePacket;
@@ -28,63 +50,184 @@ import tech.mistermel.edisoncontrol.web.packet.WiFiPacket;
 public class EdisonControl {
 
 	private static final Logger logger = LoggerFactory.getLogger(EdisonControl.class);
+	private static final int DEFAULT_SCHEDULER_THREADS = 2;
 	
-	private SerialInterface serialInterface;
-	private DWMSerialInterface dwmSerialInterface;
-	private WebHandler webHandler;
-	private ConfigHandler configHandler;
-	private ProcessHandler processHandler;
-	private WiFiHandler wifiHandler;
-	private NavigationHandler navHandler;
-	private SystemHealthHandler systemHealthHandler;
-	private INA219Interface ina219Interface;
+	// Assigned by the startup threads, but read from everywhere
+	private volatile SerialInterface serialInterface;
+	private volatile DWMSerialInterface dwmSerialInterface;
+	private volatile WebHandler webHandler;
+	private volatile ConfigHandler configHandler;
+	private volatile ProcessHandler processHandler;
+	private volatile WiFiHandler wifiHandler;
+	private volatile NavigationHandler navHandler;
+	private volatile SystemHealthHandler systemHealthHandler;
+	private volatile INA219Interface ina219Interface;
+	private volatile LoopScheduler scheduler;
+	private volatile TelemetryRecorder telemetryRecorder;
+	private volatile BlackBoxRecorder blackBoxRecorder;
+	private volatile MagnetometerProvider magnetometerProvider;
+	private volatile ObstacleMap obstacleMap;
+	private volatile Clock clock = Clock.SYSTEM;
+	private StartupOrchestrator startupOrchestrator;
 	
 	public void start() {
 		this.systemHealthHandler = new SystemHealthHandler();
+		this.startupOrchestrator = new StartupOrchestrator();
 		
-		this.configHandler = new ConfigHandler();
-		configHandler.load();
+		startupOrchestrator.addStage("config", () -> {
+			this.configHandler = new ConfigHandler();
+			configHandler.load();
+		});
 		
-		this.processHandler = new ProcessHandler();
-		this.wifiHandler = new WiFiHandler();
-		wifiHandler.load();
+		startupOrchestrator.addStage("scheduler", () -> {
+			JSONObject schedulerConfig = configHandler.getJson().optJSONObject("scheduler");
+			this.scheduler = new LoopScheduler(schedulerConfig == null ? DEFAULT_SCHEDULER_THREADS : schedulerConfig.optInt("threads", DEFAULT_SCHEDULER_THREADS), clock);
+			scheduler.start();
+		}, "config");
 		
-		this.serialInterface = new SerialInterface();
-		serialInterface.start();
+		startupOrchestrator.addStage("telemetry", () -> {
+			this.telemetryRecorder = new TelemetryRecorder(configHandler.getJson().optJSONObject("telemetry"));
+			this.blackBoxRecorder = new BlackBoxRecorder(configHandler.getJson().optJSONObject("blackbox"));
+			blackBoxRecorder.start();
+		}, "config", "scheduler");
 		
-		this.dwmSerialInterface = new DWMSerialInterface();
-		dwmSerialInterface.start();
+		startupOrchestrator.addStage("processes", () -> {
+			this.processHandler = new ProcessHandler();
+			this.wifiHandler = new WiFiHandler();
+			wifiHandler.load();
+		}, "config");
 		
-		this.ina219Interface = new INA219Interface();
+		startupOrchestrator.addStage("motherboard_serial", () -> {
+			this.serialInterface = new SerialInterface();
+			serialInterface.initialize();
+		}, "scheduler", "telemetry");
 		
-		this.webHandler = new WebHandler(configHandler.getJson().optInt("web_port", 8888));
-		webHandler.registerRoute("/wifiConfigs", new WiFiConfigurationsRoute());
-		webHandler.registerPacketType(ControlPacket.PACKET_NAME, ControlPacket.class);
-		webHandler.registerPacketType(HeartbeatPacket.PACKET_NAME, HeartbeatPacket.class);
-		webHandler.registerPacketType(NavigationCreateWaypointPacket.PACKET_NAME, NavigationCreateWaypointPacket.class);
-		webHandler.registerPacketType(NavigationTelemetryPacket.PACKET_NAME, NavigationTelemetryPacket.class);
-		webHandler.registerPacketType(NavigationTogglePacket.PACKET_NAME, NavigationTogglePacket.class);
-		webHandler.registerPacketType(NavigationWaypointsPacket.PACKET_NAME, NavigationWaypointsPacket.class);
-		webHandler.registerPacketType(ProcessTogglePacket.PACKET_NAME, ProcessTogglePacket.class);
-		webHandler.registerPacketType(RoutePacket.PACKET_NAME, RoutePacket.class);
-		webHandler.registerPacketType(SystemCommandPacket.PACKET_NAME, SystemCommandPacket.class);
-		webHandler.registerPacketType(SystemHealthPacket.PACKET_NAME, SystemHealthPacket.class);
-		webHandler.registerPacketType(TelemetryPacket.PACKET_NAME, TelemetryPacket.class);
-		webHandler.registerPacketType(WiFiPacket.PACKET_NAME, WiFiPacket.class);
-		webHandler.startWeb();
-		
-		this.navHandler = new NavigationHandler();
+		startupOrchestrator.addStage("dwm_serial", () -> {
+			this.dwmSerialInterface = new DWMSerialInterface();
+			dwmSerialInterface.initialize();
+		}, "scheduler", "telemetry");
+		
+		startupOrchestrator.addStage("ina219", () -> {
+			this.ina219Interface = new INA219Interface();
+		});
+		
+		startupOrchestrator.addStage("compass", () -> {
+			this.magnetometerProvider = new MagnetometerProvider(new BNO055Interface());
+			magnetometerProvider.initialize();
+		}, "scheduler", "telemetry");
+		
+		startupOrchestrator.addStage("map", () -> {
+			this.obstacleMap = new ObstacleMap(configHandler.getJson().optJSONObject("map"));
+			obstacleMap.load();
+		}, "config", "scheduler");
+		
+		startupOrchestrator.addStage("web", () -> {
+			this.webHandler = new WebHandler(configHandler.getJson().optInt("web_port", 8888));
+			webHandler.registerRoute("/wifiConfigs", new WiFiConfigurationsRoute());
+			webHandler.registerRoute("/serialStats", new SerialStatsRoute());
+			webHandler.registerRoute("/scheduler", new SchedulerStatsRoute());
+			webHandler.registerRoute("/telemetry", new TelemetryRoute());
+			webHandler.registerRoute("/boot", new BootTimelineRoute());
+			webHandler.registerRoute("/latency", new LatencyRoute());
+			webHandler.registerPacketType(ControlPacket.PACKET_NAME, ControlPacket.class);
+			webHandler.registerPacketType(HeartbeatPacket.PACKET_NAME, HeartbeatPacket.class);
+			webHandler.registerPacketType(LatencyPacket.PACKET_NAME, LatencyPacket.class);
+			webHandler.registerPacketType(MapEditPacket.PACKET_NAME, MapEditPacket.class);
+			webHandler.registerPacketType(MapPacket.PACKET_NAME, MapPacket.class);
+			webHandler.registerPacketType(NavigationCreateWaypointPacket.PACKET_NAME, NavigationCreateWaypointPacket.class);
+			webHandler.registerPacketType(NavigationTelemetryPacket.PACKET_NAME, NavigationTelemetryPacket.class);
+			webHandler.registerPacketType(NavigationTogglePacket.PACKET_NAME, NavigationTogglePacket.class);
+			webHandler.registerPacketType(NavigationWaypointsPacket.PACKET_NAME, NavigationWaypointsPacket.class);
+			webHandler.registerPacketType(ProcessTogglePacket.PACKET_NAME, ProcessTogglePacket.class);
+			webHandler.registerPacketType(RoutePacket.PACKET_NAME, RoutePacket.class);
+			webHandler.registerPacketType(SystemCommandPacket.PACKET_NAME, SystemCommandPacket.class);
+			webHandler.registerPacketType(SystemHealthPacket.PACKET_NAME, SystemHealthPacket.class);
+			webHandler.registerPacketType(TelemetryPacket.PACKET_NAME, TelemetryPacket.class);
+			webHandler.registerPacketType(WiFiPacket.PACKET_NAME, WiFiPacket.class);
+			webHandler.startWeb();
+		}, "scheduler", "telemetry");
+		
+		startupOrchestrator.addStage("navigation", () -> {
+			// Routes are planned on a thread of their own, so a slow plan does not hold up the scheduler or the web socket
+			this.navHandler = new NavigationHandler(magnetometerProvider, Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "RoutePlanner");
+				thread.setDaemon(true);
+				return thread;
+			}));
+		}, "motherboard_serial", "dwm_serial", "compass", "map", "web");
+		
+		startupOrchestrator.addStage("health", () -> {
+			systemHealthHandler.onStartupComplete();
+		}, "navigation", "processes", "ina219");
+		
+		if(!startupOrchestrator.run()) {
+			logger.error("Not all subsystems started, check the log above or /boot for details");
+		}
 		
 		Runtime.getRuntime().addShutdownHook(new Thread("ShutdownThread") {
 			@Override
 			public void run() {
 				logger.info("Shutting down");
-				processHandler.stopStreamProcess();
-				processHandler.stopLightingProcess();
+				if(processHandler != null) {
+					processHandler.stopStreamProcess();
+					processHandler.stopLightingProcess();
+				}
 			}
 		});
+	}
+	
+	// The parts of the system the navigation stack needs, without the webserver and the hardware.
+	// Everything is set up on the calling thread and on the given clock, after that nothing runs
+	// until the scheduler is advanced with runUntil().
+	private void initializeHeadless(JSONObject config, ManualClock clock) {
+		this.clock = clock;
+		this.systemHealthHandler = new SystemHealthHandler();
+		this.configHandler = new ConfigHandler(config);
+		
+		this.scheduler = new LoopScheduler(0, clock);
+		this.telemetryRecorder = new TelemetryRecorder(configHandler.getJson().optJSONObject("telemetry"));
+		this.blackBoxRecorder = new BlackBoxRecorder(configHandler.getJson().optJSONObject("blackbox"));
+		blackBoxRecorder.start();
 		
-		systemHealthHandler.onStartupComplete();
+		// Never started, so packets are not sent anywhere
+		this.webHandler = new WebHandler(configHandler.getJson().optInt("web_port", 8888));
+	}
+	
+	// Starts the navigation stack against simulated hardware
+	private void initializeSimulation(JSONObject config, Simulation simulation) {
+		this.initializeHeadless(simulation.configure(config), simulation.getClock());
+		simulation.start(scheduler);
+		
+		this.serialInterface = new SerialInterface();
+		serialInterface.initialize();
+		this.dwmSerialInterface = new DWMSerialInterface();
+		dwmSerialInterface.initialize();
+		this.magnetometerProvider = new MagnetometerProvider(simulation.getMagnetometer());
+		magnetometerProvider.initialize();
+		
+		this.obstacleMap = new ObstacleMap(configHandler.getJson().optJSONObject("map"));
+		obstacleMap.load();
+		// Routes are planned right away on the calling thread, so runs do not depend on thread timing
+		this.navHandler = new NavigationHandler(magnetometerProvider, Runnable::run);
+	}
+	
+	// Starts the navigation stack without any devices, the readings are passed in by the replay.
+	// The serial interfaces are not initialized, so nothing is written to a port.
+	private void initializeReplay(JSONObject config, ManualClock clock, Supplier<SerialInterface> serialInterface) {
+		this.initializeHeadless(config, clock);
+		
+		this.serialInterface = serialInterface.get();
+		this.dwmSerialInterface = new DWMSerialInterface();
+		// Headings are passed to the navigation handler directly, there is no compass to read
+		this.magnetometerProvider = new MagnetometerProvider(null);
+		
+		this.obstacleMap = new ObstacleMap(configHandler.getJson().optJSONObject("map"));
+		obstacleMap.load();
+		this.navHandler = new NavigationHandler(magnetometerProvider, Runnable::run);
+	}
+	
+	public boolean isStartupComplete() {
+		return startupOrchestrator.isComplete();
 	}
 	
 	public SerialInterface getSerialInterface() {
@@ -123,6 +266,31 @@ public class EdisonControl {
 		return ina219Interface;
 	}
 	
+	public LoopScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	public TelemetryRecorder getTelemetryRecorder() {
+		return telemetryRecorder;
+	}
+	
+	public BlackBoxRecorder getBlackBoxRecorder() {
+		return blackBoxRecorder;
+	}
+	
+	public ObstacleMap getObstacleMap() {
+		return obstacleMap;
+	}
+	
+	// Time source of the control loops, the system clock unless running in a simulation
+	public Clock getClock() {
+		return clock;
+	}
+	
+	public StartupOrchestrator getStartupOrchestrator() {
+		return startupOrchestrator;
+	}
+	
 	private static EdisonControl instance;
 	
 	public static void main(String[] args) {
@@ -130,6 +298,20 @@ public class EdisonControl {
 		instance.start();
 	}
 	
+	// Replaces the current instance, so simulations can only run one at a time
+	public static EdisonControl startSimulation(JSONObject config, Simulation simulation) {
+		instance = new EdisonControl();
+		instance.initializeSimulation(config, simulation);
+		return instance;
+	}
+	
+	// Like startSimulation(), the serial interface is created once the instance exists
+	public static EdisonControl startReplay(JSONObject config, ManualClock clock, Supplier<SerialInterface> serialInterface) {
+		instance = new EdisonControl();
+		instance.initializeReplay(config, clock, serialInterface);
+		return instance;
+	}
+	
 	public static EdisonControl getInstance() {
 		return instance;
 	}
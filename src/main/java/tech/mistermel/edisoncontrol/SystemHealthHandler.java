@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 
 import tech.mistermel.edisoncontrol.navigation.magnetometer.MagnetometerProvider;
 import tech.mistermel.edisoncontrol.navigation.magnetometer.SystemStatus;
+import tech.mistermel.edisoncontrol.scheduler.MissedDeadlinePolicy;
 import tech.mistermel.edisoncontrol.serial.DWMSerialInterface;
 import tech.mistermel.edisoncontrol.serial.SerialInterface;
 import tech.mistermel.edisoncontrol.web.WebHandler;
@@ -16,6 +17,7 @@ import tech.mistermel.edisoncontrol.web.packet.SystemHealthPacket;
 public class SystemHealthHandler {
 
 	private static final Logger logger = LoggerFactory.getLogger(SystemHealthHandler.class);
+	private static final int MONITOR_INTERVAL = 500;
 	
 	public enum HealthStatusType {
 		UNKNOWN, DISABLED, INITIALIZING, RUNNING, STOPPING, FAULT, REQUIRES_ATTENTION;	
@@ -74,7 +76,10 @@ public class SystemHealthHandler {
 		}
 	}
 	
-	private Map<Service, HealthStatus> statuses = new EnumMap<>(Service.class);
+	// Stages start in parallel and transports report from their own threads, so the map is only
+	// accessed while holding the lock of the handler. Sending happens under the lock as well, so
+	// packets go out in the order of the changes.
+	private final Map<Service, HealthStatus> statuses = new EnumMap<>(Service.class);
 	
 	public SystemHealthHandler() {
 		for(Service service : Service.values()) {
@@ -83,16 +88,16 @@ public class SystemHealthHandler {
 	}
 	
 	public void onStartupComplete() {
-		new SystemHealthMonitorThread().start();
+		EdisonControl.getInstance().getScheduler().schedule("health_monitor", MONITOR_INTERVAL, MissedDeadlinePolicy.SKIP, this::monitor);
 	}
 	
-	public void sendPacket() {
+	public synchronized void sendPacket() {
 		WebHandler webHandler = EdisonControl.getInstance().getWebHandler();
 		if(webHandler == null) {
 			return;
 		}
 		
-		SystemHealthPacket packet = new SystemHealthPacket(statuses);
+		SystemHealthPacket packet = new SystemHealthPacket(new EnumMap<>(statuses));
 		webHandler.sendPacket(packet);
 	}
 	
@@ -100,73 +105,55 @@ public class SystemHealthHandler {
 		this.setStatus(service, new HealthStatus(statusType));
 	}
 	
-	public void setStatus(Service service, HealthStatus status) {
+	public synchronized void setStatus(Service service, HealthStatus status) {
 		logger.debug("New status for service {}: {} ({})", service.name(), status.getType().name(), status.hasExtraInfo() ? status.getExtraInfo() : "no extra info");
 		
 		statuses.put(service, status);
 		this.sendPacket();
 	}
 	
-	public HealthStatusType getStatus(Service service) {
+	public synchronized HealthStatusType getStatus(Service service) {
 		return statuses.get(service).getType();
 	}
 	
-	public Map<Service, HealthStatus> getStatuses() {
-		return statuses;
+	public synchronized Map<Service, HealthStatus> getStatuses() {
+		return new EnumMap<>(statuses);
 	}
 	
-	public class SystemHealthMonitorThread extends Thread {
+	private void monitor() {
+		SerialInterface serialInterface = EdisonControl.getInstance().getSerialInterface();
+		DWMSerialInterface dwmSerialInterface = EdisonControl.getInstance().getDWMSerialInterface();
+		MagnetometerProvider magProvider = EdisonControl.getInstance().getNavHandler().getMagnetometerProvider();
+		
+		HealthStatusType moboStatus = getStatus(Service.SERIAL_MOBO);
+		if(moboStatus != HealthStatusType.FAULT && !serialInterface.isCommunicationWorking()) {
+			logger.warn("Motherboard serial communication not working, setting FAULT state");
+			setStatus(Service.SERIAL_MOBO, new HealthStatus(HealthStatusType.FAULT, "Communication interrupted"));
+		} else if(moboStatus == HealthStatusType.FAULT && serialInterface.isCommunicationWorking()) {
+			logger.info("Motherboard serial communication working normally, setting RUNNING state");
+			setStatus(Service.SERIAL_MOBO, HealthStatusType.RUNNING);
+		}
 		
-		public SystemHealthMonitorThread() {
-			super("SystemHealthMonitorThread");
+		HealthStatusType dwmStatus = getStatus(Service.SERIAL_DWM);
+		if(dwmStatus != HealthStatusType.FAULT && !dwmSerialInterface.isCommunicationWorking()) {
+			logger.warn("DWM serial communication not working, setting FAULT state");
+			setStatus(Service.SERIAL_DWM, new HealthStatus(HealthStatusType.FAULT, "Communication interrupted"));
+		} else if(dwmStatus == HealthStatusType.FAULT && dwmSerialInterface.isCommunicationWorking()) {
+			logger.info("DWM serial communication working normally, setting RUNNING state");
+			setStatus(Service.SERIAL_DWM, HealthStatusType.RUNNING);
 		}
 		
-		@Override
-		public void run() {
-			SerialInterface serialInterface = EdisonControl.getInstance().getSerialInterface();
-			DWMSerialInterface dwmSerialInterface = EdisonControl.getInstance().getDWMSerialInterface();
-			MagnetometerProvider magProvider = EdisonControl.getInstance().getNavHandler().getMagnetometerProvider();
-			
-			while(true) {	
-				try {
-					HealthStatusType moboStatus = getStatus(Service.SERIAL_MOBO);
-					if(moboStatus != HealthStatusType.FAULT && !serialInterface.isCommunicationWorking()) {
-						logger.warn("Motherboard serial communication not working, setting FAULT state");
-						setStatus(Service.SERIAL_MOBO, new HealthStatus(HealthStatusType.FAULT, "Communication interrupted"));
-					} else if(moboStatus == HealthStatusType.FAULT && serialInterface.isCommunicationWorking()) {
-						logger.info("Motherboard serial communication working normally, setting RUNNING state");
-						setStatus(Service.SERIAL_MOBO, HealthStatusType.RUNNING);
-					}
-					
-					HealthStatusType dwmStatus = getStatus(Service.SERIAL_DWM);
-					if(dwmStatus != HealthStatusType.FAULT && !dwmSerialInterface.isCommunicationWorking()) {
-						logger.warn("DWM serial communication not working, setting FAULT state");
-						setStatus(Service.SERIAL_DWM, new HealthStatus(HealthStatusType.FAULT, "Communication interrupted"));
-					} else if(dwmStatus == HealthStatusType.FAULT && dwmSerialInterface.isCommunicationWorking()) {
-						logger.info("DWM serial communication working normally, setting RUNNING state");
-						setStatus(Service.SERIAL_DWM, HealthStatusType.RUNNING);
-					}
-					
-					HealthStatusType bnoStatus = getStatus(Service.BNO055);
-					SystemStatus bnoCalib = magProvider.getStatus();
-					if(bnoCalib != null) {
-						if(bnoStatus == HealthStatusType.RUNNING && !bnoCalib.isCompletelyCalibrated()) {
-							logger.warn("BNO055 is not completely calibrated, setting REQUIRES_ATTENTION state");
-							setStatus(Service.BNO055, new HealthStatus(HealthStatusType.REQUIRES_ATTENTION, "Not fully calibrated"));
-						} else if(bnoStatus == HealthStatusType.REQUIRES_ATTENTION && bnoCalib.isCompletelyCalibrated()) {
-							logger.info("BNO055 calibration complete, setting RUNNING state");
-							setStatus(Service.BNO055, HealthStatusType.RUNNING);
-						}
-					}
-					
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					logger.error("System health monitor thread interrupted", e);
-					Thread.currentThread().interrupt();
-				}
+		HealthStatusType bnoStatus = getStatus(Service.BNO055);
+		SystemStatus bnoCalib = magProvider.getStatus();
+		if(bnoCalib != null) {
+			if(bnoStatus == HealthStatusType.RUNNING && !bnoCalib.isCompletelyCalibrated()) {
+				logger.warn("BNO055 is not completely calibrated, setting REQUIRES_ATTENTION state");
+				setStatus(Service.BNO055, new HealthStatus(HealthStatusType.REQUIRES_ATTENTION, "Not fully calibrated"));
+			} else if(bnoStatus == HealthStatusType.REQUIRES_ATTENTION && bnoCalib.isCompletelyCalibrated()) {
+				logger.info("BNO055 calibration complete, setting RUNNING state");
+				setStatus(Service.BNO055, HealthStatusType.RUNNING);
 			}
 		}
-		
 	}
 	
 }
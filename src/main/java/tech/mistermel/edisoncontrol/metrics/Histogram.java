@@ -0,0 +1,105 @@
+package tech.mistermel.edisoncontrol.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class Histogram {
+
+	// Bucket 0 holds values below 1us, bucket n holds values in [2^(n-1), 2^n) us.
+	// The last bucket also holds everything above 2^(BUCKETS-2) us (~18 minutes).
+	private static final int BUCKETS = 32;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+		
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		
+		long currentMax;
+		while(nanos > (currentMax = max.get())) {
+			if(max.compareAndSet(currentMax, nanos)) {
+				break;
+			}
+		}
+	}
+	
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	public long getMaxNanos() {
+		return max.get();
+	}
+	
+	public long getMeanNanos() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / n;
+	}
+	
+	// Returns the upper bound of the bucket the percentile falls in, so the
+	// result is accurate to within a factor of two.
+	public long getPercentileMicros(double percentile) {
+		long n = count.get();
+		if(n == 0) {
+			return 0;
+		}
+		
+		long threshold = (long) Math.ceil(n * percentile / 100.0);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if(seen >= threshold) {
+				return i == 0 ? 1 : 1L << i;
+			}
+		}
+		
+		return 1L << (BUCKETS - 1);
+	}
+	
+	public JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("count", getCount());
+		json.put("meanUs", TimeUnit.NANOSECONDS.toMicros(getMeanNanos()));
+		json.put("maxUs", TimeUnit.NANOSECONDS.toMicros(getMaxNanos()));
+		json.put("p50Us", getPercentileMicros(50));
+		json.put("p99Us", getPercentileMicros(99));
+		
+		int last = BUCKETS - 1;
+		while(last > 0 && buckets.get(last) == 0) {
+			last--;
+		}
+		
+		JSONArray bucketsJson = new JSONArray();
+		for(int i = 0; i <= last; i++) {
+			bucketsJson.put(buckets.get(i));
+		}
+		json.put("buckets", bucketsJson);
+		
+		return json;
+	}
+	
+}
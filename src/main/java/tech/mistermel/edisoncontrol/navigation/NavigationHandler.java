@@ -1,7 +1,13 @@
 package tech.mistermel.edisoncontrol.navigation;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -10,10 +16,17 @@ import org.slf4j.LoggerFactory;
 import tech.mistermel.edisoncontrol.EdisonControl;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.HealthStatusType;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.Service;
-import tech.mistermel.edisoncontrol.navigation.magnetometer.BNO055Interface;
+import tech.mistermel.edisoncontrol.metrics.Histogram;
 import tech.mistermel.edisoncontrol.navigation.magnetometer.MagnetometerProvider;
+import tech.mistermel.edisoncontrol.navigation.map.ObstacleMap;
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath;
 import tech.mistermel.edisoncontrol.navigation.route.CardinalSplineRoute;
+import tech.mistermel.edisoncontrol.navigation.route.GridPlannerRoute;
+import tech.mistermel.edisoncontrol.navigation.route.PackedRoute;
+import tech.mistermel.edisoncontrol.navigation.route.RouteChange;
 import tech.mistermel.edisoncontrol.navigation.route.RouteProvider;
+import tech.mistermel.edisoncontrol.scheduler.MissedDeadlinePolicy;
+import tech.mistermel.edisoncontrol.serial.ControlSource;
 import tech.mistermel.edisoncontrol.web.packet.NavigationTelemetryPacket;
 import tech.mistermel.edisoncontrol.web.packet.NavigationTogglePacket;
 import tech.mistermel.edisoncontrol.web.packet.NavigationWaypointsPacket;
@@ -23,145 +36,269 @@ public class NavigationHandler {
 
 	private static final Logger logger = LoggerFactory.getLogger(NavigationHandler.class);
 	private static final int UPDATES_PER_SECOND = 10;
-	private static final int ROTATE_IN_PLACE_TRESHOLD = 45;
-	private static final int SPEED = 200;
+	private static final float WAYPOINT_TOLERANCE = 0.3f;
+	private static final int DEFAULT_POSE_RATE = 50;
+	private static final long REPLAN_DELAY = TimeUnit.MILLISECONDS.toNanos(250);
 	
 	private MagnetometerProvider magnetometerProvider;
-	private NavigationThread thread;
+	private PoseEstimator poseEstimator;
 	
+	// Only used on the planner, which runs one plan at a time, the route provider is not thread safe
 	private RouteProvider routeProvider;
-	private List<Location> splinePoints;
+	private final Executor planner;
+	private PurePursuitFollower follower;
+	private final AtomicBoolean replanPending = new AtomicBoolean();
+	private final AtomicBoolean planQueued = new AtomicBoolean();
 	
-	private boolean isActive = false;
-	private List<Waypoint> waypoints = new ArrayList<>();
-	
-	private Location currentLoc = new Location();
-	private float heading;
+	private volatile boolean isActive = false;
 	
+	// The waypoints as edited from the interface. The route for them is planned on the planner,
+	// the version tells whether they have been edited again in the meantime.
+	// Guarded by this handler.
+	private List<Waypoint> waypoints = Collections.emptyList();
 	private Waypoint target;
-	private float targetHeading, targetDistance;
+	private long routeVersion;
+	
+	// Replaced as a whole on every change, so the navigation loop can read it without locking.
+	// Changes are made while synchronized on this handler.
+	private volatile NavigationState state = NavigationState.EMPTY;
 	
-	public NavigationHandler() {
+	// How old each kind of sensor data is when a tick starts, and how long the tick then takes
+	private final Histogram positionAge = new Histogram();
+	private final Histogram headingAge = new Histogram();
+	private final Histogram feedbackAge = new Histogram();
+	private final Histogram tickTime = new Histogram();
+	
+	// Routes are planned on the given executor, the planner can take a while on a large map
+	public NavigationHandler(MagnetometerProvider magnetometerProvider, Executor planner) {
+		this.magnetometerProvider = magnetometerProvider;
+		this.planner = planner;
+		
 		JSONObject configSection = EdisonControl.getInstance().getConfigHandler().getJson().optJSONObject("navigation");
+		JSONObject poseSection = configSection == null ? null : configSection.optJSONObject("pose_estimator");
+		
+		this.poseEstimator = new PoseEstimator(poseSection);
+		if(!magnetometerProvider.isInitialized()) {
+			// Without a compass the heading can only be estimated from odometry, so start out facing north
+			poseEstimator.setHeading(0);
+		}
+		
+		int poseRate = poseSection == null ? DEFAULT_POSE_RATE : poseSection.optInt("rate", DEFAULT_POSE_RATE);
+		EdisonControl.getInstance().getScheduler().schedule("pose_estimator", 1000 / poseRate, MissedDeadlinePolicy.SKIP, this::updatePose);
+		
 		if(configSection == null) {
 			logger.warn("No 'navigation' configuration section present in config.json - this will cause errors!");
 			return;
 		}
 		
-		this.routeProvider = new CardinalSplineRoute(configSection.optInt("points_per_segment", 50));
+		this.routeProvider = this.createRouteProvider(configSection);
+		this.follower = new PurePursuitFollower(configSection.optJSONObject("follower"), poseEstimator.getTrackWidth(), poseEstimator.getWheelCircumference());
 		
-		this.magnetometerProvider = new MagnetometerProvider(new BNO055Interface());
-		magnetometerProvider.start();
+		EdisonControl.getInstance().getScheduler().schedule("navigation", 1000 / UPDATES_PER_SECOND, MissedDeadlinePolicy.SKIP, () -> {
+			if(isActive) {
+				tick();
+			}
+		});
+	}
+	
+	private RouteProvider createRouteProvider(JSONObject configSection) {
+		RouteProvider spline = new CardinalSplineRoute(configSection.optFloat("max_error", 0.01f));
+		
+		String type = configSection.optString("route_provider", "spline");
+		if(type.equals("grid_planner")) {
+			ObstacleMap obstacleMap = EdisonControl.getInstance().getObstacleMap();
+			if(obstacleMap == null) {
+				logger.warn("Obstacle map not loaded, planning routes without it");
+				return spline;
+			}
+			
+			JSONObject plannerSection = configSection.optJSONObject("planner");
+			float robotRadius = plannerSection == null ? 0.3f : plannerSection.optFloat("robot_radius", 0.3f);
+			return new GridPlannerRoute(spline, obstacleMap, robotRadius);
+		}
 		
-		this.thread = new NavigationThread();
-		thread.start();
+		if(!type.equals("spline")) {
+			logger.warn("Unknown route provider '{}', using spline", type);
+		}
+		return spline;
 	}
 	
-	private class NavigationThread extends Thread {
+	private void updatePose() {
+		Pose pose = poseEstimator.update(EdisonControl.getInstance().getClock().nanoTime());
+		if(pose.isValid()) {
+			EdisonControl.getInstance().getTelemetryRecorder().getPose().record(pose.getTimestamp(), pose.getX(), pose.getY(), pose.getHeading(), pose.getVelocity());
+		}
+	}
+	
+	private void tick() {
+		long tickStart = EdisonControl.getInstance().getClock().nanoTime();
 		
-		public NavigationThread() {
-			super("NavigationThread");
+		if(!EdisonControl.getInstance().getDWMSerialInterface().isCommunicationWorking()) {
+			logger.warn("DWM serial is not working! Exiting navigation mode.");
+			setActive(false);
+			EdisonControl.setStatus(Service.NAVIGATION, HealthStatusType.FAULT, "DWM serial not working");
+			return;
 		}
 		
-		@Override
-		public void run() {		
-			int millisDelay = 1000 / UPDATES_PER_SECOND;
-			while(true) {
-				long startTime = System.currentTimeMillis();
-				
-				if(isActive) {
-					tick();
-				}
-				
-				try {
-					long timeLeft = (startTime + millisDelay) - System.currentTimeMillis();
-					if(timeLeft < 0) {
-						logger.warn("Navigation handler cannot keep up! This tick took {}ms, absolute maximum should be {}ms", (System.currentTimeMillis() - startTime), millisDelay);
-						timeLeft = 0;
-					}
-					
-					Thread.sleep(timeLeft);
-				} catch (InterruptedException e) {
-					logger.error("Interrupted in navigation loop", e);
-					Thread.currentThread().interrupt();
-				}
-			}
+		Pose pose = poseEstimator.getPose();
+		if(!pose.isValid()) {
+			logger.debug("No valid pose estimate yet, waiting");
+			setControls(0, 0);
+			return;
 		}
 		
-		private void tick() {
-			if(!EdisonControl.getInstance().getDWMSerialInterface().isCommunicationWorking()) {
-				logger.warn("DWM serial is not working! Exiting navigation mode.");
-				setActive(false);
-				EdisonControl.setStatus(Service.NAVIGATION, HealthStatusType.FAULT, "DWM serial not working");
-				return;
-			}
-			
-			NavigationTelemetryPacket packet = new NavigationTelemetryPacket(currentLoc.getX(), currentLoc.getY(), targetDistance, (int) heading, (int) targetHeading);
-			EdisonControl.getInstance().getWebHandler().sendPacket(packet);
+		long positionTime = poseEstimator.getPositionTime();
+		long headingTime = poseEstimator.getHeadingTime();
+		long wheelSpeedTime = poseEstimator.getWheelSpeedTime();
+		recordAge(positionAge, tickStart, positionTime);
+		recordAge(headingAge, tickStart, headingTime);
+		recordAge(feedbackAge, tickStart, wheelSpeedTime);
+		
+		// The command is as old as the oldest reading that went into the pose
+		long sensorTime = oldest(oldest(positionTime, headingTime), wheelSpeedTime);
+		
+		// Read the state once, so the whole tick works with the same waypoints and route
+		NavigationState state = this.state;
+		if(follower.getPath() != state.getPath()) {
+			follower.setPath(state.getPath());
+		}
+		
+		boolean driving = follower.update(pose);
+		float targetHeading = (float) pose.headingTo(follower.getLookaheadX(), follower.getLookaheadY());
+		float targetDistance = 0;
+		
+		// Waypoints are only kept track of for the interface, the follower drives along the whole route.
+		// The route may cut past a waypoint, so it also counts as reached once the robot has passed it.
+		Waypoint target = state.getTarget();
+		if(target != null) {
+			targetDistance = (float) pose.distanceTo(target.getX(), target.getY());
 			
-			if(targetDistance < 0.3) {
+			if(targetDistance < WAYPOINT_TOLERANCE || follower.getProgress() > state.getTargetDistanceAlong()) {
 				logger.info("Waypoint reached");
-				waypoints.remove(target);
-				
-				if(waypoints.isEmpty()) {
-					target = null;
-					targetHeading = 0;
-					targetDistance = 0;
-					
-					sendWaypoints();
-					setActive(false);
-					
-					logger.info("Navigation finished");
-					return;
-				}
-				
-				setTargetedWaypoint(waypoints.get(0));
-			}
-			
-			double headingDistance = getHeadingDistance(heading, targetHeading);
-			int steer = (int) headingDistance * 5;
-			
-			if(steer > SPEED) {
-				steer = SPEED;
-			} else if(steer < -SPEED) {
-				steer = -SPEED;
-			}
-			
-			if(Math.abs(headingDistance) >= ROTATE_IN_PLACE_TRESHOLD) {
-				setControls(0, steer);
-				return;
+				this.onWaypointReached(target);
 			}
+		}
+		
+		NavigationTelemetryPacket packet = new NavigationTelemetryPacket(pose.getX(), pose.getY(), targetDistance, (int) pose.getHeading(), (int) targetHeading,
+				follower.getLookaheadX(), follower.getLookaheadY(), follower.getCrossTrackError(), follower.getProgress(), follower.getLength(), follower.getEta());
+		EdisonControl.getInstance().getWebHandler().sendPacket(packet);
+		
+		if(!driving) {
+			onNavigationFinished();
+			setActive(false);
 			
-			setControls(SPEED, steer);
+			logger.info("Navigation finished");
+			return;
 		}
 		
-		private double getHeadingDistance(float a, float b) {
-			double left = a - b;
-			double right = b - a;
-			if(left < 0) left += 360;
-			if(right < 0) right += 360;
-			return left < right ? -left : right;
+		tickTime.record(EdisonControl.getInstance().getClock().nanoTime() - tickStart);
+		
+		setControls(follower.getSpeedCommand(), follower.getSteerCommand(), false, sensorTime);
+	}
+	
+	private static void recordAge(Histogram histogram, long now, long time) {
+		if(time != 0) {
+			histogram.record(now - time);
 		}
+	}
+	
+	private static long oldest(long a, long b) {
+		if(a == 0 || b == 0) {
+			return a == 0 ? b : a;
+		}
+		return a - b < 0 ? a : b;
+	}
+	
+	private synchronized void onWaypointReached(Waypoint waypoint) {
+		List<Waypoint> stateWaypoints = new ArrayList<>(state.getWaypoints());
+		if(!stateWaypoints.remove(waypoint)) {
+			// Already removed from the interface in the meantime
+			return;
+		}
+		this.state = state.withWaypoints(stateWaypoints, stateWaypoints.isEmpty() ? null : stateWaypoints.get(0));
+		
+		// The route does not change, so this does not need another plan
+		List<Waypoint> waypoints = new ArrayList<>(this.waypoints);
+		waypoints.remove(waypoint);
+		this.waypoints = waypoints;
+		this.target = waypoints.isEmpty() ? null : waypoints.get(0);
 		
+		if(target != null) {
+			logger.info("New waypoint target (index: 0, x: {}, y: {})", target.getX(), target.getY());
+		}
+		
+		this.sendWaypoints();
 	}
 	
-	private void initialize() {
-		// Nothing implemented yet
+	private synchronized void onNavigationFinished() {
+		this.waypoints = Collections.emptyList();
+		this.target = null;
+		this.state = state.withWaypoints(Collections.emptyList(), null);
+		this.sendWaypoints();
+	}
+	
+	// Called after every edit of the waypoints, the route for them is planned later
+	private void setWaypoints(List<Waypoint> waypoints, Waypoint target) {
+		this.waypoints = waypoints;
+		this.target = target;
+		this.routeVersion++;
+		this.sendWaypoints();
 	}
 	
-	private void updateRoute() {
+	// Any number of requests made before the planner gets to it result in a single plan
+	private void requestPlan() {
+		if(routeProvider != null && planQueued.compareAndSet(false, true)) {
+			planner.execute(this::planRoute);
+		}
+	}
+	
+	// Waypoints are dragged and obstacles are drawn in strokes of many edits, so the route is only
+	// planned again once it is over
+	private void requestReplan() {
+		if(!replanPending.compareAndSet(false, true)) {
+			return;
+		}
+		
+		EdisonControl.getInstance().getScheduler().scheduleOnce("route_replan", REPLAN_DELAY, () -> {
+			replanPending.set(false);
+			this.requestPlan();
+		});
+	}
+	
+	// Runs on the planner. Plans the route for the latest waypoints without holding the lock,
+	// then publishes it together with them, unless they have been edited again in the meantime.
+	private void planRoute() {
+		planQueued.set(false);
+		
+		List<Waypoint> waypoints;
+		long version;
+		synchronized(this) {
+			waypoints = this.waypoints;
+			version = this.routeVersion;
+		}
+		
+		RouteChange change = routeProvider.updateWaypoints(waypoints);
+		
+		// The path is made from the points the provider keeps, only the changed points are copied for the interface
+		PackedRoute addedPoints = null;
+		ArcLengthPath path = null;
 		if(waypoints.size() >= 2) {
-			routeProvider.importWaypoints(waypoints);
-			this.splinePoints = routeProvider.calculatePoints();
-		} else {
-			this.splinePoints = null;
+			addedPoints = routeProvider.calculatePoints(change.getFirstPoint(), change.getFirstPoint() + change.getAddedPoints());
+			path = routeProvider.createPath();
 		}
 		
-		RoutePacket routePacket = new RoutePacket(splinePoints);
+		synchronized(this) {
+			if(version == routeVersion) {
+				this.state = new NavigationState(this.waypoints, target, path);
+			}
+		}
+		
+		// Always sent, the interface applies the changes one after another
+		RoutePacket routePacket = new RoutePacket(addedPoints, change);
 		EdisonControl.getInstance().getWebHandler().sendPacket(routePacket);
 	}
 	
-	public void setTargetedWaypoint(Waypoint waypoint) {
+	public synchronized void setTargetedWaypoint(Waypoint waypoint) {
 		int waypointIndex = waypoints.indexOf(waypoint);
 		if(waypointIndex == -1) {
 			logger.warn("Cannot target waypoint, is not in waypoint list");
@@ -169,89 +306,134 @@ public class NavigationHandler {
 		}
 		
 		this.target = waypoint;
-		logger.info("New waypoint target (index: {}, x: {}, y: {})", waypointIndex, target.getX(), target.getY());
+		if(state.getWaypoints().contains(waypoint)) {
+			this.state = state.withTarget(waypoint);
+		}
+		logger.info("New waypoint target (index: {}, x: {}, y: {})", waypointIndex, waypoint.getX(), waypoint.getY());
 		
 		this.sendWaypoints();
 	}
 	
-	public void onPositionReceived(float x, float y) {
-		currentLoc.setX(x);
-		currentLoc.setY(y);
-		
-		if(target != null) {
-			this.targetHeading = calculateTargetHeading(x, y, target.getX(), target.getY());
-			this.targetDistance = calculateDistance(x, y, target.getX(), target.getY());
-		}
+	// The received times are stamps from the clock of the scheduler, taken as soon as the data arrived
+	public void onPositionReceived(float x, float y, int quality, long receivedTime) {
+		poseEstimator.onPosition(x, y, quality, receivedTime);
 	}
 	
-	public void onHeadingReceived(float heading) {
-		this.heading = heading;
+	public void onWheelSpeedsReceived(int speedR, int speedL, long receivedTime) {
+		poseEstimator.onWheelSpeeds(speedR, speedL, receivedTime);
 	}
 	
-	private float calculateTargetHeading(float originX, float originY, float targetX, float targetY) {
-		double radians = Math.atan2(targetY - originY, targetX - originX);
-		return (float) Math.toDegrees(radians) + 90;
+	public void onHeadingReceived(float heading, long receivedTime) {
+		poseEstimator.onHeading(heading, receivedTime);
 	}
 	
-	private float calculateDistance(float originX, float originY, float targetX, float targetY) {
-		return (float) Math.sqrt(Math.pow(originX - targetX, 2) + Math.pow(originY - targetY, 2));
+	public void onTurnRateReceived(float turnRate, long receivedTime) {
+		poseEstimator.onTurnRate(turnRate, receivedTime);
 	}
 	
 	public Waypoint createWaypoint(float x, float y) {
 		logger.debug("Creating waypoint at x: {}, y: {}", x, y);
 		
 		Waypoint waypoint = new Waypoint(x, y);
-		waypoints.add(waypoint);
-		
-		this.updateRoute();
-		
-		if(waypoints.size() == 1) {
-			this.setTargetedWaypoint(waypoint);
+		synchronized(this) {
+			List<Waypoint> waypoints = new ArrayList<>(this.waypoints);
+			waypoints.add(waypoint);
+			
+			if(waypoints.size() == 1) {
+				logger.info("New waypoint target (index: 0, x: {}, y: {})", x, y);
+			}
+			
+			this.setWaypoints(waypoints, waypoints.size() == 1 ? waypoint : target);
 		}
 		
-		this.sendWaypoints();
+		this.requestPlan();
 		return waypoint;
 	}
 	
+	// Waypoints in a published state are never changed, so the moved waypoint is replaced by a new one
 	public void moveWaypoint(Waypoint waypoint, float x, float y) {
-		logger.debug("Moving waypoint #{} to x: {}, y {}", waypoints.indexOf(waypoint), x, y);
-		
-		waypoint.setX(x);
-		waypoint.setY(y);
+		synchronized(this) {
+			List<Waypoint> waypoints = new ArrayList<>(this.waypoints);
+			int index = waypoints.indexOf(waypoint);
+			if(index == -1) {
+				logger.warn("Cannot move waypoint, is not in waypoint list");
+				return;
+			}
+			
+			logger.debug("Moving waypoint #{} to x: {}, y {}", index, x, y);
+			
+			Waypoint moved = new Waypoint(x, y);
+			waypoints.set(index, moved);
+			
+			this.setWaypoints(waypoints, target == waypoint ? moved : target);
+		}
 		
-		this.updateRoute();
-		this.sendWaypoints();
+		this.requestReplan();
 	}
 	
 	public void removeWaypoint(Waypoint waypoint) {
-		logger.debug("Removing waypoints #{}}", waypoints.indexOf(waypoint));
+		synchronized(this) {
+			List<Waypoint> waypoints = new ArrayList<>(this.waypoints);
+			int index = waypoints.indexOf(waypoint);
+			if(index == -1) {
+				logger.warn("Cannot remove waypoint, is not in waypoint list");
+				return;
+			}
+			
+			logger.debug("Removing waypoint #{}", index);
+			
+			waypoints.remove(index);
+			this.setWaypoints(waypoints, target == waypoint ? (waypoints.isEmpty() ? null : waypoints.get(0)) : target);
+		}
 		
-		waypoints.remove(waypoint);
-		this.updateRoute();
-		this.sendWaypoints();
+		this.requestPlan();
+	}
+	
+	public void onMapChanged() {
+		if(routeProvider == null) {
+			return;
+		}
+		
+		synchronized(this) {
+			if(waypoints.isEmpty()) {
+				return;
+			}
+		}
+		
+		this.requestReplan();
 	}
 	
-	public void sendWaypoints() {
+	public synchronized void sendWaypoints() {
 		NavigationWaypointsPacket packet = new NavigationWaypointsPacket(waypoints, target);
 		EdisonControl.getInstance().getWebHandler().sendPacket(packet);
 	}
 	
 	public void clearWaypoints() {
-		waypoints.clear();
-		target = null;
+		// Also drops the route, so the next client starts from an empty one
+		synchronized(this) {
+			this.setWaypoints(Collections.emptyList(), null);
+		}
+		
+		this.requestPlan();
 	}
 	
-	public List<Waypoint> getWaypoints() {
+	// The waypoints as edited, the route for them may still be being planned
+	public synchronized List<Waypoint> getWaypoints() {
 		return waypoints;
 	}
 	
+	public NavigationState getState() {
+		return state;
+	}
+	
 	public boolean setActive(boolean isActive) {
-		if(isActive && waypoints.isEmpty()) {
+		NavigationState state = this.state;
+		if(isActive && state.getWaypoints().isEmpty()) {
 			logger.warn("Cannot start navigation handler, no waypoints set");
 			return false;
 		}
 		
-		if(isActive && (splinePoints == null || splinePoints.isEmpty())) {
+		if(isActive && !state.hasRoute()) {
 			logger.warn("Cannot start navigation handler, spline points not calculated");
 			return false;
 		}
@@ -259,7 +441,7 @@ public class NavigationHandler {
 		logger.info("{} navigation handler", isActive ? "Starting" : "Stopping");
 		
 		if(isActive) {
-			this.initialize();
+			follower.start(state.getPath());
 		}
 		
 		this.isActive = isActive;
@@ -277,19 +459,43 @@ public class NavigationHandler {
 	}
 	
 	public void setControls(int speed, int steer, boolean force) {
+		this.setControls(speed, steer, force, 0);
+	}
+	
+	private void setControls(int speed, int steer, boolean force, long sensorTime) {
 		if(!isActive && !force) {
 			logger.debug("Ignoring setControls() call with params {}, {} because nav handler is disabled and not forced", speed, steer);
 			return;
 		}
 		
 		logger.debug("Controlling! {} {}", speed, steer);
-		EdisonControl.getInstance().getSerialInterface().setControls(speed, steer);
+		EdisonControl.getInstance().getSerialInterface().setControls(speed, steer, ControlSource.NAVIGATION, sensorTime);
 	}
 	
 	public boolean isActive() {
 		return isActive;
 	}
 	
+	// Latency of every stage from sensor to motherboard, in the order the data passes them
+	public Map<String, Histogram> getLatencyStages() {
+		Map<String, Histogram> stages = new LinkedHashMap<>();
+		stages.put("positionAge", positionAge);
+		stages.put("headingAge", headingAge);
+		stages.put("feedbackAge", feedbackAge);
+		stages.put("tickTime", tickTime);
+		stages.put("commandQueueing", EdisonControl.getInstance().getSerialInterface().getCommandAge());
+		stages.put("sensorToWrite", EdisonControl.getInstance().getSerialInterface().getSensorToWrite());
+		return stages;
+	}
+	
+	public PurePursuitFollower getFollower() {
+		return follower;
+	}
+	
+	public PoseEstimator getPoseEstimator() {
+		return poseEstimator;
+	}
+	
 	public MagnetometerProvider getMagnetometerProvider() {
 		return magnetometerProvider;
 	}
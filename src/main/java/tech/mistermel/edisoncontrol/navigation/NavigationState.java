@@ -0,0 +1,66 @@
+package tech.mistermel.edisoncontrol.navigation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath;
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath.Projection;
+
+// The waypoints, route and target at one point in time. A state is never modified, every change
+// creates a new one, so whoever holds a state sees a route that belongs to its waypoints.
+public class NavigationState {
+
+	public static final NavigationState EMPTY = new NavigationState(Collections.emptyList(), null, null);
+	
+	private final List<Waypoint> waypoints;
+	private final Waypoint target;
+	private final ArcLengthPath path;
+	private final float targetDistanceAlong;
+	
+	public NavigationState(List<Waypoint> waypoints, Waypoint target, ArcLengthPath path) {
+		this.waypoints = Collections.unmodifiableList(new ArrayList<>(waypoints));
+		this.target = target;
+		this.path = path;
+		
+		// The route goes through every waypoint, so the closest point on it is the waypoint itself
+		if(target != null && path != null) {
+			Projection projection = new Projection();
+			path.project(target.getX(), target.getY(), projection);
+			this.targetDistanceAlong = projection.getDistanceAlong();
+		} else {
+			this.targetDistanceAlong = 0;
+		}
+	}
+	
+	// Keeps the route, waypoints that have been reached are dropped without recalculating it
+	public NavigationState withWaypoints(List<Waypoint> waypoints, Waypoint target) {
+		return new NavigationState(waypoints, target, path);
+	}
+	
+	public NavigationState withTarget(Waypoint target) {
+		return new NavigationState(waypoints, target, path);
+	}
+	
+	public List<Waypoint> getWaypoints() {
+		return waypoints;
+	}
+	
+	public Waypoint getTarget() {
+		return target;
+	}
+	
+	public ArcLengthPath getPath() {
+		return path;
+	}
+	
+	public boolean hasRoute() {
+		return path != null;
+	}
+	
+	// Distance along the path at which the target waypoint is passed
+	public float getTargetDistanceAlong() {
+		return targetDistanceAlong;
+	}
+	
+}
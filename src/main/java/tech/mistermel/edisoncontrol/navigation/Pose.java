@@ -0,0 +1,55 @@
+package tech.mistermel.edisoncontrol.navigation;
+
+public class Pose {
+
+	public static final Pose UNKNOWN = new Pose(0, 0, 0, 0, 0, false);
+	
+	private final float x, y;
+	private final float heading;
+	private final float velocity;
+	private final long timestamp;
+	private final boolean valid;
+	
+	public Pose(float x, float y, float heading, float velocity, long timestamp, boolean valid) {
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+		this.velocity = velocity;
+		this.timestamp = timestamp;
+		this.valid = valid;
+	}
+	
+	public double distanceTo(float targetX, float targetY) {
+		return Math.sqrt(Math.pow(x - targetX, 2) + Math.pow(y - targetY, 2));
+	}
+	
+	public double headingTo(float targetX, float targetY) {
+		double radians = Math.atan2(targetY - y, targetX - x);
+		return Math.toDegrees(radians) + 90;
+	}
+	
+	public float getX() {
+		return x;
+	}
+	
+	public float getY() {
+		return y;
+	}
+	
+	public float getHeading() {
+		return heading;
+	}
+	
+	public float getVelocity() {
+		return velocity;
+	}
+	
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	public boolean isValid() {
+		return valid;
+	}
+	
+}
@@ -0,0 +1,251 @@
+package tech.mistermel.edisoncontrol.navigation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Fuses UWB fixes, wheel odometry and compass heading into a single pose.
+// Position is tracked with a 2D Kalman filter: wheel odometry drives the
+// prediction and UWB fixes are the measurements, weighted by their quality factor
+// and gated on their Mahalanobis distance. Heading is integrated from the gyro turn rate,
+// or the wheel speed difference without one, and pulled towards the compass with a
+// complementary filter.
+public class PoseEstimator {
+
+	private static final Logger logger = LoggerFactory.getLogger(PoseEstimator.class);
+	
+	// 99% point of the chi-squared distribution with 2 degrees of freedom
+	private static final double GATE = 9.21;
+	private static final int MAX_CONSECUTIVE_REJECTIONS = 10;
+	private static final int MIN_QUALITY = 5;
+	private static final long WHEEL_SPEED_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final long TURN_RATE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+	
+	private final double wheelCircumference;
+	private final float trackWidth;
+	private final int leftSign, rightSign;
+	private final double uwbSigma;
+	private final double processNoise, speedProcessNoise;
+	private final double headingTimeConstant;
+	
+	// Filter state, guarded by this
+	private boolean positionInitialized, headingInitialized;
+	private double x, y, heading;
+	private double pxx, pxy, pyy;
+	private long lastPredict;
+	private int consecutiveRejections;
+	private long rejectedFixes;
+	
+	private volatile double leftSpeed, rightSpeed;
+	private volatile long wheelSpeedTime;
+	private volatile double turnRate;
+	private volatile long turnRateTime;
+	private volatile double compassHeading;
+	private volatile boolean compassReceived;
+	
+	// Arrival times of the last measurements that were used, 0 if there has not been one
+	private volatile long positionTime, headingTime;
+	
+	private volatile Pose pose = Pose.UNKNOWN;
+	
+	public PoseEstimator(JSONObject settings) {
+		if(settings == null) {
+			settings = new JSONObject();
+		}
+		
+		this.wheelCircumference = Math.PI * settings.optDouble("wheel_diameter", 0.165);
+		this.trackWidth = settings.optFloat("track_width", 0.5f);
+		this.leftSign = settings.optBoolean("invert_left", false) ? -1 : 1;
+		this.rightSign = settings.optBoolean("invert_right", true) ? -1 : 1;
+		this.uwbSigma = settings.optDouble("uwb_sigma", 0.1);
+		this.processNoise = settings.optDouble("process_noise", 0.01);
+		this.speedProcessNoise = settings.optDouble("speed_process_noise", 0.05);
+		this.headingTimeConstant = settings.optDouble("heading_time_constant", 0.5);
+	}
+	
+	public synchronized void onPosition(float measuredX, float measuredY, int quality, long now) {
+		double sigma = uwbSigma * 100.0 / Math.max(quality, MIN_QUALITY);
+		double r = sigma * sigma;
+		
+		if(!positionInitialized) {
+			this.reset(measuredX, measuredY, r);
+			this.positionTime = now;
+			return;
+		}
+		
+		this.predict(now);
+		
+		double sxx = pxx + r;
+		double sxy = pxy;
+		double syy = pyy + r;
+		double det = sxx * syy - sxy * sxy;
+		
+		double nx = measuredX - x;
+		double ny = measuredY - y;
+		double distance = (syy * nx * nx - 2 * sxy * nx * ny + sxx * ny * ny) / det;
+		
+		if(distance > GATE) {
+			rejectedFixes++;
+			if(++consecutiveRejections > MAX_CONSECUTIVE_REJECTIONS) {
+				logger.warn("Rejected {} UWB fixes in a row, resetting position estimate", consecutiveRejections);
+				this.reset(measuredX, measuredY, r);
+				this.positionTime = now;
+			}
+			return;
+		}
+		consecutiveRejections = 0;
+		positionTime = now;
+		
+		// K = P * S^-1
+		double ixx = syy / det, ixy = -sxy / det, iyy = sxx / det;
+		double kxx = pxx * ixx + pxy * ixy;
+		double kxy = pxx * ixy + pxy * iyy;
+		double kyx = pxy * ixx + pyy * ixy;
+		double kyy = pxy * ixy + pyy * iyy;
+		
+		x += kxx * nx + kxy * ny;
+		y += kyx * nx + kyy * ny;
+		
+		// P = (I - K) * P
+		double newPxx = (1 - kxx) * pxx - kxy * pxy;
+		double newPxy = (1 - kxx) * pxy - kxy * pyy;
+		double newPyy = -kyx * pxy + (1 - kyy) * pyy;
+		pxx = newPxx;
+		pxy = newPxy;
+		pyy = newPyy;
+	}
+	
+	private void reset(double newX, double newY, double variance) {
+		this.x = newX;
+		this.y = newY;
+		this.pxx = variance;
+		this.pxy = 0;
+		this.pyy = variance;
+		this.consecutiveRejections = 0;
+		this.positionInitialized = true;
+	}
+	
+	public void onWheelSpeeds(int speedR, int speedL, long now) {
+		this.rightSpeed = rightSign * speedR * wheelCircumference / 60.0;
+		this.leftSpeed = leftSign * speedL * wheelCircumference / 60.0;
+		this.wheelSpeedTime = now;
+	}
+	
+	public void onHeading(float heading, long now) {
+		this.compassHeading = heading;
+		this.compassReceived = true;
+		this.headingTime = now;
+	}
+	
+	public void onTurnRate(float turnRate, long now) {
+		this.turnRate = turnRate;
+		this.turnRateTime = now;
+	}
+	
+	// Sets the heading without a compass reading, from then on it is only tracked by odometry
+	public synchronized void setHeading(float heading) {
+		this.heading = heading;
+		this.headingInitialized = true;
+	}
+	
+	// Advances the filter to the given time and publishes the resulting pose
+	public synchronized Pose update(long now) {
+		this.predict(now);
+		
+		Pose newPose = new Pose((float) x, (float) y, (float) heading, (float) this.getVelocity(now), now, positionInitialized && headingInitialized);
+		this.pose = newPose;
+		return newPose;
+	}
+	
+	private void predict(long now) {
+		if(lastPredict == 0) {
+			lastPredict = now;
+			return;
+		}
+		
+		double dt = (now - lastPredict) / 1e9;
+		lastPredict = now;
+		if(dt <= 0) {
+			return;
+		}
+		
+		boolean odometryValid = now - wheelSpeedTime < WHEEL_SPEED_TIMEOUT;
+		double velocity = odometryValid ? (leftSpeed + rightSpeed) / 2 : 0;
+		
+		if(compassReceived && !headingInitialized) {
+			heading = compassHeading;
+			headingInitialized = true;
+		}
+		
+		// The gyro does not suffer from wheel slip, so it is preferred while it keeps up.
+		// Positive heading is clockwise, so turning right means the left wheel is faster.
+		if(turnRateTime != 0 && now - turnRateTime < TURN_RATE_TIMEOUT) {
+			heading += turnRate * dt;
+		} else if(odometryValid) {
+			heading += Math.toDegrees((leftSpeed - rightSpeed) / trackWidth * dt);
+		}
+		
+		if(compassReceived) {
+			double alpha = dt / (headingTimeConstant + dt);
+			heading += alpha * angleDifference(compassHeading, heading);
+		}
+		heading = normalizeHeading(heading);
+		
+		if(positionInitialized) {
+			double radians = Math.toRadians(heading - 90);
+			x += velocity * Math.cos(radians) * dt;
+			y += velocity * Math.sin(radians) * dt;
+			
+			double q = (processNoise + speedProcessNoise * Math.abs(velocity)) * dt;
+			pxx += q;
+			pyy += q;
+		}
+	}
+	
+	private double getVelocity(long now) {
+		return now - wheelSpeedTime < WHEEL_SPEED_TIMEOUT ? (leftSpeed + rightSpeed) / 2 : 0;
+	}
+	
+	public static double angleDifference(double target, double current) {
+		double difference = (target - current) % 360;
+		if(difference >= 180) difference -= 360;
+		if(difference < -180) difference += 360;
+		return difference;
+	}
+	
+	private static double normalizeHeading(double heading) {
+		heading %= 360;
+		return heading < 0 ? heading + 360 : heading;
+	}
+	
+	public float getTrackWidth() {
+		return trackWidth;
+	}
+	
+	public double getWheelCircumference() {
+		return wheelCircumference;
+	}
+	
+	public Pose getPose() {
+		return pose;
+	}
+	
+	public long getPositionTime() {
+		return positionTime;
+	}
+	
+	public long getHeadingTime() {
+		return headingTime;
+	}
+	
+	public long getWheelSpeedTime() {
+		return wheelSpeedTime;
+	}
+	
+	public synchronized long getRejectedFixes() {
+		return rejectedFixes;
+	}
+	
+}
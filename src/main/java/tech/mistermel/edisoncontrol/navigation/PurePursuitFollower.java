@@ -0,0 +1,186 @@
+package tech.mistermel.edisoncontrol.navigation;
+
+import org.json.JSONObject;
+
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath;
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath.Projection;
+import tech.mistermel.edisoncontrol.navigation.route.VelocityProfile;
+
+// Steers towards a point a fixed distance ahead along the route. The arc through
+// that point has curvature 2*sin(alpha)/L, which for a differential drive maps to
+// steer = curvature * speed * trackWidth / 2 in motor command units.
+// The speed follows a velocity profile along the route, so the robot is fast on straight
+// parts and slows down ahead of curves and the end of the route.
+public class PurePursuitFollower {
+
+	private static final float MIN_SPEED = 0.01f;
+	
+	private final float lookahead;
+	private final int speed;
+	private final float minSpeed, maxAcceleration, maxDeceleration, maxLateralAcceleration;
+	
+	// Motor commands are in wheel RPM, the same unit the motherboard reports wheel speeds in
+	private final float commandsPerMeter;
+	private final float goalTolerance;
+	private final float searchDistance;
+	private final int rotateInPlaceThreshold;
+	private final float trackWidth;
+	
+	private final Projection projection = new Projection();
+	private ArcLengthPath path;
+	private VelocityProfile profile;
+	private boolean hasProgress;
+	private long lastUpdate;
+	
+	private volatile int speedCommand, steerCommand;
+	private volatile float lookaheadX, lookaheadY;
+	private volatile float crossTrackError, progress, length, remaining, eta;
+	
+	public PurePursuitFollower(JSONObject settings, float trackWidth, double wheelCircumference) {
+		if(settings == null) {
+			settings = new JSONObject();
+		}
+		
+		this.trackWidth = trackWidth;
+		this.lookahead = settings.optFloat("lookahead", 0.6f);
+		this.speed = settings.optInt("speed", 200);
+		this.goalTolerance = settings.optFloat("goal_tolerance", 0.3f);
+		this.searchDistance = settings.optFloat("search_distance", 1.5f);
+		this.rotateInPlaceThreshold = settings.optInt("rotate_in_place_threshold", 45);
+		this.minSpeed = Math.max(MIN_SPEED, settings.optFloat("min_speed", 0.1f));
+		this.maxAcceleration = settings.optFloat("max_acceleration", 0.5f);
+		this.maxDeceleration = settings.optFloat("max_deceleration", 0.8f);
+		this.maxLateralAcceleration = settings.optFloat("max_lateral_acceleration", 0.5f);
+		this.commandsPerMeter = (float) (60 / wheelCircumference);
+	}
+	
+	// Starts following the route from standstill, from wherever the robot is now
+	public synchronized void start(ArcLengthPath path) {
+		this.path = null;
+		this.setPath(path);
+		this.hasProgress = false;
+		this.lastUpdate = 0;
+		this.speedCommand = 0;
+	}
+	
+	// Replaces the route while driving, for example after a waypoint edit or a replan. The speed
+	// is kept, and the progress continues from the point on the new route closest to where the
+	// robot was on the old one, so the next search stays around the robot.
+	public synchronized void setPath(ArcLengthPath path) {
+		ArcLengthPath previous = this.path;
+		this.path = path;
+		this.profile = path == null ? null : new VelocityProfile(path, speed / commandsPerMeter, minSpeed, maxAcceleration, maxDeceleration, maxLateralAcceleration);
+		
+		if(path == null) {
+			this.hasProgress = false;
+			return;
+		}
+		
+		if(previous != null && hasProgress) {
+			path.project(previous.getX(progress), previous.getY(progress), projection);
+			this.progress = projection.getDistanceAlong();
+		}
+	}
+	
+	public synchronized ArcLengthPath getPath() {
+		return path;
+	}
+	
+	// Computes the controls for the given pose, returns false once the end of the route has been reached
+	public synchronized boolean update(Pose pose) {
+		if(path == null) {
+			return false;
+		}
+		
+		// Only search just around the previous position, so the robot does not skip ahead
+		// where the route passes close to itself
+		if(hasProgress) {
+			path.project(pose.getX(), pose.getY(), progress - searchDistance, progress + searchDistance, projection);
+		} else {
+			path.project(pose.getX(), pose.getY(), projection);
+			hasProgress = true;
+		}
+		
+		this.length = path.getLength();
+		this.progress = projection.getDistanceAlong();
+		this.crossTrackError = projection.getCrossTrackError();
+		this.remaining = length - progress;
+		this.eta = profile.getTimeRemaining(progress);
+		
+		float target = Math.min(progress + lookahead, length);
+		this.lookaheadX = path.getX(target);
+		this.lookaheadY = path.getY(target);
+		
+		double distance = pose.distanceTo(lookaheadX, lookaheadY);
+		if(remaining < goalTolerance && pose.distanceTo(path.getX(length), path.getY(length)) < goalTolerance) {
+			this.speedCommand = 0;
+			this.steerCommand = 0;
+			return false;
+		}
+		
+		double alpha = PoseEstimator.angleDifference(pose.headingTo(lookaheadX, lookaheadY), pose.getHeading());
+		
+		float elapsed = lastUpdate == 0 ? 0 : (pose.getTimestamp() - lastUpdate) / 1e9f;
+		this.lastUpdate = pose.getTimestamp();
+		
+		if(Math.abs(alpha) >= rotateInPlaceThreshold) {
+			this.speedCommand = 0;
+			this.steerCommand = clamp((int) (alpha * 5), speed);
+			return true;
+		}
+		
+		// The profile starts from rest at the start of the route, but the robot may also have been
+		// stopped halfway along it, so speeding up is limited from the previous command as well
+		float currentSpeed = speedCommand / commandsPerMeter;
+		float targetSpeed = Math.min(profile.getSpeed(progress), currentSpeed + maxAcceleration * Math.max(elapsed, 0));
+		int targetCommand = Math.max(Math.round(targetSpeed * commandsPerMeter), Math.round(minSpeed * commandsPerMeter));
+		
+		double curvature = 2 * Math.sin(Math.toRadians(alpha)) / Math.max(distance, 0.01);
+		this.speedCommand = targetCommand;
+		this.steerCommand = clamp((int) Math.round(curvature * targetCommand * trackWidth / 2), speed);
+		return true;
+	}
+	
+	private static int clamp(int value, int limit) {
+		return Math.max(-limit, Math.min(limit, value));
+	}
+	
+	public int getSpeedCommand() {
+		return speedCommand;
+	}
+	
+	public int getSteerCommand() {
+		return steerCommand;
+	}
+	
+	public float getLookaheadX() {
+		return lookaheadX;
+	}
+	
+	public float getLookaheadY() {
+		return lookaheadY;
+	}
+	
+	public float getCrossTrackError() {
+		return crossTrackError;
+	}
+	
+	// Distance travelled along the route, in meters
+	public float getProgress() {
+		return progress;
+	}
+	
+	public float getLength() {
+		return length;
+	}
+	
+	public float getRemaining() {
+		return remaining;
+	}
+	
+	// Estimated seconds to the end of the route when following the velocity profile
+	public float getEta() {
+		return eta;
+	}
+	
+}
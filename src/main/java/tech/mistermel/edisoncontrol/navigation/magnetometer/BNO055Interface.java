@@ -16,6 +16,10 @@ public class BNO055Interface implements MagnetometerInterface {
 	private static final Logger logger = LoggerFactory.getLogger(BNO055Interface.class);
 	
 	private static final int CHIP_ID = 0xA0;
+	private static final int POLL_INTERVAL = 10;
+	private static final int DEFAULT_STARTUP_TIMEOUT = 2000;
+	// Failed reads are logged at most this often, the heading is read 100 times per second
+	private static final long ERROR_LOG_INTERVAL = 10000;
 	
 	private static final int BUS_NUM = I2CBus.BUS_1;
 	private static final byte DEVICE_ADDR = 0x28;
@@ -23,26 +27,59 @@ public class BNO055Interface implements MagnetometerInterface {
 	private static final byte CHIP_ID_ADDR = 0x00;
 	private static final byte OPR_MODE_ADDR = 0x3D;
 	private static final byte SYS_TRIGGER_ADDR = 0x3F;
-	private static final byte EULER_REGISTER_ADDR = 0x1A;
 	
-	private static final byte CALIB_STAT_ADDR = 0x35;
+	private static final byte COMPASS_MODE = 0x09;
+	private static final byte NDOF_MODE = 0x0C;
+	
+	// Gyro, euler angles, quaternion, linear acceleration, gravity, temperature and calibration
+	// status are consecutive registers, so a single read from the gyro data to the calibration
+	// status gets all of them from the same fusion update
+	private static final byte DATA_START_ADDR = 0x14;
+	private static final int DATA_LENGTH = 0x35 - DATA_START_ADDR + 1;
+	
+	// Offsets into the data buffer
+	private static final int GYRO_OFFSET = 0x14 - DATA_START_ADDR;
+	private static final int EULER_OFFSET = 0x1A - DATA_START_ADDR;
+	private static final int QUATERNION_OFFSET = 0x20 - DATA_START_ADDR;
+	private static final int CALIB_STAT_OFFSET = 0x35 - DATA_START_ADDR;
+	
+	private static final float EULER_SCALE = 16.0f;
+	private static final float GYRO_SCALE = 16.0f;
+	private static final float QUATERNION_SCALE = 1 << 14;
+	
+	private final byte[] buffer = new byte[DATA_LENGTH];
 	
 	private I2CDevice device;
 	private float offset;
+	private boolean fusion;
+	private float turnRate = Float.NaN;
+	
+	private int failedReads;
+	private long lastErrorLog;
+	
+	// Cached from the last read, the status is requested from another thread
+	private volatile int calibrationStatus;
 	
 	@Override
 	public boolean initialize(JSONObject settings) {
 		this.offset = settings.optFloat("offset", 0);
 		
+		// NDOF also fuses the gyro, which gives the turn rate and a heading that does not lag behind
+		this.fusion = !settings.optString("mode", "ndof").equalsIgnoreCase("compass");
+		
 		try {
 			I2CBus bus = I2CFactory.getInstance(BUS_NUM);
 			this.device = bus.getDevice(DEVICE_ADDR);
 			
-			this.waitForSensor();
-			device.write(OPR_MODE_ADDR, (byte) 0x09); // COMPASS mode
+			if(!this.waitForSensor(settings.optInt("startup_timeout", DEFAULT_STARTUP_TIMEOUT))) {
+				logger.error("BNO055 did not respond with its chip ID in time");
+				return false;
+			}
+			
+			device.write(OPR_MODE_ADDR, fusion ? NDOF_MODE : COMPASS_MODE);
 			device.write(SYS_TRIGGER_ADDR, (byte) 0x80);
 			
-			logger.info("BNO055 initialized");
+			logger.info("BNO055 initialized in {} mode", fusion ? "NDOF" : "COMPASS");
 			return true;
 		} catch(UnsupportedBusNumberException | IOException e) {
 			logger.error("Error while attempting to initialize BNO055 - is I2C enabled in raspi-config?");
@@ -50,18 +87,26 @@ public class BNO055Interface implements MagnetometerInterface {
 		}
 	}
 	
-	private void waitForSensor() throws IOException {
+	// The chip ID only reads correctly once the sensor has booted (about 650ms after power-on),
+	// so poll quickly to not waste time after it comes up, but do not wait forever.
+	private boolean waitForSensor(int timeout) throws IOException {
 		try {
 			logger.debug("Waiting for sensor...");
 			
+			long deadline = System.currentTimeMillis() + timeout;
 			while(device.read(CHIP_ID_ADDR) != CHIP_ID) {
-				Thread.sleep(100);
+				if(System.currentTimeMillis() > deadline) {
+					return false;
+				}
+				Thread.sleep(POLL_INTERVAL);
 			}
 			
 			logger.debug("Sensor is present");
+			return true;
 		} catch (InterruptedException e) {
 			logger.error("Interrupted while waiting for sensor", e);
 			Thread.currentThread().interrupt();
+			return false;
 		}
 	}
 	
@@ -71,37 +116,76 @@ public class BNO055Interface implements MagnetometerInterface {
 			return null;
 		}
 		
-		try {
-			int calibrationStatus = device.read(CALIB_STAT_ADDR);
-			int sysCalib = (calibrationStatus >> 6) & 0x03;
-			int gyroCalib = (calibrationStatus >> 4) & 0x03;
-			int accCalib = (calibrationStatus >> 2) & 0x03;
-			int magCalib = (calibrationStatus >> 0) & 0x03;
-			
-			return new SystemStatus(sysCalib, gyroCalib, accCalib, magCalib);
-		} catch(IOException e) {
-			logger.error("Error occurred while attempting to read status from BNO055", e);
-			return null;
-		}
+		int status = calibrationStatus;
+		int sysCalib = (status >> 6) & 0x03;
+		int gyroCalib = (status >> 4) & 0x03;
+		int accCalib = (status >> 2) & 0x03;
+		int magCalib = (status >> 0) & 0x03;
+		
+		return new SystemStatus(sysCalib, gyroCalib, accCalib, magCalib);
 	}
-
+	
 	@Override
 	public float getHeading() {
 		try {
-			byte[] buffer = new byte[6];
-			device.read(EULER_REGISTER_ADDR, buffer, 0, buffer.length);
-			
-			float heading = ((buffer[0] & 0xFF) | ((buffer[1] << 8) & 0xFF00)) / 16.0f;
-			
-			heading += offset;
-			if(heading >= 360) heading -= 360;
-			if(heading < 0) heading += 360;
-			
-			return heading;
+			device.read(DATA_START_ADDR, buffer, 0, buffer.length);
 		} catch (IOException e) {
-			logger.error("Error occurred while attempting to read heading from BNO055", e);
-			return -1;
+			this.onReadFailed(e);
+			this.turnRate = Float.NaN;
+			return Float.NaN;
 		}
+		
+		this.calibrationStatus = buffer[CALIB_STAT_OFFSET] & 0xFF;
+		this.turnRate = fusion ? this.decodeTurnRate() : Float.NaN;
+		
+		float heading = ((buffer[EULER_OFFSET] & 0xFF) | ((buffer[EULER_OFFSET + 1] << 8) & 0xFF00)) / EULER_SCALE;
+		
+		heading += offset;
+		if(heading >= 360) heading -= 360;
+		if(heading < 0) heading += 360;
+		
+		return heading;
 	}
-
+	
+	private void onReadFailed(IOException e) {
+		failedReads++;
+		
+		long now = System.currentTimeMillis();
+		if(now - lastErrorLog < ERROR_LOG_INTERVAL) {
+			return;
+		}
+		
+		logger.error("Error occurred while attempting to read heading from BNO055 ({} failed reads since the last message): {}", failedReads, e.getMessage());
+		this.lastErrorLog = now;
+		this.failedReads = 0;
+	}
+	
+	@Override
+	public float getTurnRate() {
+		return turnRate;
+	}
+	
+	// The gyro measures in the frame of the sensor, so it is rotated to the world frame with the
+	// orientation from the same read. Only the vertical component of that is the turn rate, which
+	// makes it independent of how the sensor is mounted. Counter-clockwise is positive around the
+	// upward axis, where the heading is positive clockwise.
+	private float decodeTurnRate() {
+		float gx = this.readShort(GYRO_OFFSET) / GYRO_SCALE;
+		float gy = this.readShort(GYRO_OFFSET + 2) / GYRO_SCALE;
+		float gz = this.readShort(GYRO_OFFSET + 4) / GYRO_SCALE;
+		
+		float qw = this.readShort(QUATERNION_OFFSET) / QUATERNION_SCALE;
+		float qx = this.readShort(QUATERNION_OFFSET + 2) / QUATERNION_SCALE;
+		float qy = this.readShort(QUATERNION_OFFSET + 4) / QUATERNION_SCALE;
+		float qz = this.readShort(QUATERNION_OFFSET + 6) / QUATERNION_SCALE;
+		
+		// Bottom row of the rotation matrix of the quaternion
+		float vertical = 2 * (qx * qz - qw * qy) * gx + 2 * (qy * qz + qw * qx) * gy + (1 - 2 * (qx * qx + qy * qy)) * gz;
+		return -vertical;
+	}
+	
+	private short readShort(int index) {
+		return (short) ((buffer[index] & 0xFF) | (buffer[index + 1] << 8));
+	}
+	
 }
@@ -6,6 +6,10 @@ public interface MagnetometerInterface {
 
 	public boolean initialize(JSONObject settings);
 	public SystemStatus getStatus();
+	// NaN if the sensor could not be read
 	public float getHeading();
+	// Clockwise in degrees per second, measured together with the last heading. NaN if the
+	// sensor does not measure it.
+	public float getTurnRate();
 	
 }
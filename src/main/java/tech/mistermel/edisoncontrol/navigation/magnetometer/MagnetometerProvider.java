@@ -7,20 +7,25 @@ import org.slf4j.LoggerFactory;
 import tech.mistermel.edisoncontrol.EdisonControl;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.HealthStatusType;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.Service;
+import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.scheduler.MissedDeadlinePolicy;
+import tech.mistermel.edisoncontrol.scheduler.ScheduledLoop;
 
-public class MagnetometerProvider extends Thread {
+public class MagnetometerProvider {
 
 	private static final Logger logger = LoggerFactory.getLogger(MagnetometerProvider.class);
 	
+	private static final int DEFAULT_READ_INTERVAL = 10;
+	
 	private MagnetometerInterface intf;
+	private ScheduledLoop loop;
+	private volatile boolean initialized;
 	
 	public MagnetometerProvider(MagnetometerInterface intf) {
-		super("MagnetometerThread");
 		this.intf = intf;
 	}
 	
-	@Override
-	public void run() {
+	public void initialize() {
 		try {
 			JSONObject config = EdisonControl.getInstance().getConfigHandler().getJson().optJSONObject("compass");
 			
@@ -28,24 +33,52 @@ public class MagnetometerProvider extends Thread {
 			if(!intf.initialize(config)) {
 				EdisonControl.setStatus(Service.BNO055, HealthStatusType.FAULT, "Failed to connect to I2C");
 				
-				logger.warn("Magnetometer initialization failed, magnetometer provider thread exiting");
-				EdisonControl.getInstance().getNavHandler().onHeadingReceived(0);
+				logger.warn("Magnetometer initialization failed, no heading will be available");
 				return;
 			}
 			
+			this.initialized = true;
 			EdisonControl.setStatus(Service.BNO055, HealthStatusType.RUNNING);
-			while(true) {
-				float heading = intf.getHeading();
-				EdisonControl.getInstance().getNavHandler().onHeadingReceived(heading);
-				
-				Thread.sleep(100);
+			// The BNO055 updates its fusion output at 100Hz
+			int readInterval = config == null ? DEFAULT_READ_INTERVAL : config.optInt("read_interval", DEFAULT_READ_INTERVAL);
+			this.loop = EdisonControl.getInstance().getScheduler().schedule("magnetometer", readInterval, MissedDeadlinePolicy.SKIP, this::read);
+		} catch(Exception e) {
+			logger.error("Error occurred while initializing magnetometer", e);
+			EdisonControl.setStatus(Service.BNO055, HealthStatusType.FAULT, "Error during initialization");
+		}
+	}
+	
+	private void read() {
+		try {
+			float heading = intf.getHeading();
+			if(Float.isNaN(heading)) {
+				// The interface logs why, the pose estimator keeps using the last heading
+				return;
+			}
+			
+			float turnRate = intf.getTurnRate();
+			long receivedTime = EdisonControl.getInstance().getClock().nanoTime();
+			EdisonControl.getInstance().getTelemetryRecorder().getHeading().record(receivedTime, heading);
+			EdisonControl.getInstance().getBlackBoxRecorder().recordHeading(receivedTime, heading, turnRate);
+			
+			NavigationHandler navHandler = EdisonControl.getInstance().getNavHandler();
+			if(navHandler != null) {
+				navHandler.onHeadingReceived(heading, receivedTime);
+				if(!Float.isNaN(turnRate)) {
+					navHandler.onTurnRateReceived(turnRate, receivedTime);
+				}
 			}
 		} catch(Exception e) {
-			logger.error("Error occurred in magnetometer reading thread", e);
-			EdisonControl.setStatus(Service.BNO055, HealthStatusType.FAULT, "Error in reading thread");
+			logger.error("Error occurred in magnetometer reading loop", e);
+			EdisonControl.setStatus(Service.BNO055, HealthStatusType.FAULT, "Error in reading loop");
+			loop.cancel();
 		}
 	}
 	
+	public boolean isInitialized() {
+		return initialized;
+	}
+	
 	public SystemStatus getStatus() {
 		return intf.getStatus();
 	}
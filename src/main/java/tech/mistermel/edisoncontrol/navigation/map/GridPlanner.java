@@ -0,0 +1,440 @@
+package tech.mistermel.edisoncontrol.navigation.map;
+
+import java.util.Arrays;
+
+// Jump point search over the 8-connected grid, after which the path is pulled straight: every
+// corner is dropped that the corner before it can see past, so the path is a few corners at any angle.
+// Jump point search finds the same shortest paths as A*, but only keeps the cells where the path
+// may have to turn, by scanning along straight and diagonal lines until an obstacle next to the
+// line ends. Open ground and the inside of a dead end are crossed by cheap scans instead of being
+// pushed through the heap cell by cell, and only those few cells need a cost and a parent.
+// Not thread safe.
+public class GridPlanner {
+
+	private static final float SQRT2 = (float) Math.sqrt(2);
+	private static final float TIE_BREAK = 1.001f;
+	
+	private static final int[] DX = { 1, 0, -1, 0, 1, -1, -1, 1 };
+	private static final int[] DY = { 0, 1, 0, -1, 1, 1, -1, -1 };
+	
+	// Waypoints inside an obstacle are moved to the nearest free cell within this many cells
+	private static final int MAX_FREE_SEARCH = 40;
+	
+	private static final int INITIAL_CAPACITY = 4096;
+	
+	private OccupancyGrid grid;
+	private int width;
+	private int goalColumn, goalRow;
+	
+	// Columns of the grid as rows, made again when planning on another grid
+	private OccupancyGrid transposed;
+	private OccupancyGrid transposedFrom;
+	
+	// Cost and parent of every cell the search has reached, in an open addressing table by cell index.
+	// The table is kept between searches and only grows with the number of jump points, arrays for
+	// every cell would take 32 MB on the default map.
+	private int[] nodes = new int[INITIAL_CAPACITY];
+	private float[] g = new float[INITIAL_CAPACITY];
+	private int[] parent = new int[INITIAL_CAPACITY];
+	private boolean[] closed = new boolean[INITIAL_CAPACITY];
+	private int nodeCount;
+	
+	// Binary min-heap of nodes by estimated total cost. Nodes are pushed again when their
+	// cost improves and outdated entries are skipped when popped, instead of a decrease-key.
+	private int[] heapNodes = new int[1024];
+	private float[] heapKeys = new float[1024];
+	private int heapSize;
+	
+	private int expandedNodes;
+	
+	public GridPlanner() {
+		Arrays.fill(nodes, -1);
+	}
+	
+	// Returns the corners of the path between the two points in world coordinates, not including the
+	// points themselves, as x0, y0, x1, y1, ... or null if there is no path. Occupied cells in the
+	// grid have to be inflated by the robot radius already.
+	public float[] plan(OccupancyGrid grid, float startX, float startY, float goalX, float goalY) {
+		this.grid = grid;
+		this.width = grid.getWidth();
+		this.expandedNodes = 0;
+		
+		if(transposedFrom != grid) {
+			this.transposed = grid.transpose();
+			this.transposedFrom = grid;
+		}
+		
+		int start = this.findFree(grid.toColumn(startX), grid.toRow(startY));
+		int goal = this.findFree(grid.toColumn(goalX), grid.toRow(goalY));
+		if(start == -1 || goal == -1) {
+			return null;
+		}
+		
+		try {
+			if(!this.search(start, goal)) {
+				return null;
+			}
+			return this.toCorners(start, goal);
+		} finally {
+			this.reset();
+		}
+	}
+	
+	private boolean search(int start, int goal) {
+		this.goalColumn = goal % width;
+		this.goalRow = goal / width;
+		
+		this.open(start, start, 0, estimate(start % width, start / width, goalColumn, goalRow));
+		
+		while(heapSize > 0) {
+			int node = this.pop();
+			int slot = this.find(node);
+			if(closed[slot]) {
+				continue;
+			}
+			
+			if(node == goal) {
+				return true;
+			}
+			
+			closed[slot] = true;
+			expandedNodes++;
+			
+			int column = node % width, row = node / width;
+			float cost = g[slot];
+			int from = parent[slot];
+			
+			if(from == node) {
+				for(int i = 0; i < 8; i++) {
+					this.jumpFrom(node, column, row, DX[i], DY[i], cost);
+				}
+				continue;
+			}
+			
+			// Only the directions that a path through the parent could not have taken shorter without
+			// this cell: straight on, and sideways where the obstacle next to the line ended
+			int dx = Integer.signum(column - from % width), dy = Integer.signum(row - from / width);
+			if(dx != 0 && dy != 0) {
+				this.jumpFrom(node, column, row, dx, 0, cost);
+				this.jumpFrom(node, column, row, 0, dy, cost);
+				this.jumpFrom(node, column, row, dx, dy, cost);
+			} else if(dx != 0) {
+				this.jumpFrom(node, column, row, dx, 0, cost);
+				this.jumpFrom(node, column, row, dx, 1, cost);
+				this.jumpFrom(node, column, row, dx, -1, cost);
+				this.jumpFrom(node, column, row, 0, 1, cost);
+				this.jumpFrom(node, column, row, 0, -1, cost);
+			} else {
+				this.jumpFrom(node, column, row, 0, dy, cost);
+				this.jumpFrom(node, column, row, 1, dy, cost);
+				this.jumpFrom(node, column, row, -1, dy, cost);
+				this.jumpFrom(node, column, row, 1, 0, cost);
+				this.jumpFrom(node, column, row, -1, 0, cost);
+			}
+		}
+		
+		return false;
+	}
+	
+	private void jumpFrom(int node, int column, int row, int dx, int dy, float cost) {
+		if(!this.canMove(column, row, dx, dy)) {
+			return;
+		}
+		
+		int jumpPoint = dx != 0 && dy != 0 ? this.jumpDiagonal(column + dx, row + dy, dx, dy) : this.jumpStraight(column + dx, row + dy, dx, dy);
+		if(jumpPoint == -1) {
+			return;
+		}
+		
+		int jumpColumn = jumpPoint % width, jumpRow = jumpPoint / width;
+		float jumpCost = cost + distance(column, row, jumpColumn, jumpRow);
+		
+		int slot = this.find(jumpPoint);
+		if(nodes[slot] == -1 || (jumpCost < g[slot] && !closed[slot])) {
+			this.open(jumpPoint, node, jumpCost, jumpCost + estimate(jumpColumn, jumpRow, goalColumn, goalRow));
+		}
+	}
+	
+	// Diagonal steps may not cut the corner of a blocked cell
+	private boolean canMove(int column, int row, int dx, int dy) {
+		if(grid.isBlocked(column + dx, row + dy)) {
+			return false;
+		}
+		return dx == 0 || dy == 0 || (!grid.isBlocked(column + dx, row) && !grid.isBlocked(column, row + dy));
+	}
+	
+	// Scans along a row or column from the given cell, returns the first cell where a free cell next to
+	// the line follows a blocked one, or the goal, or -1 if an obstacle is hit first. Columns are
+	// scanned as rows of the transposed grid.
+	private int jumpStraight(int column, int row, int dx, int dy) {
+		if(dx != 0) {
+			int jumpColumn = scan(grid, column, row, dx, goalColumn, goalRow);
+			return jumpColumn == -1 ? -1 : row * width + jumpColumn;
+		}
+		
+		int jumpRow = scan(transposed, row, column, dy, goalRow, goalColumn);
+		return jumpRow == -1 ? -1 : jumpRow * width + column;
+	}
+	
+	// Scans 64 cells of the row at a time. The cells next to the line that are free where the cell
+	// before them is blocked are found for the whole word at once, and the first of those, the goal
+	// or a blocked cell ends the scan.
+	private static int scan(OccupancyGrid grid, int column, int row, int direction, int goalColumn, int goalRow) {
+		while(true) {
+			// The lowest bit is the cell at column when going up, the cell 63 before it when going down
+			int base = direction > 0 ? column : column - 63;
+			
+			long blocked = grid.getBlocked(base, row);
+			long above = grid.getBlocked(base, row + 1), aboveBehind = grid.getBlocked(base - direction, row + 1);
+			long below = grid.getBlocked(base, row - 1), belowBehind = grid.getBlocked(base - direction, row - 1);
+			long stop = blocked | (~above & aboveBehind) | (~below & belowBehind);
+			
+			if(row == goalRow && goalColumn - base >= 0 && goalColumn - base < 64) {
+				stop |= 1L << (goalColumn - base);
+			}
+			
+			if(stop != 0) {
+				int bit = direction > 0 ? Long.numberOfTrailingZeros(stop) : 63 - Long.numberOfLeadingZeros(stop);
+				return (blocked & (1L << bit)) != 0 ? -1 : base + bit;
+			}
+			
+			column += direction * 64;
+		}
+	}
+	
+	// Steps diagonally from the given free cell, stopping where one of the straight scans from it finds a jump point
+	private int jumpDiagonal(int column, int row, int dx, int dy) {
+		while(true) {
+			if(column == goalColumn && row == goalRow) {
+				return row * width + column;
+			}
+			
+			if(this.jumpStraight(column + dx, row, dx, 0) != -1 || this.jumpStraight(column, row + dy, 0, dy) != -1) {
+				return row * width + column;
+			}
+			
+			if(!this.canMove(column, row, dx, dy)) {
+				return -1;
+			}
+			column += dx;
+			row += dy;
+		}
+	}
+	
+	// Octile distance, the exact cost over an empty grid and so along the line between two jump points
+	private static float distance(int column0, int row0, int column1, int row1) {
+		int dx = Math.abs(column1 - column0), dy = Math.abs(row1 - row0);
+		return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+	}
+	
+	// The distance is weighed slightly more than the cost so far, so of the many equally short paths
+	// over open ground the one closest to the goal is followed instead of all of them being expanded
+	private static float estimate(int column, int row, int goalColumn, int goalRow) {
+		return distance(column, row, goalColumn, goalRow) * TIE_BREAK;
+	}
+	
+	// Walks every cell the line between the two cell centers passes through. Where it passes exactly
+	// through a corner, both cells next to it have to be free.
+	private boolean lineOfSight(int column0, int row0, int column1, int row1) {
+		int dx = Math.abs(column1 - column0), dy = Math.abs(row1 - row0);
+		int stepX = column1 > column0 ? 1 : -1, stepY = row1 > row0 ? 1 : -1;
+		int error = dx - dy;
+		int column = column0, row = row0;
+		
+		for(int remaining = dx + dy; remaining > 0; remaining--) {
+			if(error > 0) {
+				column += stepX;
+				error -= 2 * dy;
+			} else if(error < 0) {
+				row += stepY;
+				error += 2 * dx;
+			} else {
+				if(grid.isBlocked(column + stepX, row) || grid.isBlocked(column, row + stepY)) {
+					return false;
+				}
+				column += stepX;
+				row += stepY;
+				error += 2 * (dx - dy);
+				remaining--;
+			}
+			
+			if(grid.isBlocked(column, row)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	// Goes back along the parents from the goal, keeping a cell only where the line from the last
+	// kept cell to the next one would hit an obstacle
+	private float[] toCorners(int start, int goal) {
+		int[] corners = new int[16];
+		int count = 0;
+		
+		int anchor = goal;
+		int previous = goal;
+		for(int node = parent[this.find(goal)]; ; node = parent[this.find(node)]) {
+			if(!this.lineOfSight(anchor % width, anchor / width, node % width, node / width)) {
+				if(count == corners.length) {
+					corners = Arrays.copyOf(corners, count * 2);
+				}
+				corners[count++] = previous;
+				anchor = previous;
+			}
+			
+			if(node == start) {
+				break;
+			}
+			previous = node;
+		}
+		
+		float[] result = new float[count * 2];
+		for(int i = 0; i < count; i++) {
+			int node = corners[count - 1 - i];
+			result[i * 2] = grid.toX(node % width);
+			result[i * 2 + 1] = grid.toY(node / width);
+		}
+		return result;
+	}
+	
+	// Nearest free cell to the given one in growing square rings, or -1 if there is none close by
+	private int findFree(int column, int row) {
+		for(int ring = 0; ring <= MAX_FREE_SEARCH; ring++) {
+			int best = -1;
+			int bestDistance = Integer.MAX_VALUE;
+			
+			for(int y = row - ring; y <= row + ring; y++) {
+				for(int x = column - ring; x <= column + ring; x++) {
+					boolean edge = y == row - ring || y == row + ring || x == column - ring || x == column + ring;
+					if(!edge || grid.isBlocked(x, y)) {
+						continue;
+					}
+					
+					int distance = (x - column) * (x - column) + (y - row) * (y - row);
+					if(distance < bestDistance) {
+						bestDistance = distance;
+						best = y * width + x;
+					}
+				}
+			}
+			
+			if(best != -1) {
+				return best;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private void open(int node, int nodeParent, float cost, float estimate) {
+		int slot = this.find(node);
+		if(nodes[slot] == -1) {
+			nodes[slot] = node;
+			closed[slot] = false;
+			
+			if(++nodeCount * 2 > nodes.length) {
+				this.grow();
+				slot = this.find(node);
+			}
+		}
+		
+		g[slot] = cost;
+		parent[slot] = nodeParent;
+		this.push(node, estimate);
+	}
+	
+	// Slot of the node in the table, or the empty slot where it would go
+	private int find(int node) {
+		int mask = nodes.length - 1;
+		int slot = (node * 0x9E3779B1) >>> 7 & mask;
+		while(nodes[slot] != -1 && nodes[slot] != node) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void grow() {
+		int[] oldNodes = nodes;
+		float[] oldG = g;
+		int[] oldParent = parent;
+		boolean[] oldClosed = closed;
+		
+		int capacity = oldNodes.length * 2;
+		this.nodes = new int[capacity];
+		this.g = new float[capacity];
+		this.parent = new int[capacity];
+		this.closed = new boolean[capacity];
+		Arrays.fill(nodes, -1);
+		
+		for(int i = 0; i < oldNodes.length; i++) {
+			if(oldNodes[i] == -1) {
+				continue;
+			}
+			
+			int slot = this.find(oldNodes[i]);
+			nodes[slot] = oldNodes[i];
+			g[slot] = oldG[i];
+			parent[slot] = oldParent[i];
+			closed[slot] = oldClosed[i];
+		}
+	}
+	
+	private void reset() {
+		Arrays.fill(nodes, -1);
+		nodeCount = 0;
+		heapSize = 0;
+	}
+	
+	private void push(int node, float key) {
+		if(heapSize == heapNodes.length) {
+			heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+		}
+		
+		int index = heapSize++;
+		while(index > 0) {
+			int parentIndex = (index - 1) >>> 1;
+			if(heapKeys[parentIndex] <= key) {
+				break;
+			}
+			heapNodes[index] = heapNodes[parentIndex];
+			heapKeys[index] = heapKeys[parentIndex];
+			index = parentIndex;
+		}
+		heapNodes[index] = node;
+		heapKeys[index] = key;
+	}
+	
+	private int pop() {
+		int result = heapNodes[0];
+		int lastNode = heapNodes[--heapSize];
+		float lastKey = heapKeys[heapSize];
+		
+		int index = 0;
+		while(true) {
+			int child = index * 2 + 1;
+			if(child >= heapSize) {
+				break;
+			}
+			if(child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if(heapKeys[child] >= lastKey) {
+				break;
+			}
+			heapNodes[index] = heapNodes[child];
+			heapKeys[index] = heapKeys[child];
+			index = child;
+		}
+		heapNodes[index] = lastNode;
+		heapKeys[index] = lastKey;
+		return result;
+	}
+	
+	// Number of jump points the last search expanded
+	public int getExpandedNodes() {
+		return expandedNodes;
+	}
+	
+}
@@ -0,0 +1,140 @@
+package tech.mistermel.edisoncontrol.navigation.map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.mistermel.edisoncontrol.EdisonControl;
+
+// The obstacles drawn on the map in the interface, saved to disk a moment after every edit
+public class ObstacleMap {
+
+	private static final Logger logger = LoggerFactory.getLogger(ObstacleMap.class);
+	private static final long SAVE_DELAY = TimeUnit.SECONDS.toNanos(2);
+	
+	private final File file;
+	private OccupancyGrid grid;
+	private volatile long version;
+	
+	private final AtomicBoolean savePending = new AtomicBoolean();
+	
+	public ObstacleMap(JSONObject settings) {
+		if(settings == null) {
+			settings = new JSONObject();
+		}
+		
+		this.file = new File(settings.optString("file", "map.bin"));
+		this.grid = new OccupancyGrid(settings.optInt("width", 2000), settings.optInt("height", 2000), settings.optFloat("resolution", 0.05f),
+				settings.optFloat("origin_x", 0), settings.optFloat("origin_y", 0));
+	}
+	
+	public synchronized void load() {
+		if(!file.exists()) {
+			logger.info("No obstacle map saved yet, starting with an empty {}x{} map", grid.getWidth(), grid.getHeight());
+			return;
+		}
+		
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			this.grid = OccupancyGrid.read(in);
+			logger.info("Loaded {}x{} obstacle map from {}", grid.getWidth(), grid.getHeight(), file.getName());
+		} catch(IOException e) {
+			logger.error("Error occurred while attempting to load obstacle map, starting with an empty one", e);
+		}
+	}
+	
+	// Returns the affected cells as { firstColumn, firstRow, lastColumn, lastRow }, or null if none
+	public synchronized int[] paint(float x, float y, float radius, boolean occupied) {
+		int[] region = grid.fillCircle(x, y, radius, occupied);
+		if(region != null) {
+			this.onChanged();
+		}
+		return region;
+	}
+	
+	public synchronized void clear() {
+		grid.clear();
+		this.onChanged();
+	}
+	
+	private void onChanged() {
+		version++;
+		
+		// Edits usually come in as a stroke of many small ones, so only save once it is over
+		if(savePending.compareAndSet(false, true)) {
+			EdisonControl.getInstance().getScheduler().scheduleOnce("map_save", SAVE_DELAY, this::save);
+		}
+	}
+	
+	private void save() {
+		savePending.set(false);
+		OccupancyGrid snapshot = this.snapshot();
+		
+		// Written next to the map first, so a crash while saving does not lose the old one
+		File tempFile = new File(file.getPath() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			snapshot.write(out);
+		} catch(IOException e) {
+			logger.error("Error occurred while attempting to save obstacle map", e);
+			return;
+		}
+		
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			logger.debug("Saved obstacle map");
+		} catch(IOException e) {
+			logger.error("Error occurred while attempting to replace obstacle map", e);
+		}
+	}
+	
+	// Occupied runs in the region { firstColumn, firstRow, lastColumn, lastRow }, or in the whole map if it is null
+	public synchronized int[] getRuns(int[] region) {
+		if(region == null) {
+			return grid.getRuns(0, 0, grid.getWidth() - 1, grid.getHeight() - 1);
+		}
+		return grid.getRuns(region[0], region[1], region[2], region[3]);
+	}
+	
+	public synchronized int getWidth() {
+		return grid.getWidth();
+	}
+	
+	public synchronized int getHeight() {
+		return grid.getHeight();
+	}
+	
+	public synchronized float getResolution() {
+		return grid.getResolution();
+	}
+	
+	public synchronized float getOriginX() {
+		return grid.getOriginX();
+	}
+	
+	public synchronized float getOriginY() {
+		return grid.getOriginY();
+	}
+	
+	// Copy of the grid that can be read without holding on to the map
+	public synchronized OccupancyGrid snapshot() {
+		return grid.copy();
+	}
+	
+	// Increases with every edit
+	public long getVersion() {
+		return version;
+	}
+	
+}
@@ -0,0 +1,306 @@
+package tech.mistermel.edisoncontrol.navigation.map;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Grid of occupied cells, one bit per cell. Every row starts at a new long so rows can be
+// processed a word at a time. Column 0, row 0 is the cell at (originX, originY), columns
+// go towards +x and rows towards +y. Not thread safe, see ObstacleMap.
+public class OccupancyGrid {
+
+	private static final int FILE_MAGIC = 0x4F434731;
+	
+	private final int width, height;
+	private final float resolution, originX, originY;
+	private final int wordsPerRow;
+	private final long[] bits;
+	
+	public OccupancyGrid(int width, int height, float resolution, float originX, float originY) {
+		this.width = width;
+		this.height = height;
+		this.resolution = resolution;
+		this.originX = originX;
+		this.originY = originY;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.bits = new long[wordsPerRow * height];
+	}
+	
+	private OccupancyGrid(OccupancyGrid grid, long[] bits) {
+		this.width = grid.width;
+		this.height = grid.height;
+		this.resolution = grid.resolution;
+		this.originX = grid.originX;
+		this.originY = grid.originY;
+		this.wordsPerRow = grid.wordsPerRow;
+		this.bits = bits;
+	}
+	
+	// The grid mirrored along the diagonal, so columns can be read a word at a time as rows
+	public OccupancyGrid transpose() {
+		OccupancyGrid result = new OccupancyGrid(height, width, resolution, originY, originX);
+		for(int row = 0; row < height; row++) {
+			for(int column = 0; column < width; column++) {
+				if(this.isOccupied(column, row)) {
+					result.set(row, column, true);
+				}
+			}
+		}
+		return result;
+	}
+	
+	public OccupancyGrid copy() {
+		return new OccupancyGrid(this, bits.clone());
+	}
+	
+	public boolean isOccupied(int column, int row) {
+		return (bits[row * wordsPerRow + (column >>> 6)] & (1L << column)) != 0;
+	}
+	
+	// Cells outside of the grid count as occupied, so nothing is planned through unknown space
+	public boolean isBlocked(int column, int row) {
+		return !this.contains(column, row) || this.isOccupied(column, row);
+	}
+	
+	public void set(int column, int row, boolean occupied) {
+		int index = row * wordsPerRow + (column >>> 6);
+		if(occupied) {
+			bits[index] |= 1L << column;
+		} else {
+			bits[index] &= ~(1L << column);
+		}
+	}
+	
+	// Whether each of the 64 cells from the given column on in the row is blocked, lowest bit first.
+	// Cells outside of the grid count as blocked, like in isBlocked().
+	public long getBlocked(int column, int row) {
+		if(row < 0 || row >= height) {
+			return -1L;
+		}
+		
+		int index = column >> 6;
+		int bitShift = column & 63;
+		int rowOffset = row * wordsPerRow;
+		
+		long word = index >= 0 && index < wordsPerRow ? bits[rowOffset + index] : -1L;
+		long result = word >>> bitShift;
+		if(bitShift != 0) {
+			long next = index + 1 >= 0 && index + 1 < wordsPerRow ? bits[rowOffset + index + 1] : -1L;
+			result |= next << (64 - bitShift);
+		}
+		
+		// The padding bits at the end of the row are past the edge of the grid
+		int inside = width - column;
+		if(inside < 64) {
+			result |= inside <= 0 ? -1L : -1L << inside;
+		}
+		return result;
+	}
+	
+	public boolean contains(int column, int row) {
+		return column >= 0 && column < width && row >= 0 && row < height;
+	}
+	
+	// Marks or clears every cell whose center lies within the circle, returns the
+	// affected cells as { firstColumn, firstRow, lastColumn, lastRow } or null if none
+	public int[] fillCircle(float x, float y, float radius, boolean occupied) {
+		int firstColumn = Math.max(0, this.toColumn(x - radius));
+		int lastColumn = Math.min(width - 1, this.toColumn(x + radius));
+		int firstRow = Math.max(0, this.toRow(y - radius));
+		int lastRow = Math.min(height - 1, this.toRow(y + radius));
+		if(firstColumn > lastColumn || firstRow > lastRow) {
+			return null;
+		}
+		
+		float radiusSquared = radius * radius;
+		for(int row = firstRow; row <= lastRow; row++) {
+			float dy = this.toY(row) - y;
+			for(int column = firstColumn; column <= lastColumn; column++) {
+				float dx = this.toX(column) - x;
+				if(dx * dx + dy * dy <= radiusSquared) {
+					this.set(column, row, occupied);
+				}
+			}
+		}
+		
+		return new int[] { firstColumn, firstRow, lastColumn, lastRow };
+	}
+	
+	// Runs of occupied cells within the region, as row, first column, length for every run
+	public int[] getRuns(int firstColumn, int firstRow, int lastColumn, int lastRow) {
+		int[] runs = new int[48];
+		int count = 0;
+		
+		for(int row = firstRow; row <= lastRow; row++) {
+			int column = firstColumn;
+			while(column <= lastColumn) {
+				if(!this.isOccupied(column, row)) {
+					column++;
+					continue;
+				}
+				
+				int start = column;
+				while(column <= lastColumn && this.isOccupied(column, row)) {
+					column++;
+				}
+				
+				if(count + 3 > runs.length) {
+					runs = Arrays.copyOf(runs, runs.length * 2);
+				}
+				runs[count++] = row;
+				runs[count++] = start;
+				runs[count++] = column - start;
+			}
+		}
+		
+		return Arrays.copyOf(runs, count);
+	}
+	
+	public void clear() {
+		Arrays.fill(bits, 0);
+	}
+	
+	// Grows every occupied cell into a disc of the given radius in cells, so a robot of that
+	// radius can be planned as a point. A disc is a stack of horizontal runs, so every row is
+	// the union of a few neighbouring rows widened by the half width of the disc at that offset.
+	public OccupancyGrid inflate(int radius) {
+		if(radius <= 0) {
+			return this.copy();
+		}
+		
+		long[] result = new long[bits.length];
+		long[] widened = new long[wordsPerRow];
+		
+		for(int row = 0; row < height; row++) {
+			int rowOffset = row * wordsPerRow;
+			boolean empty = true;
+			for(int i = 0; i < wordsPerRow && empty; i++) {
+				empty = bits[rowOffset + i] == 0;
+			}
+			if(empty) {
+				continue;
+			}
+			
+			for(int dy = -radius; dy <= radius; dy++) {
+				int target = row + dy;
+				if(target < 0 || target >= height) {
+					continue;
+				}
+				
+				int halfWidth = (int) Math.sqrt(radius * radius - dy * dy);
+				this.widen(rowOffset, halfWidth, widened);
+				
+				int targetOffset = target * wordsPerRow;
+				for(int i = 0; i < wordsPerRow; i++) {
+					result[targetOffset + i] |= widened[i];
+				}
+			}
+		}
+		
+		// Widening can spill into the padding bits at the end of each row
+		int padding = wordsPerRow * 64 - width;
+		if(padding > 0) {
+			long mask = -1L >>> padding;
+			for(int row = 0; row < height; row++) {
+				result[row * wordsPerRow + wordsPerRow - 1] &= mask;
+			}
+		}
+		
+		return new OccupancyGrid(this, result);
+	}
+	
+	// Every set bit in the row, also set in the distance bits to either side of it
+	private void widen(int rowOffset, int distance, long[] result) {
+		System.arraycopy(bits, rowOffset, result, 0, wordsPerRow);
+		
+		for(int shift = 1; shift <= distance; shift++) {
+			int wordShift = shift >>> 6;
+			int bitShift = shift & 63;
+			
+			for(int i = 0; i < wordsPerRow; i++) {
+				result[i] |= this.shiftedWord(rowOffset, i - wordShift, bitShift, true)
+						| this.shiftedWord(rowOffset, i + wordShift, bitShift, false);
+			}
+		}
+	}
+	
+	// The word at index moved towards higher columns (up) or lower columns, taking the bits
+	// that cross the word boundary from its neighbour
+	private long shiftedWord(int rowOffset, int index, int bitShift, boolean up) {
+		long word = index >= 0 && index < wordsPerRow ? bits[rowOffset + index] : 0;
+		if(bitShift == 0) {
+			return word;
+		}
+		
+		if(up) {
+			long carry = index - 1 >= 0 && index - 1 < wordsPerRow ? bits[rowOffset + index - 1] : 0;
+			return (word << bitShift) | (carry >>> (64 - bitShift));
+		}
+		
+		long carry = index + 1 >= 0 && index + 1 < wordsPerRow ? bits[rowOffset + index + 1] : 0;
+		return (word >>> bitShift) | (carry << (64 - bitShift));
+	}
+	
+	public int toColumn(float x) {
+		return (int) Math.floor((x - originX) / resolution);
+	}
+	
+	public int toRow(float y) {
+		return (int) Math.floor((y - originY) / resolution);
+	}
+	
+	// Center of the cell
+	public float toX(int column) {
+		return originX + (column + 0.5f) * resolution;
+	}
+	
+	public float toY(int row) {
+		return originY + (row + 0.5f) * resolution;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public float getResolution() {
+		return resolution;
+	}
+	
+	public float getOriginX() {
+		return originX;
+	}
+	
+	public float getOriginY() {
+		return originY;
+	}
+	
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(FILE_MAGIC);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeFloat(resolution);
+		out.writeFloat(originX);
+		out.writeFloat(originY);
+		for(long word : bits) {
+			out.writeLong(word);
+		}
+	}
+	
+	public static OccupancyGrid read(DataInputStream in) throws IOException {
+		if(in.readInt() != FILE_MAGIC) {
+			throw new IOException("Not an occupancy grid file");
+		}
+		
+		OccupancyGrid grid = new OccupancyGrid(in.readInt(), in.readInt(), in.readFloat(), in.readFloat(), in.readFloat());
+		for(int i = 0; i < grid.bits.length; i++) {
+			grid.bits[i] = in.readLong();
+		}
+		return grid;
+	}
+	
+}
@@ -0,0 +1,274 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Polyline through the tessellated route points, indexed by the distance travelled along it
+// rather than by spline parameter, since the spline points are not evenly spaced.
+public class ArcLengthPath {
+
+	public static class Projection {
+		
+		private int segment;
+		private float distanceAlong;
+		private float crossTrackError;
+		
+		public int getSegment() {
+			return segment;
+		}
+		
+		public float getDistanceAlong() {
+			return distanceAlong;
+		}
+		
+		// Positive when the projected point is to the right of the path
+		public float getCrossTrackError() {
+			return crossTrackError;
+		}
+		
+	}
+	
+	// Collects the polyline points, skipping repeated ones
+	private static class Points implements CubicSpline.PointConsumer {
+		
+		private float[] xs, ys, us;
+		private int count;
+		
+		private Points(int capacity) {
+			this.xs = new float[Math.max(2, capacity)];
+			this.ys = new float[xs.length];
+			this.us = new float[xs.length];
+		}
+		
+		@Override
+		public void accept(float u, float x, float y) {
+			if(count > 0 && x == xs[count - 1] && y == ys[count - 1]) {
+				// Consecutive spline segments share their end points
+				return;
+			}
+			
+			if(count == xs.length) {
+				xs = Arrays.copyOf(xs, count * 2);
+				ys = Arrays.copyOf(ys, count * 2);
+				us = Arrays.copyOf(us, count * 2);
+			}
+			
+			xs[count] = x;
+			ys[count] = y;
+			us[count] = u;
+			count++;
+		}
+		
+	}
+	
+	private final float[] xs, ys, distances;
+	private final int count;
+	private final SegmentGrid grid;
+	
+	// Spline parameter at every point, only when the path follows a spline
+	private final CubicSpline spline;
+	private final float[] us;
+	
+	public ArcLengthPath(PackedRoute route) {
+		this(collect(route), null);
+	}
+	
+	// Tessellates the spline for searching, positions along the path are then taken from the exact curve
+	public ArcLengthPath(CubicSpline spline, float maxError) {
+		this(collect(spline, maxError), spline);
+	}
+	
+	// From the points the spline was already tessellated into, one route and one array of parameters
+	// per spline segment, with the parameter of every point within its segment
+	static ArcLengthPath fromSegments(CubicSpline spline, List<PackedRoute> segments, List<float[]> parameters) {
+		int count = 0;
+		for(PackedRoute segment : segments) {
+			count += segment.size();
+		}
+		
+		Points points = new Points(count);
+		for(int i = 0; i < segments.size(); i++) {
+			PackedRoute segment = segments.get(i);
+			float[] segmentParameters = parameters.get(i);
+			for(int j = 0; j < segment.size(); j++) {
+				points.accept(i + segmentParameters[j], segment.getX(j), segment.getY(j));
+			}
+		}
+		return new ArcLengthPath(points, spline);
+	}
+	
+	private ArcLengthPath(Points points, CubicSpline spline) {
+		// Always have at least one segment, even if it has no length
+		if(points.count == 1) {
+			points.xs[1] = points.xs[0];
+			points.ys[1] = points.ys[0];
+			points.us[1] = points.us[0];
+			points.count++;
+		}
+		
+		this.xs = points.xs;
+		this.ys = points.ys;
+		this.us = spline == null ? null : points.us;
+		this.spline = spline;
+		this.count = points.count;
+		
+		this.distances = new float[count];
+		for(int i = 1; i < count; i++) {
+			distances[i] = distances[i - 1] + (float) Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+		}
+		
+		this.grid = new SegmentGrid(xs, ys, count);
+	}
+	
+	private static Points collect(PackedRoute route) {
+		if(route.isEmpty()) {
+			throw new IllegalArgumentException("Path must contain at least one point");
+		}
+		
+		Points points = new Points(route.size());
+		PackedRoute.Cursor cursor = route.cursor();
+		while(cursor.next()) {
+			points.accept(cursor.getIndex(), cursor.getX(), cursor.getY());
+		}
+		return points;
+	}
+	
+	private static Points collect(CubicSpline spline, float maxError) {
+		Points points = new Points(spline.getSegmentCount() * 8);
+		for(int i = 0; i < spline.getSegmentCount(); i++) {
+			spline.tessellate(i, maxError, points);
+		}
+		return points;
+	}
+	
+	// Finds the closest point on the path, only looking at the part between fromDistance and toDistance
+	public void project(float x, float y, float fromDistance, float toDistance, Projection result) {
+		int first = this.findSegment(fromDistance);
+		int last = this.findSegment(toDistance);
+		
+		int best = first;
+		float bestDistance = Float.MAX_VALUE;
+		for(int i = first; i <= last; i++) {
+			float distance = this.distanceToSegment(i, x, y);
+			if(distance < bestDistance) {
+				bestDistance = distance;
+				best = i;
+			}
+		}
+		
+		this.projectOnSegment(best, x, y, result);
+	}
+	
+	// Finds the closest point on the whole path
+	public void project(float x, float y, Projection result) {
+		this.projectOnSegment(grid.findNearest(x, y), x, y, result);
+	}
+	
+	public int findWithinRadius(float x, float y, float radius, int[] result) {
+		return grid.findWithinRadius(x, y, radius, result);
+	}
+	
+	private float getSegmentParameter(int segment, float x, float y) {
+		float segmentLength = distances[segment + 1] - distances[segment];
+		if(segmentLength <= 0) {
+			return 0;
+		}
+		
+		float t = ((x - xs[segment]) * (xs[segment + 1] - xs[segment]) + (y - ys[segment]) * (ys[segment + 1] - ys[segment])) / (segmentLength * segmentLength);
+		return Math.max(0, Math.min(1, t));
+	}
+	
+	private float distanceToSegment(int segment, float x, float y) {
+		float t = this.getSegmentParameter(segment, x, y);
+		return (float) Math.hypot(x - (xs[segment] + t * (xs[segment + 1] - xs[segment])), y - (ys[segment] + t * (ys[segment + 1] - ys[segment])));
+	}
+	
+	private void projectOnSegment(int segment, float x, float y, Projection result) {
+		float dx = xs[segment + 1] - xs[segment];
+		float dy = ys[segment + 1] - ys[segment];
+		float t = this.getSegmentParameter(segment, x, y);
+		
+		float px = xs[segment] + t * dx;
+		float py = ys[segment] + t * dy;
+		float distance = (float) Math.hypot(x - px, y - py);
+		
+		// y points down, so a positive cross product means the point is clockwise of the path direction
+		float cross = dx * (y - py) - dy * (x - px);
+		result.segment = segment;
+		result.distanceAlong = distances[segment] + t * (distances[segment + 1] - distances[segment]);
+		result.crossTrackError = cross < 0 ? -distance : distance;
+	}
+	
+	public int findSegment(float distance) {
+		int low = 0;
+		int high = count - 2;
+		while(low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if(distances[mid] <= distance) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+	
+	public float getX(float distance) {
+		int segment = this.findSegment(distance);
+		if(spline != null) {
+			return spline.getX(this.getParameter(segment, distance));
+		}
+		return xs[segment] + this.getSegmentFraction(segment, distance) * (xs[segment + 1] - xs[segment]);
+	}
+	
+	public float getY(float distance) {
+		int segment = this.findSegment(distance);
+		if(spline != null) {
+			return spline.getY(this.getParameter(segment, distance));
+		}
+		return ys[segment] + this.getSegmentFraction(segment, distance) * (ys[segment + 1] - ys[segment]);
+	}
+	
+	// Curvature of the spline at the distance in 1/m, positive for right turns. 0 when the path has no spline.
+	public float getCurvature(float distance) {
+		if(spline == null) {
+			return 0;
+		}
+		return spline.getCurvature(this.getParameter(this.findSegment(distance), distance));
+	}
+	
+	// The pieces between the points are nearly straight, so the parameter is interpolated linearly
+	private float getParameter(int segment, float distance) {
+		return us[segment] + this.getSegmentFraction(segment, distance) * (us[segment + 1] - us[segment]);
+	}
+	
+	private float getSegmentFraction(int segment, float distance) {
+		float segmentLength = distances[segment + 1] - distances[segment];
+		if(segmentLength <= 0) {
+			return 0;
+		}
+		return Math.max(0, Math.min(1, (distance - distances[segment]) / segmentLength));
+	}
+	
+	public float getLength() {
+		return distances[count - 1];
+	}
+	
+	public int getPointCount() {
+		return count;
+	}
+	
+	// Distance along the path of the point at the index
+	public float getPointDistance(int index) {
+		return distances[index];
+	}
+	
+	// Curvature of the spline at the point, 0 when the path has no spline
+	public float getPointCurvature(int index) {
+		if(spline == null) {
+			return 0;
+		}
+		return spline.getCurvature(us[index]);
+	}
+	
+}
@@ -1,6 +1,7 @@
 package tech.mistermel.edisoncontrol.navigation.route;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -14,45 +15,77 @@ public class CardinalSplineRoute implements RouteProvider {
 	private static final Logger logger = LoggerFactory.getLogger(CardinalSplineRoute.class);
 	
 	private List<Location> controlPoints = new ArrayList<>();
-	private int pointsPerSegment;
+	private final float maxError;
 	
-	public CardinalSplineRoute(int pointsPerSegment) {
-		this.pointsPerSegment = pointsPerSegment;
+	// Polynomial, tessellated points and their parameters on the polynomial per segment,
+	// segment i runs from control point i + 1 to i + 2
+	private List<CubicSpline> curves = new ArrayList<>();
+	private List<PackedRoute> segments = new ArrayList<>();
+	private List<float[]> parameters = new ArrayList<>();
+	
+	// The curves joined together, only when asked for since the last change
+	private CubicSpline spline;
+	
+	// Copy of the control point coordinates the segments were calculated from, the
+	// new control points are compared against these to find the changed segments
+	private float[] previousX = new float[0], previousY = new float[0];
+	
+	// maxError is the largest distance in meters the tessellated line may deviate from the curve
+	public CardinalSplineRoute(float maxError) {
+		this.maxError = maxError;
 	}
 	
-	public Location calculatePoint(int index, float t) {
+	// Catmull-Rom segment between control points index and index + 1, the tangent at
+	// each of them points from the control point before to the one after it
+	private CubicSpline calculateCurve(int index) {
 		Location p0 = controlPoints.get(index - 1);
 		Location p1 = controlPoints.get(index);
 		Location p2 = controlPoints.get(index + 1);
 		Location p3 = controlPoints.get(index + 2);
-	
-		float alpha = 1f;
 		
-		float t2 = t * t;
-		float t3 = t * t * t;
-		
-		float a = 2 * t3 - 3 * t2 + 1;
-		float b = -2 * t3 + 3 * t2;
-		float c = alpha * (t3 - 2 * t2 + t);
-		float d = alpha * (t3 - t2);
-		
-		float tx = a * p1.getX() + b * p2.getX() + c * (p2.getX() - p0.getX()) + d * (p3.getX() - p1.getX());
-		float ty = a * p1.getY() + b * p2.getY() + c * (p2.getY() - p0.getY()) + d * (p3.getY() - p1.getY());
-		return new Location(tx, ty);
+		return CubicSpline.hermite(p1.getX(), p1.getY(), p2.getX(), p2.getY(),
+				p2.getX() - p0.getX(), p2.getY() - p0.getY(), p3.getX() - p1.getX(), p3.getY() - p1.getY());
 	}
 	
 	@Override
-	public List<Location> calculatePoints() {
-		List<Location> locations = new ArrayList<>();
-		float timeInterval = 1.0f / (float) pointsPerSegment;
-		
-		for(int index = 1; index < controlPoints.size() - 2; index++) {
-			for(float time = 0; time <= 1.0f; time += timeInterval) {
-				locations.add(this.calculatePoint(index, time));
+	public PackedRoute calculatePoints() {
+		return this.calculatePoints(0, this.countPoints(0, segments.size()));
+	}
+	
+	@Override
+	public PackedRoute calculatePoints(int from, int to) {
+		PackedRoute.Builder builder = new PackedRoute.Builder(to - from);
+		int start = 0;
+		for(PackedRoute segment : segments) {
+			if(start >= to) {
+				break;
 			}
+			
+			int end = start + segment.size();
+			PackedRoute.Cursor cursor = segment.cursor(Math.max(0, Math.min(segment.size(), from - start)), Math.max(0, Math.min(segment.size(), to - start)));
+			while(cursor.next()) {
+				builder.add(cursor.getX(), cursor.getY());
+			}
+			start = end;
 		}
 		
-		return locations;
+		if(builder.size() != to - from) {
+			throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of bounds for " + start + " points");
+		}
+		return builder.build();
+	}
+	
+	@Override
+	public ArcLengthPath createPath() {
+		return curves.isEmpty() ? null : ArcLengthPath.fromSegments(this.getSpline(), segments, parameters);
+	}
+	
+	@Override
+	public CubicSpline getSpline() {
+		if(spline == null && !curves.isEmpty()) {
+			this.spline = CubicSpline.concat(curves);
+		}
+		return spline;
 	}
 	
 	@Override
@@ -61,6 +94,107 @@ public class CardinalSplineRoute implements RouteProvider {
 			throw new IllegalArgumentException("Waypoints list must contain at least 2 waypoints");
 		}
 		
+		this.clear();
+		this.updateWaypoints(waypoints);
+	}
+	
+	// A segment depends on the four control points around it, so only segments with a
+	// changed control point in that window are calculated again. Control points that are
+	// the same at the start and end of the list (after an insert or removal too) are
+	// matched up, everything in between counts as changed.
+	@Override
+	public RouteChange updateWaypoints(List<Waypoint> waypoints) {
+		int oldSegmentCount = segments.size();
+		int oldPointCount = this.countPoints(0, oldSegmentCount);
+		
+		if(waypoints.size() < 2) {
+			this.clear();
+			return new RouteChange(0, oldSegmentCount, 0, 0, oldPointCount, 0);
+		}
+		
+		this.setControlPoints(waypoints);
+		
+		int oldCount = previousX.length;
+		int newCount = controlPoints.size();
+		int maxMatched = Math.min(oldCount, newCount);
+		
+		int prefix = 0;
+		while(prefix < maxMatched && this.isUnchanged(prefix, prefix)) {
+			prefix++;
+		}
+		
+		int suffix = 0;
+		while(suffix < maxMatched - prefix && this.isUnchanged(oldCount - 1 - suffix, newCount - 1 - suffix)) {
+			suffix++;
+		}
+		
+		int newSegmentCount = newCount - 3;
+		int firstSegment = oldSegmentCount == 0 ? 0 : Math.max(0, prefix - 3);
+		int oldSegmentEnd = oldSegmentCount == 0 ? 0 : Math.min(oldSegmentCount, Math.max(firstSegment, oldCount - suffix));
+		int newSegmentEnd = oldSegmentCount == 0 ? newSegmentCount : Math.min(newSegmentCount, Math.max(firstSegment, newCount - suffix));
+		
+		int firstPoint = this.countPoints(0, firstSegment);
+		int removedPoints = this.countPoints(firstSegment, oldSegmentEnd);
+		
+		List<CubicSpline> changedCurves = new ArrayList<>();
+		List<PackedRoute> changedSegments = new ArrayList<>();
+		List<float[]> changedParameters = new ArrayList<>();
+		int addedPoints = 0;
+		for(int i = firstSegment; i < newSegmentEnd; i++) {
+			CubicSpline curve = this.calculateCurve(i + 1);
+			Tessellation tessellation = new Tessellation();
+			curve.tessellate(0, maxError, tessellation);
+			
+			changedCurves.add(curve);
+			changedSegments.add(tessellation.points.build());
+			changedParameters.add(tessellation.parameters);
+			addedPoints += tessellation.points.size();
+		}
+		
+		curves.subList(firstSegment, oldSegmentEnd).clear();
+		curves.addAll(firstSegment, changedCurves);
+		segments.subList(firstSegment, oldSegmentEnd).clear();
+		segments.addAll(firstSegment, changedSegments);
+		parameters.subList(firstSegment, oldSegmentEnd).clear();
+		parameters.addAll(firstSegment, changedParameters);
+		this.spline = null;
+		
+		this.previousX = new float[newCount];
+		this.previousY = new float[newCount];
+		for(int i = 0; i < newCount; i++) {
+			previousX[i] = controlPoints.get(i).getX();
+			previousY[i] = controlPoints.get(i).getY();
+		}
+		
+		RouteChange change = new RouteChange(firstSegment, oldSegmentEnd - firstSegment, newSegmentEnd - firstSegment, firstPoint, removedPoints, addedPoints);
+		logger.debug("Updated cardinal spline ({} waypoints, {})", waypoints.size(), change);
+		return change;
+	}
+	
+	private boolean isUnchanged(int oldIndex, int newIndex) {
+		Location location = controlPoints.get(newIndex);
+		return previousX[oldIndex] == location.getX() && previousY[oldIndex] == location.getY();
+	}
+	
+	private int countPoints(int fromSegment, int toSegment) {
+		int count = 0;
+		for(int i = fromSegment; i < toSegment; i++) {
+			count += segments.get(i).size();
+		}
+		return count;
+	}
+	
+	private void clear() {
+		controlPoints.clear();
+		curves.clear();
+		segments.clear();
+		parameters.clear();
+		spline = null;
+		previousX = new float[0];
+		previousY = new float[0];
+	}
+	
+	private void setControlPoints(List<Waypoint> waypoints) {
 		controlPoints.clear();
 		
 		// The Catmull-Rom spline requires two control points that the line will not go through
@@ -75,8 +209,6 @@ public class CardinalSplineRoute implements RouteProvider {
 			controlPoints.add(waypoint);
 		}
 		controlPoints.add(lastControlPoint);
-		
-		logger.debug("Imported waypoints into cardinal spline ({} waypoints, {} control points)", waypoints.size(), controlPoints.size());
 	}
 	
 	private Location extrapolate(Location first, Location second, boolean backwards) {
@@ -85,4 +217,22 @@ public class CardinalSplineRoute implements RouteProvider {
 		return new Location(first.getX() + (backwards ? -dx : dx), first.getY() + (backwards ? -dy : dy));
 	}
 	
+	// Points of a single segment, with the parameter of every point on it
+	private static class Tessellation implements CubicSpline.PointConsumer {
+		
+		private final PackedRoute.Builder points = new PackedRoute.Builder(16);
+		private float[] parameters = new float[16];
+		
+		@Override
+		public void accept(float u, float x, float y) {
+			if(points.size() == parameters.length) {
+				parameters = Arrays.copyOf(parameters, parameters.length * 2);
+			}
+			
+			parameters[points.size()] = u;
+			points.add(x, y);
+		}
+		
+	}
+	
 }
@@ -0,0 +1,194 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import java.util.List;
+
+// Piecewise cubic curve stored as polynomial coefficients, evaluated with Horner's method.
+// Every segment has x(t) = ax*t^3 + bx*t^2 + cx*t + dx and the same for y, with t running from
+// 0 to 1. Methods taking a parameter u use the segment index plus t, so u runs from 0 to getSegmentCount().
+public class CubicSpline {
+
+	public interface PointConsumer {
+		public void accept(float u, float x, float y);
+	}
+	
+	// ax, bx, cx, dx, ay, by, cy, dy
+	private static final int STRIDE = 8;
+	
+	// A segment is split into at most 2^MAX_DEPTH pieces when tessellating
+	private static final int MAX_DEPTH = 12;
+	
+	private final float[] coefficients;
+	private final int segmentCount;
+	
+	// The end of the last segment, kept exactly instead of summing its coefficients
+	private final float endX, endY;
+	
+	public CubicSpline(float[] coefficients, float endX, float endY) {
+		if(coefficients.length == 0 || coefficients.length % STRIDE != 0) {
+			throw new IllegalArgumentException("Expected " + STRIDE + " coefficients per segment, got " + coefficients.length);
+		}
+		
+		this.coefficients = coefficients;
+		this.segmentCount = coefficients.length / STRIDE;
+		this.endX = endX;
+		this.endY = endY;
+	}
+	
+	// Single segment from (x1, y1) to (x2, y2), leaving with tangent (tx1, ty1) and arriving with tangent (tx2, ty2)
+	public static CubicSpline hermite(float x1, float y1, float x2, float y2, float tx1, float ty1, float tx2, float ty2) {
+		return new CubicSpline(new float[] {
+				2 * x1 - 2 * x2 + tx1 + tx2, -3 * x1 + 3 * x2 - 2 * tx1 - tx2, tx1, x1,
+				2 * y1 - 2 * y2 + ty1 + ty2, -3 * y1 + 3 * y2 - 2 * ty1 - ty2, ty1, y1
+		}, x2, y2);
+	}
+	
+	// Joins consecutive splines, each one has to start where the previous one ends
+	public static CubicSpline concat(List<CubicSpline> splines) {
+		int length = 0;
+		for(CubicSpline spline : splines) {
+			length += spline.coefficients.length;
+		}
+		
+		float[] coefficients = new float[length];
+		int offset = 0;
+		for(CubicSpline spline : splines) {
+			System.arraycopy(spline.coefficients, 0, coefficients, offset, spline.coefficients.length);
+			offset += spline.coefficients.length;
+		}
+		
+		CubicSpline last = splines.get(splines.size() - 1);
+		return new CubicSpline(coefficients, last.endX, last.endY);
+	}
+	
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+	
+	private int getSegment(float u) {
+		return Math.max(0, Math.min(segmentCount - 1, (int) u));
+	}
+	
+	private float getT(float u, int segment) {
+		return Math.max(0, Math.min(1, u - segment));
+	}
+	
+	public float getX(float u) {
+		if(u >= segmentCount) {
+			return endX;
+		}
+		
+		int segment = this.getSegment(u);
+		return this.x(segment * STRIDE, this.getT(u, segment));
+	}
+	
+	public float getY(float u) {
+		if(u >= segmentCount) {
+			return endY;
+		}
+		
+		int segment = this.getSegment(u);
+		return this.y(segment * STRIDE, this.getT(u, segment));
+	}
+	
+	// Derivative of the position to the parameter, its length is not the speed along the curve in meters
+	public float getTangentX(float u) {
+		int segment = this.getSegment(u);
+		return this.tangentX(segment * STRIDE, this.getT(u, segment));
+	}
+	
+	public float getTangentY(float u) {
+		int segment = this.getSegment(u);
+		return this.tangentY(segment * STRIDE, this.getT(u, segment));
+	}
+	
+	// In 1/m, positive when the curve bends clockwise as seen on the map (y points down)
+	public float getCurvature(float u) {
+		int segment = this.getSegment(u);
+		int offset = segment * STRIDE;
+		float t = this.getT(u, segment);
+		
+		float dx = this.tangentX(offset, t);
+		float dy = this.tangentY(offset, t);
+		float ddx = 6 * coefficients[offset] * t + 2 * coefficients[offset + 1];
+		float ddy = 6 * coefficients[offset + 4] * t + 2 * coefficients[offset + 5];
+		
+		float speedSquared = dx * dx + dy * dy;
+		if(speedSquared == 0) {
+			return 0;
+		}
+		return (dx * ddy - dy * ddx) / (speedSquared * (float) Math.sqrt(speedSquared));
+	}
+	
+	private float x(int offset, float t) {
+		return ((coefficients[offset] * t + coefficients[offset + 1]) * t + coefficients[offset + 2]) * t + coefficients[offset + 3];
+	}
+	
+	private float y(int offset, float t) {
+		return ((coefficients[offset + 4] * t + coefficients[offset + 5]) * t + coefficients[offset + 6]) * t + coefficients[offset + 7];
+	}
+	
+	private float tangentX(int offset, float t) {
+		return (3 * coefficients[offset] * t + 2 * coefficients[offset + 1]) * t + coefficients[offset + 2];
+	}
+	
+	private float tangentY(int offset, float t) {
+		return (3 * coefficients[offset + 4] * t + 2 * coefficients[offset + 5]) * t + coefficients[offset + 6];
+	}
+	
+	// Places points where the curve bends rather than at a fixed interval: a piece is split in half until it
+	// stays within maxError of its chord, so tight curves get many points and straight parts only a few.
+	// Both ends of the segment are included, and they are exactly the start of this and the next segment.
+	public void tessellate(int segment, float maxError, PointConsumer consumer) {
+		float startX = this.getX(segment), startY = this.getY(segment);
+		float endX = this.getX(segment + 1), endY = this.getY(segment + 1);
+		
+		consumer.accept(segment, startX, startY);
+		this.subdivide(segment, maxError, 0, startX, startY, 1, endX, endY, 0, consumer);
+	}
+	
+	// Adds the points after t0 up to and including t1
+	private void subdivide(int segment, float maxError, float t0, float x0, float y0, float t1, float x1, float y1, int depth, PointConsumer consumer) {
+		int offset = segment * STRIDE;
+		if(depth >= MAX_DEPTH || this.isFlat(offset, maxError, t0, x0, y0, t1, x1, y1)) {
+			consumer.accept(segment + t1, x1, y1);
+			return;
+		}
+		
+		float tm = (t0 + t1) / 2;
+		float xm = this.x(offset, tm), ym = this.y(offset, tm);
+		
+		this.subdivide(segment, maxError, t0, x0, y0, tm, xm, ym, depth + 1, consumer);
+		this.subdivide(segment, maxError, tm, xm, ym, t1, x1, y1, depth + 1, consumer);
+	}
+	
+	// The piece between t0 and t1 is a cubic Bezier curve whose inner control points follow from the
+	// tangents at its ends. The curve lies within the hull of its control points, so if those are close
+	// enough to the chord the whole piece is, also where it turns sharply in between.
+	private boolean isFlat(int offset, float maxError, float t0, float x0, float y0, float t1, float x1, float y1) {
+		float third = (t1 - t0) / 3;
+		
+		float controlX = x0 + this.tangentX(offset, t0) * third;
+		float controlY = y0 + this.tangentY(offset, t0) * third;
+		if(distanceToChord(controlX, controlY, x0, y0, x1, y1) > maxError) {
+			return false;
+		}
+		
+		controlX = x1 - this.tangentX(offset, t1) * third;
+		controlY = y1 - this.tangentY(offset, t1) * third;
+		return distanceToChord(controlX, controlY, x0, y0, x1, y1) <= maxError;
+	}
+	
+	private static float distanceToChord(float x, float y, float x0, float y0, float x1, float y1) {
+		float dx = x1 - x0;
+		float dy = y1 - y0;
+		float lengthSquared = dx * dx + dy * dy;
+		
+		float t = 0;
+		if(lengthSquared > 0) {
+			t = Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / lengthSquared));
+		}
+		
+		return (float) Math.hypot(x - (x0 + t * dx), y - (y0 + t * dy));
+	}
+	
+}
@@ -0,0 +1,271 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.mistermel.edisoncontrol.navigation.Waypoint;
+import tech.mistermel.edisoncontrol.navigation.map.GridPlanner;
+import tech.mistermel.edisoncontrol.navigation.map.ObstacleMap;
+import tech.mistermel.edisoncontrol.navigation.map.OccupancyGrid;
+
+// Plans a path around the obstacles on the map between every two waypoints, then smooths
+// the waypoints together with the corners of those paths into a spline
+public class GridPlannerRoute implements RouteProvider {
+
+	private static final Logger logger = LoggerFactory.getLogger(GridPlannerRoute.class);
+	
+	// Every round halves the legs the spline still leaves the free space on
+	private static final int MAX_TIGHTEN_ROUNDS = 12;
+	
+	private final RouteProvider smoother;
+	private final ObstacleMap map;
+	private final float robotRadius;
+	private final GridPlanner planner = new GridPlanner();
+	
+	// The map with every obstacle grown by the robot radius, which the spline has to stay out of, and
+	// grown by two cells more for planning. Made again when the map has changed.
+	private OccupancyGrid clearanceGrid;
+	private OccupancyGrid inflatedGrid;
+	private long inflatedVersion = -1;
+	
+	// The end of the last piece of spline checked, and whether the spline was clear so far
+	private float checkedX, checkedY;
+	private boolean clear;
+	
+	// Legs that were planned for the current map, by their start and end
+	private Map<Leg, float[]> legs = new HashMap<>();
+	
+	public GridPlannerRoute(RouteProvider smoother, ObstacleMap map, float robotRadius) {
+		this.smoother = smoother;
+		this.map = map;
+		this.robotRadius = robotRadius;
+	}
+	
+	@Override
+	public PackedRoute calculatePoints() {
+		return smoother.calculatePoints();
+	}
+	
+	@Override
+	public PackedRoute calculatePoints(int from, int to) {
+		return smoother.calculatePoints(from, to);
+	}
+	
+	@Override
+	public ArcLengthPath createPath() {
+		return smoother.createPath();
+	}
+	
+	@Override
+	public CubicSpline getSpline() {
+		return smoother.getSpline();
+	}
+	
+	@Override
+	public void importWaypoints(List<Waypoint> waypoints) {
+		List<Waypoint> points = this.plan(waypoints);
+		smoother.importWaypoints(points);
+		this.tighten(points, null);
+	}
+	
+	@Override
+	public RouteChange updateWaypoints(List<Waypoint> waypoints) {
+		List<Waypoint> points = this.plan(waypoints);
+		return this.tighten(points, smoother.updateWaypoints(points));
+	}
+	
+	// The spline through the corners swings out around them, and can pass closer to an obstacle than
+	// the robot radius. Every leg where it does gets a point halfway, which pulls the spline towards
+	// the straight leg the planner found clear, until the spline is clear as well. The changes of
+	// these extra updates are merged into the given one.
+	private RouteChange tighten(List<Waypoint> points, RouteChange change) {
+		if(points.size() < 2) {
+			return change;
+		}
+		
+		for(int round = 0; round < MAX_TIGHTEN_ROUNDS; round++) {
+			List<Waypoint> tightened = this.splitBlockedLegs(points, smoother.getSpline());
+			if(tightened == null) {
+				return change;
+			}
+			if(tightened == points) {
+				break;
+			}
+			
+			points = tightened;
+			RouteChange next = smoother.updateWaypoints(points);
+			change = change == null ? null : change.then(next);
+		}
+		
+		logger.warn("Smoothed route still passes closer than {}m to an obstacle", robotRadius);
+		return change;
+	}
+	
+	// The points with one inserted halfway along every leg where the spline leaves the free space, and
+	// along the legs before and after it, which set the tangents at its ends. After a sharp turn the
+	// spline overshoots by about the length of those legs. Null if the spline is clear everywhere,
+	// and the same list if none of the legs is long enough to split.
+	private List<Waypoint> splitBlockedLegs(List<Waypoint> points, CubicSpline spline) {
+		float resolution = clearanceGrid.getResolution();
+		int legCount = points.size() - 1;
+		
+		// The spline has a segment for every leg
+		boolean[] splitLeg = new boolean[legCount];
+		boolean blocked = false;
+		for(int i = 0; i < legCount; i++) {
+			if(!this.isClear(spline, i, resolution)) {
+				blocked = true;
+				for(int j = Math.max(0, i - 1); j <= Math.min(legCount - 1, i + 1); j++) {
+					splitLeg[j] = true;
+				}
+			}
+		}
+		
+		if(!blocked) {
+			return null;
+		}
+		
+		List<Waypoint> result = new ArrayList<>(points.size() * 2);
+		result.add(points.get(0));
+		
+		boolean split = false;
+		for(int i = 0; i < legCount; i++) {
+			Waypoint from = points.get(i);
+			Waypoint to = points.get(i + 1);
+			
+			if(splitLeg[i] && Math.hypot(to.getX() - from.getX(), to.getY() - from.getY()) > resolution) {
+				result.add(new Waypoint((from.getX() + to.getX()) / 2, (from.getY() + to.getY()) / 2));
+				split = true;
+			}
+			result.add(to);
+		}
+		
+		return split ? result : points;
+	}
+	
+	private boolean isClear(CubicSpline spline, int segment, float resolution) {
+		this.checkedX = spline.getX(segment);
+		this.checkedY = spline.getY(segment);
+		this.clear = true;
+		spline.tessellate(segment, resolution / 4, this::checkPiece);
+		return clear;
+	}
+	
+	// Samples the straight piece from the end of the previous one at half a cell apart. The spline is
+	// only within a quarter cell of the pieces, and the route is drawn and followed from pieces of its
+	// own, so the cells half a cell around every sample have to be free as well.
+	private void checkPiece(float u, float x, float y) {
+		float resolution = clearanceGrid.getResolution();
+		float margin = resolution / 2;
+		
+		int steps = Math.max(1, (int) Math.ceil(Math.hypot(x - checkedX, y - checkedY) / margin));
+		for(int i = 0; i <= steps && clear; i++) {
+			float sampleX = checkedX + (x - checkedX) * i / steps;
+			float sampleY = checkedY + (y - checkedY) * i / steps;
+			this.clear = this.isFree(sampleX - margin, sampleY - margin) && this.isFree(sampleX + margin, sampleY - margin)
+					&& this.isFree(sampleX - margin, sampleY + margin) && this.isFree(sampleX + margin, sampleY + margin);
+		}
+		
+		this.checkedX = x;
+		this.checkedY = y;
+	}
+	
+	private boolean isFree(float x, float y) {
+		return !clearanceGrid.isBlocked(clearanceGrid.toColumn(x), clearanceGrid.toRow(y));
+	}
+	
+	// The waypoints with the corners of the path to each of them inserted before it
+	private List<Waypoint> plan(List<Waypoint> waypoints) {
+		if(waypoints.size() < 2) {
+			return waypoints;
+		}
+		
+		long startTime = System.nanoTime();
+		this.updateGrid();
+		
+		Map<Leg, float[]> plannedLegs = new HashMap<>();
+		List<Waypoint> result = new ArrayList<>();
+		result.add(waypoints.get(0));
+		
+		int plannedCount = 0;
+		for(int i = 1; i < waypoints.size(); i++) {
+			Waypoint from = waypoints.get(i - 1);
+			Waypoint to = waypoints.get(i);
+			Leg leg = new Leg(from.getX(), from.getY(), to.getX(), to.getY());
+			
+			// Only legs with a moved end or on a changed map have to be planned again
+			float[] corners = legs.get(leg);
+			if(corners == null) {
+				corners = planner.plan(inflatedGrid, leg.fromX, leg.fromY, leg.toX, leg.toY);
+				plannedCount++;
+				
+				if(corners == null) {
+					logger.warn("No path around the obstacles from ({}, {}) to ({}, {}), driving straight", leg.fromX, leg.fromY, leg.toX, leg.toY);
+					corners = new float[0];
+				}
+			}
+			plannedLegs.put(leg, corners);
+			
+			for(int j = 0; j < corners.length; j += 2) {
+				result.add(new Waypoint(corners[j], corners[j + 1]));
+			}
+			result.add(to);
+		}
+		
+		this.legs = plannedLegs;
+		logger.debug("Planned {} of {} legs in {}ms ({} points)", plannedCount, waypoints.size() - 1, (System.nanoTime() - startTime) / 1000000, result.size());
+		return result;
+	}
+	
+	private void updateGrid() {
+		// The version is read before the snapshot, so an edit in between only causes another update later
+		long version = map.getVersion();
+		if(version == inflatedVersion) {
+			return;
+		}
+		
+		// Planned with two cells to spare, so the cells around the corners are clear for the check of the spline
+		OccupancyGrid grid = map.snapshot();
+		this.clearanceGrid = grid.inflate((int) Math.ceil(robotRadius / grid.getResolution()));
+		this.inflatedGrid = clearanceGrid.inflate(2);
+		this.inflatedVersion = version;
+		legs.clear();
+	}
+	
+	private static class Leg {
+		
+		private final float fromX, fromY, toX, toY;
+		
+		public Leg(float fromX, float fromY, float toX, float toY) {
+			this.fromX = fromX;
+			this.fromY = fromY;
+			this.toX = toX;
+			this.toY = toY;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Leg)) {
+				return false;
+			}
+			
+			Leg other = (Leg) obj;
+			return fromX == other.fromX && fromY == other.fromY && toX == other.toX && toY == other.toY;
+		}
+		
+		@Override
+		public int hashCode() {
+			int result = Float.floatToIntBits(fromX);
+			result = 31 * result + Float.floatToIntBits(fromY);
+			result = 31 * result + Float.floatToIntBits(toX);
+			return 31 * result + Float.floatToIntBits(toY);
+		}
+		
+	}
+	
+}
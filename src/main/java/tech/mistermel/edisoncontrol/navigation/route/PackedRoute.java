@@ -0,0 +1,136 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import java.util.Arrays;
+
+// Route points packed into a single float array (x0, y0, x1, y1, ...) instead of one
+// Location object per point. Instances are immutable, use the Builder to create one.
+public class PackedRoute {
+
+	public static final PackedRoute EMPTY = new PackedRoute(new float[0], 0);
+	
+	public static class Builder {
+		
+		private float[] coordinates;
+		private int size;
+		
+		public Builder() {
+			this(64);
+		}
+		
+		public Builder(int capacity) {
+			this.coordinates = new float[Math.max(1, capacity) * 2];
+		}
+		
+		public Builder add(float x, float y) {
+			this.ensureCapacity(size + 1);
+			coordinates[size * 2] = x;
+			coordinates[size * 2 + 1] = y;
+			size++;
+			return this;
+		}
+		
+		public Builder addAll(PackedRoute route) {
+			this.ensureCapacity(size + route.size);
+			System.arraycopy(route.coordinates, 0, coordinates, size * 2, route.size * 2);
+			size += route.size;
+			return this;
+		}
+		
+		private void ensureCapacity(int points) {
+			if(points * 2 > coordinates.length) {
+				coordinates = Arrays.copyOf(coordinates, Math.max(points * 2, coordinates.length * 2));
+			}
+		}
+		
+		public int size() {
+			return size;
+		}
+		
+		public PackedRoute build() {
+			return new PackedRoute(coordinates.length == size * 2 ? coordinates : Arrays.copyOf(coordinates, size * 2), size);
+		}
+		
+	}
+	
+	// Iterates over a range of points without creating an object per point
+	public class Cursor {
+		
+		private final int end;
+		private int index;
+		
+		private Cursor(int from, int to) {
+			this.index = from - 1;
+			this.end = to;
+		}
+		
+		public boolean next() {
+			return ++index < end;
+		}
+		
+		public int getIndex() {
+			return index;
+		}
+		
+		public float getX() {
+			return coordinates[index * 2];
+		}
+		
+		public float getY() {
+			return coordinates[index * 2 + 1];
+		}
+		
+	}
+	
+	private final float[] coordinates;
+	private final int size;
+	
+	private PackedRoute(float[] coordinates, int size) {
+		this.coordinates = coordinates;
+		this.size = size;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public float getX(int index) {
+		return coordinates[index * 2];
+	}
+	
+	public float getY(int index) {
+		return coordinates[index * 2 + 1];
+	}
+	
+	public Cursor cursor() {
+		return new Cursor(0, size);
+	}
+	
+	public Cursor cursor(int from, int to) {
+		if(from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of bounds for " + size + " points");
+		}
+		return new Cursor(from, to);
+	}
+	
+	public double distance(int from, int to) {
+		return Math.hypot(this.getX(to) - this.getX(from), this.getY(to) - this.getY(from));
+	}
+	
+	public double distanceTo(int index, float x, float y) {
+		return Math.hypot(x - this.getX(index), y - this.getY(index));
+	}
+	
+	// Length of the polyline through all points
+	public double getLength() {
+		double length = 0;
+		for(int i = 1; i < size; i++) {
+			length += this.distance(i - 1, i);
+		}
+		return length;
+	}
+	
+}
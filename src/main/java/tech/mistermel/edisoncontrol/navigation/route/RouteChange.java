@@ -0,0 +1,73 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+// Describes how the route points changed: starting at firstPoint, removedPoints points
+// were replaced by addedPoints new ones. The same goes for the spline segments.
+public class RouteChange {
+
+	private final int firstSegment, removedSegments, addedSegments;
+	private final int firstPoint, removedPoints, addedPoints;
+	
+	public RouteChange(int firstSegment, int removedSegments, int addedSegments, int firstPoint, int removedPoints, int addedPoints) {
+		this.firstSegment = firstSegment;
+		this.removedSegments = removedSegments;
+		this.addedSegments = addedSegments;
+		this.firstPoint = firstPoint;
+		this.removedPoints = removedPoints;
+		this.addedPoints = addedPoints;
+	}
+	
+	// A single change covering this one followed by the next one, for updates that are sent together.
+	// Where the two ranges do not overlap, the unchanged points in between count as replaced.
+	public RouteChange then(RouteChange next) {
+		if(this.isEmpty()) {
+			return next;
+		}
+		if(next.isEmpty()) {
+			return this;
+		}
+		
+		int firstSegment = Math.min(this.firstSegment, next.firstSegment);
+		int segmentEnd = Math.max(this.firstSegment + addedSegments, next.firstSegment + next.removedSegments);
+		int firstPoint = Math.min(this.firstPoint, next.firstPoint);
+		int pointEnd = Math.max(this.firstPoint + addedPoints, next.firstPoint + next.removedPoints);
+		
+		// The ends are in between the two changes, before this one they were shifted by what it
+		// added and removed, after the next one by what that added and removed
+		return new RouteChange(firstSegment, segmentEnd - (addedSegments - removedSegments) - firstSegment, segmentEnd + next.addedSegments - next.removedSegments - firstSegment,
+				firstPoint, pointEnd - (addedPoints - removedPoints) - firstPoint, pointEnd + next.addedPoints - next.removedPoints - firstPoint);
+	}
+	
+	public boolean isEmpty() {
+		return removedPoints == 0 && addedPoints == 0;
+	}
+	
+	public int getFirstSegment() {
+		return firstSegment;
+	}
+	
+	public int getRemovedSegments() {
+		return removedSegments;
+	}
+	
+	public int getAddedSegments() {
+		return addedSegments;
+	}
+	
+	public int getFirstPoint() {
+		return firstPoint;
+	}
+	
+	public int getRemovedPoints() {
+		return removedPoints;
+	}
+	
+	public int getAddedPoints() {
+		return addedPoints;
+	}
+	
+	@Override
+	public String toString() {
+		return "segments " + firstSegment + " (-" + removedSegments + ", +" + addedSegments + "), points " + firstPoint + " (-" + removedPoints + ", +" + addedPoints + ")";
+	}
+	
+}
@@ -2,12 +2,24 @@ package tech.mistermel.edisoncontrol.navigation.route;
 
 import java.util.List;
 
-import tech.mistermel.edisoncontrol.navigation.Location;
 import tech.mistermel.edisoncontrol.navigation.Waypoint;
 
 public interface RouteProvider {
 
-	public List<Location> calculatePoints();
+	public PackedRoute calculatePoints();
+	
+	// Only the points from index from up to to, for sending the part of the route that changed
+	public PackedRoute calculatePoints(int from, int to);
+	
+	// The path along the points already calculated, null when there is no route
+	public ArcLengthPath createPath();
+	
+	// The exact curve the points were calculated from, null when there is no route
+	public CubicSpline getSpline();
+	
 	public void importWaypoints(List<Waypoint> waypoints);
 	
+	// Updates the route for the new waypoints, only recalculating the parts that changed
+	public RouteChange updateWaypoints(List<Waypoint> waypoints);
+	
 }
@@ -0,0 +1,204 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import java.util.Arrays;
+
+// Uniform grid over the segments of a polyline. Each cell lists the segments whose
+// bounding box overlaps it, stored as one flat array with per-cell offsets.
+// Queries are synchronized, as they share the deduplication stamps.
+public class SegmentGrid {
+
+	private static final float DEFAULT_CELL_SIZE = 0.25f;
+	private static final int MAX_CELLS = 1 << 16;
+	
+	private final float[] xs, ys;
+	private final int segmentCount;
+	
+	private final float minX, minY, cellSize;
+	private final int columns, rows;
+	private final int[] cellStart, cellSegments;
+	
+	private final int[] stamps;
+	private int stamp;
+	
+	private int nearestSegment;
+	private float nearestDistance;
+	
+	public SegmentGrid(float[] xs, float[] ys, int pointCount) {
+		this.xs = xs;
+		this.ys = ys;
+		this.segmentCount = pointCount - 1;
+		this.stamps = new int[segmentCount];
+		
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for(int i = 0; i < pointCount; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		
+		// Grow the cells for very large routes, so the grid stays small
+		float cellSize = DEFAULT_CELL_SIZE;
+		while(((long) ((maxX - minX) / cellSize) + 1) * ((long) ((maxY - minY) / cellSize) + 1) > MAX_CELLS) {
+			cellSize *= 2;
+		}
+		
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.columns = (int) ((maxX - minX) / cellSize) + 1;
+		this.rows = (int) ((maxY - minY) / cellSize) + 1;
+		
+		// Counting pass first, then fill, so every cell gets a contiguous range
+		this.cellStart = new int[columns * rows + 1];
+		for(int i = 0; i < segmentCount; i++) {
+			this.forEachCell(i, cell -> cellStart[cell + 1]++);
+		}
+		for(int cell = 0; cell < columns * rows; cell++) {
+			cellStart[cell + 1] += cellStart[cell];
+		}
+		
+		this.cellSegments = new int[cellStart[columns * rows]];
+		int[] fill = new int[columns * rows];
+		for(int i = 0; i < segmentCount; i++) {
+			final int segment = i;
+			this.forEachCell(i, cell -> cellSegments[cellStart[cell] + fill[cell]++] = segment);
+		}
+	}
+	
+	private interface CellConsumer {
+		public void accept(int cell);
+	}
+	
+	private void forEachCell(int segment, CellConsumer consumer) {
+		int firstColumn = this.column(Math.min(xs[segment], xs[segment + 1]));
+		int lastColumn = this.column(Math.max(xs[segment], xs[segment + 1]));
+		int firstRow = this.row(Math.min(ys[segment], ys[segment + 1]));
+		int lastRow = this.row(Math.max(ys[segment], ys[segment + 1]));
+		
+		for(int row = firstRow; row <= lastRow; row++) {
+			for(int column = firstColumn; column <= lastColumn; column++) {
+				consumer.accept(row * columns + column);
+			}
+		}
+	}
+	
+	private int column(float x) {
+		return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+	}
+	
+	private int row(float y) {
+		return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+	}
+	
+	// Searches rings of cells around the point until no unvisited cell can contain anything closer.
+	// Returns the index of the closest segment.
+	public synchronized int findNearest(float x, float y) {
+		this.nextStamp();
+		this.nearestSegment = -1;
+		this.nearestDistance = Float.MAX_VALUE;
+		
+		int centerColumn = this.column(x);
+		int centerRow = this.row(y);
+		int maxRing = Math.max(columns, rows);
+		
+		for(int ring = 0; ring <= maxRing; ring++) {
+			// Cells in this ring and beyond are at least (ring - 1) cell sizes away
+			if(nearestDistance <= (ring - 1) * cellSize) {
+				break;
+			}
+			
+			for(int row = centerRow - ring; row <= centerRow + ring; row++) {
+				if(row < 0 || row >= rows) {
+					continue;
+				}
+				
+				boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+				int step = edgeRow ? 1 : Math.max(1, ring * 2);
+				for(int column = centerColumn - ring; column <= centerColumn + ring; column += step) {
+					if(column >= 0 && column < columns) {
+						this.visitNearest(row * columns + column, x, y);
+					}
+				}
+			}
+		}
+		
+		return nearestSegment;
+	}
+	
+	private void visitNearest(int cell, float x, float y) {
+		for(int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+			int segment = cellSegments[i];
+			if(stamps[segment] == stamp) {
+				continue;
+			}
+			stamps[segment] = stamp;
+			
+			float distance = this.distanceToSegment(segment, x, y);
+			if(distance < nearestDistance) {
+				nearestDistance = distance;
+				nearestSegment = segment;
+			}
+		}
+	}
+	
+	// Collects the segments that come within the radius of the point, up to the size of the result array.
+	// Returns the number of segments found.
+	public synchronized int findWithinRadius(float x, float y, float radius, int[] result) {
+		this.nextStamp();
+		
+		int firstColumn = this.column(x - radius);
+		int lastColumn = this.column(x + radius);
+		int firstRow = this.row(y - radius);
+		int lastRow = this.row(y + radius);
+		
+		int found = 0;
+		for(int row = firstRow; row <= lastRow; row++) {
+			for(int column = firstColumn; column <= lastColumn; column++) {
+				int cell = row * columns + column;
+				
+				for(int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+					int segment = cellSegments[i];
+					if(stamps[segment] == stamp) {
+						continue;
+					}
+					stamps[segment] = stamp;
+					
+					if(this.distanceToSegment(segment, x, y) <= radius) {
+						if(found == result.length) {
+							return found;
+						}
+						result[found++] = segment;
+					}
+				}
+			}
+		}
+		
+		return found;
+	}
+	
+	private void nextStamp() {
+		if(++stamp == 0) {
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+	}
+	
+	private float distanceToSegment(int segment, float x, float y) {
+		float dx = xs[segment + 1] - xs[segment];
+		float dy = ys[segment + 1] - ys[segment];
+		float lengthSquared = dx * dx + dy * dy;
+		
+		float t = 0;
+		if(lengthSquared > 0) {
+			t = Math.max(0, Math.min(1, ((x - xs[segment]) * dx + (y - ys[segment]) * dy) / lengthSquared));
+		}
+		
+		return (float) Math.hypot(x - (xs[segment] + t * dx), y - (ys[segment] + t * dy));
+	}
+	
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+}
@@ -0,0 +1,72 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+// Target speed at every point of a path in m/s. In a curve the speed is limited by the sideways
+// acceleration the robot can take, which alone would ask for instant changes of speed. A backward pass
+// then lowers the speed before every curve to what the robot can brake down from, and a forward pass
+// lowers it after every curve to what the robot can accelerate back up to.
+public class VelocityProfile {
+
+	private final ArcLengthPath path;
+	private final float[] speeds;
+	
+	// The profile starts and ends at minSpeed, so the robot does not stop short of the end of the path
+	public VelocityProfile(ArcLengthPath path, float maxSpeed, float minSpeed, float maxAcceleration, float maxDeceleration, float maxLateralAcceleration) {
+		this.path = path;
+		
+		int count = path.getPointCount();
+		this.speeds = new float[count];
+		
+		for(int i = 0; i < count; i++) {
+			float curvature = Math.abs(path.getPointCurvature(i));
+			float curveSpeed = curvature > 0 ? (float) Math.sqrt(maxLateralAcceleration / curvature) : maxSpeed;
+			speeds[i] = Math.max(minSpeed, Math.min(maxSpeed, curveSpeed));
+		}
+		
+		// v^2 = v0^2 + 2 * a * s, from rest at the start and towards rest at the end
+		speeds[0] = minSpeed;
+		for(int i = 1; i < count; i++) {
+			float distance = path.getPointDistance(i) - path.getPointDistance(i - 1);
+			speeds[i] = Math.min(speeds[i], (float) Math.sqrt(speeds[i - 1] * speeds[i - 1] + 2 * maxAcceleration * distance));
+		}
+		
+		speeds[count - 1] = minSpeed;
+		for(int i = count - 2; i >= 0; i--) {
+			float distance = path.getPointDistance(i + 1) - path.getPointDistance(i);
+			speeds[i] = Math.min(speeds[i], (float) Math.sqrt(speeds[i + 1] * speeds[i + 1] + 2 * maxDeceleration * distance));
+		}
+	}
+	
+	public float getSpeed(float distance) {
+		int segment = path.findSegment(distance);
+		float start = path.getPointDistance(segment);
+		float length = path.getPointDistance(segment + 1) - start;
+		if(length <= 0) {
+			return speeds[segment];
+		}
+		
+		float fraction = Math.max(0, Math.min(1, (distance - start) / length));
+		return speeds[segment] + fraction * (speeds[segment + 1] - speeds[segment]);
+	}
+	
+	// Seconds it takes to drive the path from the distance on when following the profile exactly
+	public float getTimeRemaining(float distance) {
+		int first = path.findSegment(distance) + 1;
+		float time = 0;
+		float previousDistance = distance, previousSpeed = this.getSpeed(distance);
+		
+		for(int i = first; i < speeds.length; i++) {
+			float segmentLength = path.getPointDistance(i) - previousDistance;
+			if(previousSpeed + speeds[i] > 0) {
+				time += 2 * segmentLength / (previousSpeed + speeds[i]);
+			}
+			previousDistance = path.getPointDistance(i);
+			previousSpeed = speeds[i];
+		}
+		return time;
+	}
+	
+	public ArcLengthPath getPath() {
+		return path;
+	}
+	
+}
@@ -0,0 +1,411 @@
+package tech.mistermel.edisoncontrol.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.mistermel.edisoncontrol.ConfigHandler;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.scheduler.ManualClock;
+import tech.mistermel.edisoncontrol.serial.ControlSource;
+import tech.mistermel.edisoncontrol.serial.MotherboardFrameCodec;
+import tech.mistermel.edisoncontrol.serial.SerialInterface;
+import tech.mistermel.edisoncontrol.telemetry.BlackBoxReader;
+import tech.mistermel.edisoncontrol.telemetry.BlackBoxRecorder;
+import tech.mistermel.edisoncontrol.web.packet.NavigationCreateWaypointPacket;
+import tech.mistermel.edisoncontrol.web.packet.NavigationTogglePacket;
+import tech.mistermel.edisoncontrol.web.packet.NavigationWaypointsPacket;
+import tech.mistermel.edisoncontrol.web.packet.Packet;
+
+// Feeds the sensor readings of a black box recording back into the navigation stack at the times
+// they were received, and captures the commands it gives. The control loops run on a manual clock
+// that follows the recording, so a replay gives the same commands every time, however fast it runs.
+//
+// Of the received packets only those that set up navigation are replayed: waypoint edits and
+// starting and stopping. Map edits are not, the map is read from the configured file as it is now.
+// There is no compass to find at startup, so the heading starts at north and is pulled to the
+// recorded headings like when the compass failed to initialize.
+//
+// Usage: ReplayEngine [-config <file>] [-speed <factor>] [-save <file>] [-compare <file>|recorded] [directory]
+public class ReplayEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplayEngine.class);
+	
+	// Times of concurrent writers can be recorded slightly out of order, a larger step back
+	// means the program was restarted and the rest of the recording is another run
+	private static final long MAX_REORDERING = TimeUnit.SECONDS.toNanos(1);
+	
+	private static final Map<String, Class<? extends Packet>> REPLAYED_PACKETS = new HashMap<>();
+	
+	static {
+		REPLAYED_PACKETS.put(NavigationCreateWaypointPacket.PACKET_NAME, NavigationCreateWaypointPacket.class);
+		REPLAYED_PACKETS.put(NavigationWaypointsPacket.PACKET_NAME, NavigationWaypointsPacket.class);
+		REPLAYED_PACKETS.put(NavigationTogglePacket.PACKET_NAME, NavigationTogglePacket.class);
+	}
+	
+	public static class Output {
+		
+		private final long time;
+		private final int speed, steer;
+		private final ControlSource source;
+		
+		public Output(long time, int speed, int steer, ControlSource source) {
+			this.time = time;
+			this.speed = speed;
+			this.steer = steer;
+			this.source = source;
+		}
+		
+		public long getTime() {
+			return time;
+		}
+		
+		public int getSpeed() {
+			return speed;
+		}
+		
+		public int getSteer() {
+			return steer;
+		}
+		
+		// Null for the commands that were recorded as frames
+		public ControlSource getSource() {
+			return source;
+		}
+		
+	}
+	
+	private final JSONObject config;
+	private final double speed;
+	
+	private ManualClock clock;
+	private EdisonControl edisonControl;
+	private long startTime, wallStartTime;
+	private boolean finished;
+	
+	private final List<Output> outputs = new ArrayList<>();
+	private final List<Output> recordedOutputs = new ArrayList<>();
+	private final MotherboardFrameCodec commandCodec = new MotherboardFrameCodec();
+	private final byte[] frame = new byte[64];
+	private long positions, headings, feedbackFrames, packets;
+	
+	// Speed is relative to real time, 0 runs as fast as possible
+	public ReplayEngine(JSONObject config, double speed) {
+		this.config = new JSONObject(config.toString());
+		this.speed = speed;
+		
+		// Otherwise the replay would be recorded next to the recording
+		this.config.put("blackbox", new JSONObject().put("enabled", false));
+	}
+	
+	// Replays the recording in the directory, or its first run if it holds several.
+	// Returns the commands that were given, in order.
+	public List<Output> run(File directory) throws IOException {
+		BlackBoxReader reader = new BlackBoxReader(directory);
+		reader.read(this::onRecord);
+		
+		if(edisonControl == null) {
+			logger.warn("Nothing recorded in {}", directory.getPath());
+			return outputs;
+		}
+		
+		logger.info("Replayed {}s: {} positions, {} headings, {} feedback frames, {} packets, {} commands given",
+				TimeUnit.NANOSECONDS.toSeconds(clock.nanoTime() - startTime), positions, headings, feedbackFrames, packets, outputs.size());
+		return outputs;
+	}
+	
+	private void onRecord(int type, long time, ByteBuffer payload) {
+		if(finished) {
+			return;
+		}
+		
+		if(edisonControl == null) {
+			this.start(time);
+		}
+		
+		long now = clock.nanoTime();
+		if(time - now < -MAX_REORDERING) {
+			logger.info("Recording continues with another run of the program, stopping the replay there");
+			this.finished = true;
+			return;
+		}
+		
+		// Everything that was scheduled up to the record runs first
+		if(time - now > 0) {
+			this.pace(time);
+			edisonControl.getScheduler().runUntil(time);
+		}
+		
+		switch(type) {
+		case BlackBoxRecorder.TYPE_POSITION:
+			edisonControl.getDWMSerialInterface().onPosition(payload.getFloat(), payload.getFloat(), payload.getInt());
+			positions++;
+			break;
+		case BlackBoxRecorder.TYPE_HEADING:
+			edisonControl.getNavHandler().onHeadingReceived(payload.getFloat(), clock.nanoTime());
+			
+			// Recordings from before the turn rate was added do not have it
+			float turnRate = payload.hasRemaining() ? payload.getFloat() : Float.NaN;
+			if(!Float.isNaN(turnRate)) {
+				edisonControl.getNavHandler().onTurnRateReceived(turnRate, clock.nanoTime());
+			}
+			headings++;
+			break;
+		case BlackBoxRecorder.TYPE_FEEDBACK_FRAME: {
+			int length = Math.min(payload.remaining(), frame.length);
+			payload.get(frame, 0, length);
+			edisonControl.getSerialInterface().getFeedbackParser().feed(frame, length);
+			feedbackFrames++;
+			break;
+		}
+		case BlackBoxRecorder.TYPE_COMMAND_FRAME: {
+			int length = Math.min(payload.remaining(), frame.length);
+			payload.get(frame, 0, length);
+			if(commandCodec.decodeCommand(frame, 0)) {
+				recordedOutputs.add(new Output(time, commandCodec.getSpeed(), commandCodec.getSteer(), null));
+			}
+			break;
+		}
+		case BlackBoxRecorder.TYPE_PACKET_RECEIVED:
+			this.onPacket(StandardCharsets.UTF_8.decode(payload).toString());
+			break;
+		default:
+			break;
+		}
+	}
+	
+	private void start(long time) {
+		this.clock = new ManualClock(time);
+		this.startTime = time;
+		this.wallStartTime = System.nanoTime();
+		this.edisonControl = EdisonControl.startReplay(config, clock, CapturingSerialInterface::new);
+	}
+	
+	private void pace(long time) {
+		if(speed <= 0) {
+			return;
+		}
+		
+		long wait = (long) ((time - startTime) / speed) - (System.nanoTime() - wallStartTime);
+		if(wait <= 0) {
+			return;
+		}
+		
+		try {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void onPacket(String payload) {
+		JSONObject json;
+		try {
+			json = new JSONObject(payload);
+		} catch(JSONException e) {
+			logger.warn("Recorded packet is not valid JSON, skipping it");
+			return;
+		}
+		
+		Class<? extends Packet> packetClass = REPLAYED_PACKETS.get(json.optString("type"));
+		if(packetClass == null) {
+			return;
+		}
+		
+		try {
+			packetClass.getDeclaredConstructor().newInstance().receive(json);
+			packets++;
+		} catch(ReflectiveOperationException e) {
+			logger.error("Error occurred while attempting to instantiate packet", e);
+		}
+	}
+	
+	// The commands the robot actually sent to the motherboard during the recording
+	public List<Output> getRecordedOutputs() {
+		return recordedOutputs;
+	}
+	
+	// Time of the first record, output times count from the same point
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	private class CapturingSerialInterface extends SerialInterface {
+		
+		@Override
+		public void setControls(int speed, int steer, ControlSource source, long sensorTime) {
+			outputs.add(new Output(clock.nanoTime(), speed, steer, source));
+			super.setControls(speed, steer, source, sensorTime);
+		}
+		
+	}
+	
+	public static class Difference {
+		
+		private long duration, differingDuration;
+		private long firstDifference = -1;
+		private int maxSpeedDifference, maxSteerDifference;
+		
+		// Nanoseconds the comparison covered, from the first to the last command of either
+		public long getDuration() {
+			return duration;
+		}
+		
+		// Nanoseconds during which the commands in effect were not the same
+		public long getDifferingDuration() {
+			return differingDuration;
+		}
+		
+		// Time at which the commands first differed, or -1 if they never did
+		public long getFirstDifference() {
+			return firstDifference;
+		}
+		
+		public int getMaxSpeedDifference() {
+			return maxSpeedDifference;
+		}
+		
+		public int getMaxSteerDifference() {
+			return maxSteerDifference;
+		}
+		
+	}
+	
+	// Compares the commands that were in effect over time, so the two lists do not need to
+	// have a command at the same moments. A command stays in effect until the next one.
+	public static Difference compare(List<Output> expected, List<Output> actual) {
+		Difference difference = new Difference();
+		if(expected.isEmpty() && actual.isEmpty()) {
+			return difference;
+		}
+		
+		int expectedIndex = 0, actualIndex = 0;
+		int expectedSpeed = 0, expectedSteer = 0, actualSpeed = 0, actualSteer = 0;
+		long firstTime = Long.MAX_VALUE, lastTime = 0;
+		
+		while(expectedIndex < expected.size() || actualIndex < actual.size()) {
+			long expectedTime = expectedIndex < expected.size() ? expected.get(expectedIndex).getTime() : Long.MAX_VALUE;
+			long actualTime = actualIndex < actual.size() ? actual.get(actualIndex).getTime() : Long.MAX_VALUE;
+			long time = Math.min(expectedTime, actualTime);
+			
+			if(firstTime == Long.MAX_VALUE) {
+				firstTime = time;
+			} else if(expectedSpeed != actualSpeed || expectedSteer != actualSteer) {
+				difference.differingDuration += time - lastTime;
+			}
+			lastTime = time;
+			
+			// Apply every command at this time, the last one of each list is the one in effect
+			while(expectedIndex < expected.size() && expected.get(expectedIndex).getTime() == time) {
+				expectedSpeed = expected.get(expectedIndex).getSpeed();
+				expectedSteer = expected.get(expectedIndex).getSteer();
+				expectedIndex++;
+			}
+			while(actualIndex < actual.size() && actual.get(actualIndex).getTime() == time) {
+				actualSpeed = actual.get(actualIndex).getSpeed();
+				actualSteer = actual.get(actualIndex).getSteer();
+				actualIndex++;
+			}
+			
+			int speedDifference = Math.abs(expectedSpeed - actualSpeed);
+			int steerDifference = Math.abs(expectedSteer - actualSteer);
+			if((speedDifference != 0 || steerDifference != 0) && difference.firstDifference == -1) {
+				difference.firstDifference = time;
+			}
+			difference.maxSpeedDifference = Math.max(difference.maxSpeedDifference, speedDifference);
+			difference.maxSteerDifference = Math.max(difference.maxSteerDifference, steerDifference);
+		}
+		
+		difference.duration = lastTime - firstTime;
+		return difference;
+	}
+	
+	// One command per line as time, speed, steer, source
+	public static void writeOutputs(File file, List<Output> outputs) throws IOException {
+		try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+			for(Output output : outputs) {
+				writer.println(output.getTime() + "," + output.getSpeed() + "," + output.getSteer() + "," + (output.getSource() == null ? "" : output.getSource().name()));
+			}
+		}
+	}
+	
+	public static List<Output> readOutputs(File file) throws IOException {
+		List<Output> outputs = new ArrayList<>();
+		try(BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				String[] parts = line.split(",", -1);
+				if(parts.length < 4) {
+					continue;
+				}
+				
+				ControlSource source = parts[3].isEmpty() ? null : ControlSource.valueOf(parts[3]);
+				outputs.add(new Output(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), source));
+			}
+		}
+		return outputs;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		String configFile = null, saveFile = null, compareFile = null;
+		String directory = "blackbox";
+		double speed = 0;
+		
+		for(int i = 0; i < args.length; i++) {
+			if(args[i].equals("-config")) {
+				configFile = args[++i];
+			} else if(args[i].equals("-speed")) {
+				speed = Double.parseDouble(args[++i]);
+			} else if(args[i].equals("-save")) {
+				saveFile = args[++i];
+			} else if(args[i].equals("-compare")) {
+				compareFile = args[++i];
+			} else {
+				directory = args[i];
+			}
+		}
+		
+		ReplayEngine engine = new ReplayEngine(ConfigHandler.read(configFile), speed);
+		long wallStart = System.nanoTime();
+		List<Output> outputs = engine.run(new File(directory));
+		logger.info("Replay took {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart));
+		
+		if(saveFile != null) {
+			writeOutputs(new File(saveFile), outputs);
+			logger.info("Saved {} commands to {}", outputs.size(), saveFile);
+		}
+		
+		if(compareFile != null) {
+			// The recorded frames are what was written to the port, so they also hold the commands from the
+			// interface. The control loops do not run at the same moments as during the recording either,
+			// so expect short differences of up to a loop period even if nothing changed.
+			List<Output> expected = compareFile.equals("recorded") ? engine.getRecordedOutputs() : readOutputs(new File(compareFile));
+			Difference difference = compare(expected, outputs);
+			
+			if(difference.getFirstDifference() == -1) {
+				logger.info("Commands are the same");
+				return;
+			}
+			
+			logger.info("Commands differ for {}ms of {}ms, first {}ms after the start of the recording, by at most {} speed and {} steer",
+					TimeUnit.NANOSECONDS.toMillis(difference.getDifferingDuration()), TimeUnit.NANOSECONDS.toMillis(difference.getDuration()),
+					TimeUnit.NANOSECONDS.toMillis(difference.getFirstDifference() - engine.getStartTime()),
+					difference.getMaxSpeedDifference(), difference.getMaxSteerDifference());
+		}
+	}
+	
+}
@@ -0,0 +1,11 @@
+package tech.mistermel.edisoncontrol.scheduler;
+
+// Source of the time the control loops run on, in nanoseconds like System.nanoTime(). The
+// simulator replaces it, so the loops can run on simulated time instead.
+public interface Clock {
+
+	public static final Clock SYSTEM = System::nanoTime;
+	
+	public long nanoTime();
+	
+}
@@ -0,0 +1,244 @@
+package tech.mistermel.edisoncontrol.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class LoopScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(LoopScheduler.class);
+	
+	private static final int MAX_CATCH_UP = 10;
+	// The histograms have the details, the log only has to show that something is wrong
+	private static final long MISS_WARNING_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition queueChanged = lock.newCondition();
+	// Loops that are due at the same time run in order of name, so a simulation runs them in the same order every time
+	private final PriorityQueue<ScheduledLoop> queue = new PriorityQueue<>(Comparator.comparingLong((ScheduledLoop loop) -> loop.deadline).thenComparing(ScheduledLoop::getName));
+	private final List<ScheduledLoop> loops = new CopyOnWriteArrayList<>();
+	
+	private final int threadCount;
+	private final Clock clock;
+	private final List<Thread> threads = new ArrayList<>();
+	private volatile boolean running;
+	
+	public LoopScheduler(int threadCount) {
+		this(threadCount, Clock.SYSTEM);
+	}
+	
+	// A scheduler on a ManualClock should have no threads, it only runs from runUntil
+	public LoopScheduler(int threadCount, Clock clock) {
+		this.threadCount = threadCount;
+		this.clock = clock;
+	}
+	
+	public void start() {
+		running = true;
+		for(int i = 0; i < threadCount; i++) {
+			Thread thread = new Thread(this::work, "SchedulerThread-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		
+		logger.info("Loop scheduler started with {} threads", threadCount);
+	}
+	
+	public void stop() {
+		running = false;
+		for(Thread thread : threads) {
+			thread.interrupt();
+		}
+		threads.clear();
+	}
+	
+	public ScheduledLoop schedule(String name, long periodMillis, MissedDeadlinePolicy policy, Runnable task) {
+		long periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+		ScheduledLoop loop = new ScheduledLoop(name, periodNanos, policy, task, clock.nanoTime());
+		loops.add(loop);
+		
+		lock.lock();
+		try {
+			queue.add(loop);
+			queueChanged.signal();
+		} finally {
+			lock.unlock();
+		}
+		
+		logger.debug("Scheduled loop '{}' every {}ms ({})", name, periodMillis, policy.name());
+		return loop;
+	}
+	
+	// One-shot tasks share the worker threads with the loops, but are not
+	// listed in getLoops() since their statistics are meaningless.
+	public ScheduledLoop scheduleOnce(String name, long delayNanos, Runnable task) {
+		ScheduledLoop loop = new ScheduledLoop(name, 0, MissedDeadlinePolicy.SKIP, task, clock.nanoTime() + delayNanos);
+		
+		lock.lock();
+		try {
+			queue.add(loop);
+			queueChanged.signal();
+		} finally {
+			lock.unlock();
+		}
+		
+		return loop;
+	}
+	
+	private void work() {
+		while(running) {
+			ScheduledLoop loop;
+			try {
+				loop = this.takeDue();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			
+			this.execute(loop);
+		}
+	}
+	
+	// Runs every task that is due up to the given time on the calling thread, moving the clock
+	// to the deadline of each one before running it. Tasks take no simulated time to run.
+	public void runUntil(long time) {
+		if(!(clock instanceof ManualClock)) {
+			throw new IllegalStateException("Scheduler does not run on a manual clock");
+		}
+		ManualClock manualClock = (ManualClock) clock;
+		
+		while(true) {
+			ScheduledLoop loop;
+			lock.lock();
+			try {
+				loop = queue.peek();
+				if(loop == null || loop.deadline > time) {
+					break;
+				}
+				
+				queue.poll();
+				if(loop.isCancelled()) {
+					loops.remove(loop);
+					continue;
+				}
+			} finally {
+				lock.unlock();
+			}
+			
+			if(loop.deadline > manualClock.nanoTime()) {
+				manualClock.set(loop.deadline);
+			}
+			this.execute(loop);
+		}
+		
+		manualClock.set(Math.max(time, manualClock.nanoTime()));
+	}
+	
+	private void execute(ScheduledLoop loop) {
+		long startTime = clock.nanoTime();
+		try {
+			loop.getTask().run();
+		} catch(Exception e) {
+			logger.error("Error occurred in scheduled loop '{}'", loop.getName(), e);
+		}
+		long endTime = clock.nanoTime();
+		
+		loop.onRun(startTime, endTime);
+		this.reschedule(loop, endTime);
+	}
+	
+	private ScheduledLoop takeDue() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while(true) {
+				ScheduledLoop loop = queue.peek();
+				if(loop == null) {
+					queueChanged.await();
+					continue;
+				}
+				
+				if(loop.isCancelled()) {
+					queue.poll();
+					loops.remove(loop);
+					continue;
+				}
+				
+				long delay = loop.deadline - clock.nanoTime();
+				if(delay > 0) {
+					queueChanged.awaitNanos(delay);
+					continue;
+				}
+				
+				queue.poll();
+				
+				// Another loop may be due as well, let an idle thread pick it up
+				queueChanged.signal();
+				return loop;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private void reschedule(ScheduledLoop loop, long now) {
+		if(!loop.isRepeating()) {
+			return;
+		}
+		
+		if(loop.isCancelled()) {
+			loops.remove(loop);
+			return;
+		}
+		
+		lock.lock();
+		try {
+			long period = loop.getPeriodNanos();
+			long next = loop.deadline + period;
+			
+			if(next <= now) {
+				long missed = (now - next) / period + 1;
+				
+				if(loop.getPolicy() == MissedDeadlinePolicy.SKIP) {
+					next += missed * period;
+					loop.onMissedDeadlines(missed);
+				} else if(missed > MAX_CATCH_UP) {
+					long skipped = missed - MAX_CATCH_UP;
+					next += skipped * period;
+					loop.onMissedDeadlines(skipped);
+				}
+				
+				loop.missesSinceWarning += missed;
+				if(loop.lastMissWarning == 0 || now - loop.lastMissWarning >= MISS_WARNING_INTERVAL) {
+					logger.warn("Loop '{}' cannot keep up, missed {} deadline(s) since the last warning", loop.getName(), loop.missesSinceWarning);
+					loop.lastMissWarning = now;
+					loop.missesSinceWarning = 0;
+				}
+			}
+			
+			loop.deadline = next;
+			queue.add(loop);
+			queueChanged.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public Clock getClock() {
+		return clock;
+	}
+	
+	public List<ScheduledLoop> getLoops() {
+		return Collections.unmodifiableList(loops);
+	}
+	
+}
@@ -0,0 +1,29 @@
+package tech.mistermel.edisoncontrol.scheduler;
+
+// Clock that only moves when it is moved, see LoopScheduler.runUntil
+public class ManualClock implements Clock {
+
+	private volatile long time;
+	
+	// Time 0 is used for "never" in a lot of places, so a clock should not start there
+	public ManualClock(long startTime) {
+		this.time = startTime;
+	}
+	
+	@Override
+	public long nanoTime() {
+		return time;
+	}
+	
+	public void set(long time) {
+		if(time < this.time) {
+			throw new IllegalArgumentException("Clock cannot go back from " + this.time + " to " + time);
+		}
+		this.time = time;
+	}
+	
+	public void advance(long nanos) {
+		this.set(time + nanos);
+	}
+	
+}
@@ -0,0 +1,13 @@
+package tech.mistermel.edisoncontrol.scheduler;
+
+public enum MissedDeadlinePolicy {
+
+	// Drop every deadline that has already passed and continue at the next one
+	// in the original grid, so the loop never runs twice in a row to catch up.
+	SKIP,
+	
+	// Run once for every missed deadline, back to back, until the loop is on
+	// schedule again. The backlog is capped, anything beyond it is skipped.
+	CATCH_UP;
+	
+}
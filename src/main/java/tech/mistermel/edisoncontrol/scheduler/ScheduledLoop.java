@@ -0,0 +1,100 @@
+package tech.mistermel.edisoncontrol.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import tech.mistermel.edisoncontrol.metrics.Histogram;
+
+public class ScheduledLoop {
+
+	private final String name;
+	private final long periodNanos;
+	private final MissedDeadlinePolicy policy;
+	private final Runnable task;
+	
+	private final Histogram jitter = new Histogram();
+	private final Histogram executionTime = new Histogram();
+	private final Histogram overrun = new Histogram();
+	
+	private volatile long runs, missedDeadlines;
+	private volatile boolean cancelled;
+	
+	// Only accessed by the scheduler while holding its lock
+	long deadline;
+	long lastMissWarning, missesSinceWarning;
+	
+	ScheduledLoop(String name, long periodNanos, MissedDeadlinePolicy policy, Runnable task, long firstDeadline) {
+		this.name = name;
+		this.periodNanos = periodNanos;
+		this.policy = policy;
+		this.task = task;
+		this.deadline = firstDeadline;
+	}
+	
+	void onRun(long startTime, long endTime) {
+		runs++;
+		jitter.record(startTime - deadline);
+		
+		long duration = endTime - startTime;
+		executionTime.record(duration);
+		if(this.isRepeating() && duration > periodNanos) {
+			overrun.record(duration - periodNanos);
+		}
+	}
+	
+	void onMissedDeadlines(long count) {
+		missedDeadlines += count;
+	}
+	
+	Runnable getTask() {
+		return task;
+	}
+	
+	public void cancel() {
+		this.cancelled = true;
+	}
+	
+	public boolean isRepeating() {
+		return periodNanos > 0;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public long getPeriodNanos() {
+		return periodNanos;
+	}
+	
+	public long getPeriodMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(periodNanos);
+	}
+	
+	public MissedDeadlinePolicy getPolicy() {
+		return policy;
+	}
+	
+	public long getRuns() {
+		return runs;
+	}
+	
+	public long getMissedDeadlines() {
+		return missedDeadlines;
+	}
+	
+	public Histogram getJitter() {
+		return jitter;
+	}
+	
+	public Histogram getExecutionTime() {
+		return executionTime;
+	}
+	
+	public Histogram getOverrun() {
+		return overrun;
+	}
+	
+}
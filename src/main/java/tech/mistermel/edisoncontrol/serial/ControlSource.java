@@ -0,0 +1,26 @@
+package tech.mistermel.edisoncontrol.serial;
+
+public enum ControlSource {
+
+	SYSTEM(0), WEB(1), NAVIGATION(2);
+	
+	private int id;
+	
+	private ControlSource(int id) {
+		this.id = id;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public static ControlSource fromId(int id) {
+		for(ControlSource source : values()) {
+			if(source.id == id) {
+				return source;
+			}
+		}
+		return SYSTEM;
+	}
+	
+}
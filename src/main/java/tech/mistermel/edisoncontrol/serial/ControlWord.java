@@ -0,0 +1,85 @@
+package tech.mistermel.edisoncontrol.serial;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import tech.mistermel.edisoncontrol.scheduler.Clock;
+
+public class ControlWord {
+
+	// Layout of the packed word, from least to most significant bits:
+	// speed (16), steer (16), source id (8), sequence number (24)
+	private static final int STEER_SHIFT = 16;
+	private static final int SOURCE_SHIFT = 32;
+	private static final int SEQUENCE_SHIFT = 40;
+	
+	public static final int SEQUENCE_MASK = 0xFFFFFF;
+	
+	// Publish timestamps are kept out of the word in a small ring indexed by sequence
+	// number. A reader would have to fall 256 commands behind to see a newer stamp.
+	private static final int STAMP_RING_SIZE = 256;
+	
+	private final Clock clock;
+	private final AtomicLong word = new AtomicLong();
+	private final AtomicLongArray stamps = new AtomicLongArray(STAMP_RING_SIZE);
+	private final AtomicLongArray sensorStamps = new AtomicLongArray(STAMP_RING_SIZE);
+	
+	public ControlWord(Clock clock) {
+		this.clock = clock;
+	}
+	
+	public long publish(int speed, int steer, ControlSource source) {
+		return this.publish(speed, steer, source, 0);
+	}
+	
+	// sensorTime is when the oldest sensor reading the command was based on arrived, or 0 if unknown
+	public long publish(int speed, int steer, ControlSource source, long sensorTime) {
+		while(true) {
+			long current = word.get();
+			int sequence = (sequence(current) + 1) & SEQUENCE_MASK;
+			long next = pack(speed, steer, source.getId(), sequence);
+			
+			stamps.set(sequence & (STAMP_RING_SIZE - 1), clock.nanoTime());
+			sensorStamps.set(sequence & (STAMP_RING_SIZE - 1), sensorTime);
+			if(word.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+	
+	public long get() {
+		return word.get();
+	}
+	
+	public long getPublishTime(long word) {
+		return stamps.get(sequence(word) & (STAMP_RING_SIZE - 1));
+	}
+	
+	public long getSensorTime(long word) {
+		return sensorStamps.get(sequence(word) & (STAMP_RING_SIZE - 1));
+	}
+	
+	public static long pack(int speed, int steer, int sourceId, int sequence) {
+		return (speed & 0xFFFFL)
+				| ((steer & 0xFFFFL) << STEER_SHIFT)
+				| ((sourceId & 0xFFL) << SOURCE_SHIFT)
+				| ((sequence & (long) SEQUENCE_MASK) << SEQUENCE_SHIFT);
+	}
+	
+	public static short speed(long word) {
+		return (short) word;
+	}
+	
+	public static short steer(long word) {
+		return (short) (word >>> STEER_SHIFT);
+	}
+	
+	public static ControlSource source(long word) {
+		return ControlSource.fromId((int) ((word >>> SOURCE_SHIFT) & 0xFF));
+	}
+	
+	public static int sequence(long word) {
+		return (int) ((word >>> SEQUENCE_SHIFT) & SEQUENCE_MASK);
+	}
+	
+}
@@ -0,0 +1,164 @@
+package tech.mistermel.edisoncontrol.serial;
+
+public class DWMPositionParser {
+
+	private static final byte[] POS_PREFIX = { 'P', 'O', 'S', ',' };
+	private static final byte[] PROMPT = { 'd', 'w', 'm', '>' };
+	
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+	
+	private float x, y, z;
+	private int quality;
+	
+	// Parse position within the current line, only valid while parsing
+	private int cursor;
+	
+	// Parses a lep record (POS,x,y,z,qf) straight from the receive buffer into
+	// primitive fields. Returns false if the line is not a valid position record.
+	public boolean parse(byte[] buffer, int offset, int length) {
+		int start = skipWhitespace(buffer, offset, offset + length);
+		int end = trimEnd(buffer, start, offset + length);
+		
+		if(!startsWith(buffer, start, end, POS_PREFIX)) {
+			return false;
+		}
+		
+		this.cursor = start + POS_PREFIX.length;
+		
+		float parsedX = this.parseFloat(buffer, end);
+		if(Float.isNaN(parsedX) || !this.skipComma(buffer, end)) {
+			return false;
+		}
+		
+		float parsedY = this.parseFloat(buffer, end);
+		if(Float.isNaN(parsedY) || !this.skipComma(buffer, end)) {
+			return false;
+		}
+		
+		float parsedZ = this.parseFloat(buffer, end);
+		if(Float.isNaN(parsedZ) || !this.skipComma(buffer, end)) {
+			return false;
+		}
+		
+		int parsedQuality = this.parseInt(buffer, end);
+		if(parsedQuality < 0 || cursor != end) {
+			return false;
+		}
+		
+		this.x = parsedX;
+		this.y = parsedY;
+		this.z = parsedZ;
+		this.quality = parsedQuality;
+		return true;
+	}
+	
+	public boolean isPrompt(byte[] buffer, int offset, int length) {
+		int start = skipWhitespace(buffer, offset, offset + length);
+		int end = trimEnd(buffer, start, offset + length);
+		return end - start == PROMPT.length && startsWith(buffer, start, end, PROMPT);
+	}
+	
+	private float parseFloat(byte[] buffer, int end) {
+		boolean negative = false;
+		if(cursor < end && (buffer[cursor] == '-' || buffer[cursor] == '+')) {
+			negative = buffer[cursor] == '-';
+			cursor++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean fraction = false;
+		
+		while(cursor < end) {
+			byte b = buffer[cursor];
+			if(b >= '0' && b <= '9') {
+				// Digits beyond float precision are dropped, but still consumed
+				if(digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					digits++;
+					if(fraction) {
+						fractionDigits++;
+					}
+				}
+			} else if(b == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+			cursor++;
+		}
+		
+		if(digits == 0) {
+			return Float.NaN;
+		}
+		
+		float value = (float) (mantissa / POWERS_OF_TEN[fractionDigits]);
+		return negative ? -value : value;
+	}
+	
+	private int parseInt(byte[] buffer, int end) {
+		int value = 0;
+		int digits = 0;
+		
+		while(cursor < end && buffer[cursor] >= '0' && buffer[cursor] <= '9') {
+			value = value * 10 + (buffer[cursor] - '0');
+			digits++;
+			cursor++;
+		}
+		
+		return digits == 0 || digits > 9 ? -1 : value;
+	}
+	
+	private boolean skipComma(byte[] buffer, int end) {
+		if(cursor < end && buffer[cursor] == ',') {
+			cursor++;
+			return true;
+		}
+		return false;
+	}
+	
+	private static boolean startsWith(byte[] buffer, int start, int end, byte[] prefix) {
+		if(end - start < prefix.length) {
+			return false;
+		}
+		
+		for(int i = 0; i < prefix.length; i++) {
+			if(buffer[start + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static int skipWhitespace(byte[] buffer, int start, int end) {
+		while(start < end && buffer[start] <= ' ') {
+			start++;
+		}
+		return start;
+	}
+	
+	private static int trimEnd(byte[] buffer, int start, int end) {
+		while(end > start && buffer[end - 1] <= ' ') {
+			end--;
+		}
+		return end;
+	}
+	
+	public float getX() {
+		return x;
+	}
+	
+	public float getY() {
+		return y;
+	}
+	
+	public float getZ() {
+		return z;
+	}
+	
+	public int getQuality() {
+		return quality;
+	}
+	
+}
@@ -1,116 +1,176 @@
 package tech.mistermel.edisoncontrol.serial;
 
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fazecast.jSerialComm.SerialPort;
-import com.fazecast.jSerialComm.SerialPortEvent;
-import com.fazecast.jSerialComm.SerialPortMessageListenerWithExceptions;
-
 import tech.mistermel.edisoncontrol.EdisonControl;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.HealthStatusType;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.Service;
+import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.scheduler.MissedDeadlinePolicy;
+import tech.mistermel.edisoncontrol.serial.DWMTlvParser.TlvListener;
+import tech.mistermel.edisoncontrol.serial.transport.SerialTransport;
 
-public class DWMSerialInterface extends Thread {
+public class DWMSerialInterface {
 
 	private static final Logger logger = LoggerFactory.getLogger(DWMSerialInterface.class);
 	
-	private static final int MAX_RECEIVE_INTERVAL = 400;
+	private static final long MAX_RECEIVE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(400);
+	private static final int DEFAULT_UPDATE_RATE = 100;
+	private static final String CONFIG_SECTION = "dwm_serial";
+	private static final long SHELL_STARTUP_TIME = TimeUnit.SECONDS.toNanos(1);
 	
-	private SerialPort port;
+	private static final byte[] POS_GET_REQUEST = { DWMTlvParser.CMD_POS_GET, 0x00 };
+	
+	private SerialTransport port;
 	private long lastMessage;
 	
-	public DWMSerialInterface() {
-		super("DWMSerialThread");
-	}
+	private final byte[] lineBuffer = new byte[128];
+	private int lineLength;
+	private final DWMPositionParser positionParser = new DWMPositionParser();
 	
-	@Override
-	public void run() {
+	private boolean tlvMode;
+	// Only used by the receiving thread, the status is RUNNING from the first answer of the module on
+	private boolean tlvResponding;
+	private final DWMTlvParser tlvParser = new DWMTlvParser(EdisonControl.getInstance().getClock(), new TlvListener() {
+		
+		@Override
+		public void onReturnValue(int errorCode) {
+			if(errorCode != 0) {
+				logger.warn("DWM returned error code {}", errorCode);
+				return;
+			}
+			DWMSerialInterface.this.onTlvResponse();
+		}
+		
+		@Override
+		public void onPosition(int xMillis, int yMillis, int zMillis, int quality) {
+			DWMSerialInterface.this.onTlvResponse();
+			DWMSerialInterface.this.onPosition(xMillis / 1000f, yMillis / 1000f, quality);
+		}
+	});
+	
+	public void initialize() {
 		EdisonControl.setStatus(Service.SERIAL_DWM, HealthStatusType.INITIALIZING);
 		
-		this.port = SerialUtil.openSerial("dwm_serial", "/dev/ttyACM0", 115200);
+		this.port = SerialUtil.openSerial(CONFIG_SECTION, Service.SERIAL_DWM, "/dev/ttyACM0", 115200);
 		if(port == null) {
 			EdisonControl.setStatus(Service.SERIAL_DWM, HealthStatusType.FAULT, "Failed to open port");
 			return;
 		}
 		
-		port.addDataListener(new SerialPortMessageListenerWithExceptions() {
-
-			@Override
-			public void serialEvent(SerialPortEvent event) {
-				String str = new String(event.getReceivedData()).trim();
-				
-				if(str.equals("dwm>")) {
-					sendString("lep\r");
-					return;
-				}
-				
-				String[] args = str.split(",");
-				if(args.length != 5) {
-					logger.debug("Received invalid message: {}", str);
-					return;
-				}
-				
-				String msgType = args[0];
-				if(!msgType.equals("POS")) {
-					logger.warn("Received invalid message type: {}", msgType);
-					return;
-				}
-				
-				lastMessage = System.currentTimeMillis();
-				
-				float x = Float.parseFloat(args[1]);
-				float y = Float.parseFloat(args[2]);
-				EdisonControl.getInstance().getNavHandler().onPositionReceived(x, y);
-			}
+		JSONObject configJson = EdisonControl.getInstance().getConfigHandler().getJson().optJSONObject(CONFIG_SECTION);
+		this.tlvMode = configJson.optString("mode", "shell").equals("tlv");
+		
+		if(tlvMode) {
+			port.setListener(tlvParser::feed);
 			
-			@Override
-			public byte[] getMessageDelimiter() {
-				return new byte[] { '\r' };
-			}
-
-			@Override
-			public boolean delimiterIndicatesEndOfMessage() {
-				return true;
-			}
-
-			@Override
-			public int getListeningEvents() {
-				return SerialPort.LISTENING_EVENT_DATA_RECEIVED;
-			}
-
-			@Override
-			public void catchException(Exception e) {
-				logger.error("Error occured in DWM serial interface", e);
+			// Nothing is known to work until the module answers, which it does not on a wrong port or baud rate
+			logger.info("Waiting for DWM to answer (TLV mode)");
+			this.initializeTlv(configJson.optInt("update_rate", DEFAULT_UPDATE_RATE));
+			return;
+		}
+		
+		port.setListener(this::onDataReceived);
+		this.initializeShell();
+	}
+	
+	private void onDataReceived(byte[] data, int length) {
+		for(int i = 0; i < length; i++) {
+			byte b = data[i];
+			if(b == '\r') {
+				this.onLineReceived();
+				lineLength = 0;
+			} else if(lineLength < lineBuffer.length) {
+				lineBuffer[lineLength++] = b;
 			}
-			
-		});
+		}
+	}
+	
+	private void onLineReceived() {
+		if(positionParser.parse(lineBuffer, 0, lineLength)) {
+			this.onPosition(positionParser.getX(), positionParser.getY(), positionParser.getQuality());
+			return;
+		}
 		
-		try {
-			this.initialize();
-			
-			EdisonControl.setStatus(Service.SERIAL_DWM, HealthStatusType.RUNNING);
-			logger.info("DWM communication initialized");
-		} catch (InterruptedException e) {
-			logger.error("Interrupted while attempting to initialize DWM serial port", e);
-			Thread.currentThread().interrupt();
+		if(positionParser.isPrompt(lineBuffer, 0, lineLength)) {
+			sendString("lep\r");
+			return;
+		}
+		
+		if(logger.isDebugEnabled()) {
+			logger.debug("Received invalid message: {}", new String(lineBuffer, 0, lineLength).trim());
 		}
 	}
 	
-	private void initialize() throws InterruptedException {
-		port.writeBytes(new byte[] { 0x0D, 0x0D }, 2);
-		Thread.sleep(1000); // This is quite hacky and should be changed, but eh, it works
-		port.writeBytes(new byte[] { 0x0D }, 1);
+	// Also called to replay recorded positions
+	public void onPosition(float x, float y, int quality) {
+		long receivedTime = EdisonControl.getInstance().getClock().nanoTime();
+		lastMessage = receivedTime;
+		
+		EdisonControl.getInstance().getTelemetryRecorder().getPosition().record(receivedTime, x, y, quality);
+		EdisonControl.getInstance().getBlackBoxRecorder().recordPosition(receivedTime, x, y, quality);
+		
+		// Positions can arrive before the navigation handler has been created
+		NavigationHandler navHandler = EdisonControl.getInstance().getNavHandler();
+		if(navHandler != null) {
+			navHandler.onPositionReceived(x, y, quality, receivedTime);
+		}
+	}
+	
+	private void onTlvResponse() {
+		if(tlvResponding) {
+			return;
+		}
+		
+		this.tlvResponding = true;
+		EdisonControl.setStatus(Service.SERIAL_DWM, HealthStatusType.RUNNING);
+		logger.info("DWM communication initialized (TLV mode)");
+	}
+	
+	// The module starts in TLV (generic API) mode after a reset, so unlike the shell
+	// there is no handshake. The update rate is set in units of 100ms, and positions
+	// are polled at the same rate with dwm_pos_get.
+	private void initializeTlv(int updateRate) {
+		int rate = Math.max(1, updateRate / 100);
+		byte[] request = { DWMTlvParser.CMD_UPD_RATE_SET, 0x04, (byte) rate, (byte) (rate >> 8), (byte) rate, (byte) (rate >> 8) };
+		port.write(request, request.length);
+		
+		EdisonControl.getInstance().getScheduler().schedule("dwm_poll", rate * 100L, MissedDeadlinePolicy.SKIP, () -> port.write(POS_GET_REQUEST, POS_GET_REQUEST.length));
+	}
+	
+	// Two returns in quick succession switch the module to shell mode, which takes a while
+	// to come up. The final return is sent from the scheduler so startup is not held up.
+	private void initializeShell() {
+		port.write(new byte[] { 0x0D, 0x0D }, 2);
+		
+		EdisonControl.getInstance().getScheduler().scheduleOnce("dwm_shell_init", SHELL_STARTUP_TIME, () -> {
+			port.write(new byte[] { 0x0D }, 1);
+			
+			EdisonControl.setStatus(Service.SERIAL_DWM, HealthStatusType.RUNNING);
+			logger.info("DWM communication initialized");
+		});
 	}
 	
 	private void sendString(String str) {
 		logger.debug("Sending: {}", str.trim());
 		byte[] bytes = str.getBytes();
-		port.writeBytes(bytes, bytes.length);
+		port.write(bytes, bytes.length);
+	}
+	
+	public boolean isTlvMode() {
+		return tlvMode;
+	}
+	
+	public DWMTlvParser getTlvParser() {
+		return tlvParser;
 	}
 	
 	public boolean isCommunicationWorking() {
-		return System.currentTimeMillis() - lastMessage < MAX_RECEIVE_INTERVAL; 
+		return lastMessage != 0 && EdisonControl.getInstance().getClock().nanoTime() - lastMessage < MAX_RECEIVE_INTERVAL;
 	}
 	
 }
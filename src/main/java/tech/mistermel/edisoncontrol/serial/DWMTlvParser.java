@@ -0,0 +1,113 @@
+package tech.mistermel.edisoncontrol.serial;
+
+import java.util.concurrent.TimeUnit;
+
+import tech.mistermel.edisoncontrol.scheduler.Clock;
+
+public class DWMTlvParser {
+
+	public static final int CMD_POS_GET = 0x02;
+	public static final int CMD_UPD_RATE_SET = 0x03;
+	
+	public static final int TYPE_RET_VAL = 0x40;
+	public static final int TYPE_POS_XYZ = 0x41;
+	
+	public static final int POS_XYZ_LENGTH = 13;
+	
+	// A TLV frame is sent in one go by the module, so a frame that is still incomplete
+	// after this long is garbage (for example shell output) and parsing restarts.
+	private static final long FRAME_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+	
+	public interface TlvListener {
+		public void onReturnValue(int errorCode);
+		public void onPosition(int xMillis, int yMillis, int zMillis, int quality);
+	}
+	
+	private enum State {
+		TYPE, LENGTH, VALUE;
+	}
+	
+	private final Clock clock;
+	private final TlvListener listener;
+	private final byte[] value = new byte[255];
+	
+	private State state = State.TYPE;
+	private int type, length, valueLength;
+	private long frameStart;
+	
+	private volatile long framesParsed, framesDropped;
+	
+	public DWMTlvParser(Clock clock, TlvListener listener) {
+		this.clock = clock;
+		this.listener = listener;
+	}
+	
+	public void feed(byte[] data, int dataLength) {
+		long now = clock.nanoTime();
+		if(state != State.TYPE && now - frameStart > FRAME_TIMEOUT) {
+			state = State.TYPE;
+			framesDropped++;
+		}
+		
+		for(int i = 0; i < dataLength; i++) {
+			int b = data[i] & 0xFF;
+			
+			switch(state) {
+			case TYPE:
+				this.type = b;
+				this.frameStart = now;
+				state = State.LENGTH;
+				break;
+			case LENGTH:
+				this.length = b;
+				this.valueLength = 0;
+				if(length == 0) {
+					this.onFrame();
+				} else {
+					state = State.VALUE;
+				}
+				break;
+			case VALUE:
+				value[valueLength++] = (byte) b;
+				if(valueLength == length) {
+					this.onFrame();
+				}
+				break;
+			}
+		}
+	}
+	
+	private void onFrame() {
+		state = State.TYPE;
+		framesParsed++;
+		
+		if(type == TYPE_RET_VAL && length == 1) {
+			listener.onReturnValue(value[0] & 0xFF);
+		} else if(type == TYPE_POS_XYZ && length == POS_XYZ_LENGTH) {
+			listener.onPosition(getInt(value, 0), getInt(value, 4), getInt(value, 8), value[12] & 0xFF);
+		}
+	}
+	
+	public static int getInt(byte[] buffer, int index) {
+		return (buffer[index] & 0xFF)
+				| ((buffer[index + 1] & 0xFF) << 8)
+				| ((buffer[index + 2] & 0xFF) << 16)
+				| ((buffer[index + 3] & 0xFF) << 24);
+	}
+	
+	public static void putInt(byte[] buffer, int index, int value) {
+		buffer[index] = (byte) value;
+		buffer[index + 1] = (byte) (value >> 8);
+		buffer[index + 2] = (byte) (value >> 16);
+		buffer[index + 3] = (byte) (value >> 24);
+	}
+	
+	public long getFramesParsed() {
+		return framesParsed;
+	}
+	
+	public long getFramesDropped() {
+		return framesDropped;
+	}
+	
+}
@@ -0,0 +1,127 @@
+package tech.mistermel.edisoncontrol.serial;
+
+public class FeedbackFrameParser {
+
+	private static final int RING_SIZE = 256;
+	private static final int RING_MASK = RING_SIZE - 1;
+	
+	private static final byte START_LOW = (byte) MotherboardFrameCodec.START_FRAME;
+	private static final byte START_HIGH = (byte) (MotherboardFrameCodec.START_FRAME >> 8);
+	
+	public interface FeedbackListener {
+		public void onFeedback(MotherboardFrameCodec frame);
+	}
+	
+	private enum State {
+		SEEK_START_LOW, SEEK_START_HIGH, READ_FRAME;
+	}
+	
+	private final byte[] ring = new byte[RING_SIZE];
+	private final byte[] frame = new byte[MotherboardFrameCodec.FEEDBACK_FRAME_LENGTH];
+	private final MotherboardFrameCodec codec = new MotherboardFrameCodec();
+	private final FeedbackListener listener;
+	
+	private int head, tail;
+	private State state = State.SEEK_START_LOW;
+	
+	// Only the serial receive thread writes these, other threads just read them
+	private volatile long bytesReceived, framesParsed, bytesSkipped, checksumFailures;
+	
+	public FeedbackFrameParser(FeedbackListener listener) {
+		this.listener = listener;
+	}
+	
+	public void feed(byte[] data, int length) {
+		for(int i = 0; i < length; i++) {
+			if(tail - head == RING_SIZE) {
+				// Should never happen, as frames are consumed as soon as they are complete
+				head++;
+				bytesSkipped++;
+			}
+			
+			ring[tail & RING_MASK] = data[i];
+			tail++;
+		}
+		
+		bytesReceived += length;
+		this.parse();
+	}
+	
+	private void parse() {
+		while(true) {
+			switch(state) {
+			case SEEK_START_LOW:
+				if(head == tail) {
+					return;
+				}
+				
+				if(ring[head & RING_MASK] == START_LOW) {
+					state = State.SEEK_START_HIGH;
+				} else {
+					head++;
+					bytesSkipped++;
+				}
+				break;
+			case SEEK_START_HIGH:
+				if(tail - head < 2) {
+					return;
+				}
+				
+				if(ring[(head + 1) & RING_MASK] == START_HIGH) {
+					state = State.READ_FRAME;
+				} else {
+					// Not a start frame after all, resync from the next byte
+					head++;
+					bytesSkipped++;
+					state = State.SEEK_START_LOW;
+				}
+				break;
+			case READ_FRAME:
+				if(tail - head < frame.length) {
+					return;
+				}
+				
+				for(int i = 0; i < frame.length; i++) {
+					frame[i] = ring[(head + i) & RING_MASK];
+				}
+				
+				if(codec.decodeFeedback(frame, 0)) {
+					head += frame.length;
+					framesParsed++;
+					listener.onFeedback(codec);
+				} else {
+					// The start frame may have been part of the payload of a frame we only
+					// partially received, so only drop the start frame and search again
+					head += 2;
+					bytesSkipped += 2;
+					checksumFailures++;
+				}
+				
+				state = State.SEEK_START_LOW;
+				break;
+			}
+		}
+	}
+	
+	// Raw bytes of the frame that was just parsed, only valid during the callback
+	public byte[] getFrame() {
+		return frame;
+	}
+	
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+	
+	public long getFramesParsed() {
+		return framesParsed;
+	}
+	
+	public long getBytesSkipped() {
+		return bytesSkipped;
+	}
+	
+	public long getChecksumFailures() {
+		return checksumFailures;
+	}
+	
+}
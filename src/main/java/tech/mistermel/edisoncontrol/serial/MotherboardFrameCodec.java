@@ -0,0 +1,146 @@
+package tech.mistermel.edisoncontrol.serial;
+
+public class MotherboardFrameCodec {
+
+	public static final int START_FRAME = 0xABCD;
+	public static final int COMMAND_FRAME_LENGTH = 8;
+	public static final int FEEDBACK_FRAME_LENGTH = 18;
+	
+	// The command buffer is reused for every frame, callers must write it out
+	// before encoding the next command.
+	private final byte[] commandFrame = new byte[COMMAND_FRAME_LENGTH];
+	private final byte[] feedbackFrame = new byte[FEEDBACK_FRAME_LENGTH];
+	
+	private int steer, speed;
+	private int cmd1, cmd2;
+	private int speedR, speedL;
+	private int battVoltageRaw, boardTempRaw;
+	private int cmdLed;
+	
+	public byte[] encodeCommand(short steer, short speed) {
+		int checksum = (START_FRAME ^ steer ^ speed) & 0xFFFF;
+		
+		putShort(commandFrame, 0, START_FRAME);
+		putShort(commandFrame, 2, steer);
+		putShort(commandFrame, 4, speed);
+		putShort(commandFrame, 6, checksum);
+		
+		return commandFrame;
+	}
+	
+	// The motherboard side of the protocol, used by the simulator. Like the command
+	// buffer, the feedback buffer is reused for every frame.
+	public boolean decodeCommand(byte[] data, int offset) {
+		if(data.length - offset < COMMAND_FRAME_LENGTH || getUnsignedShort(data, offset) != START_FRAME) {
+			return false;
+		}
+		
+		int checksum = START_FRAME ^ getUnsignedShort(data, offset + 2) ^ getUnsignedShort(data, offset + 4);
+		if(checksum != getUnsignedShort(data, offset + 6)) {
+			return false;
+		}
+		
+		this.steer = getShort(data, offset + 2);
+		this.speed = getShort(data, offset + 4);
+		return true;
+	}
+	
+	public byte[] encodeFeedback(int cmd1, int cmd2, int speedR, int speedL, double battVoltage, double boardTemp, int cmdLed) {
+		putShort(feedbackFrame, 0, START_FRAME);
+		putShort(feedbackFrame, 2, cmd1);
+		putShort(feedbackFrame, 4, cmd2);
+		putShort(feedbackFrame, 6, speedR);
+		putShort(feedbackFrame, 8, speedL);
+		putShort(feedbackFrame, 10, (int) Math.round(battVoltage * 100));
+		putShort(feedbackFrame, 12, (int) Math.round(boardTemp * 10));
+		putShort(feedbackFrame, 14, cmdLed);
+		
+		int checksum = START_FRAME;
+		for(int i = 2; i < FEEDBACK_FRAME_LENGTH - 2; i += 2) {
+			checksum ^= getUnsignedShort(feedbackFrame, i);
+		}
+		putShort(feedbackFrame, FEEDBACK_FRAME_LENGTH - 2, checksum);
+		
+		return feedbackFrame;
+	}
+	
+	public boolean decodeFeedback(byte[] data, int offset) {
+		if(data.length - offset < FEEDBACK_FRAME_LENGTH) {
+			return false;
+		}
+		
+		int start = getUnsignedShort(data, offset);
+		if(start != START_FRAME) {
+			return false;
+		}
+		
+		int checksum = start;
+		for(int i = 2; i < FEEDBACK_FRAME_LENGTH - 2; i += 2) {
+			checksum ^= getUnsignedShort(data, offset + i);
+		}
+		
+		if(checksum != getUnsignedShort(data, offset + FEEDBACK_FRAME_LENGTH - 2)) {
+			return false;
+		}
+		
+		this.cmd1 = getShort(data, offset + 2);
+		this.cmd2 = getShort(data, offset + 4);
+		this.speedR = getShort(data, offset + 6);
+		this.speedL = getShort(data, offset + 8);
+		this.battVoltageRaw = getShort(data, offset + 10);
+		this.boardTempRaw = getShort(data, offset + 12);
+		this.cmdLed = getUnsignedShort(data, offset + 14);
+		
+		return true;
+	}
+	
+	private static void putShort(byte[] buffer, int index, int value) {
+		buffer[index] = (byte) value;
+		buffer[index + 1] = (byte) (value >> 8);
+	}
+	
+	private static int getUnsignedShort(byte[] buffer, int index) {
+		return (buffer[index] & 0xFF) | ((buffer[index + 1] & 0xFF) << 8);
+	}
+	
+	private static short getShort(byte[] buffer, int index) {
+		return (short) getUnsignedShort(buffer, index);
+	}
+	
+	public int getSteer() {
+		return steer;
+	}
+	
+	public int getSpeed() {
+		return speed;
+	}
+	
+	public int getCmd1() {
+		return cmd1;
+	}
+	
+	public int getCmd2() {
+		return cmd2;
+	}
+	
+	public int getSpeedR() {
+		return speedR;
+	}
+	
+	public int getSpeedL() {
+		return speedL;
+	}
+	
+	public double getBattVoltage() {
+		return ((double) battVoltageRaw) / 100;
+	}
+	
+	public double getBoardTemp() {
+		return ((double) boardTempRaw) / 10;
+	}
+	
+	public int getCmdLed() {
+		return cmdLed;
+	}
+	
+}
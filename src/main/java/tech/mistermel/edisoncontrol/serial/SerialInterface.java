@@ -1,149 +1,218 @@
 package tech.mistermel.edisoncontrol.serial;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fazecast.jSerialComm.SerialPort;
-import com.fazecast.jSerialComm.SerialPortEvent;
-import com.fazecast.jSerialComm.SerialPortMessageListenerWithExceptions;
-
 import tech.mistermel.edisoncontrol.EdisonControl;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.HealthStatusType;
 import tech.mistermel.edisoncontrol.SystemHealthHandler.Service;
+import tech.mistermel.edisoncontrol.metrics.Histogram;
+import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.scheduler.MissedDeadlinePolicy;
+import tech.mistermel.edisoncontrol.scheduler.ScheduledLoop;
+import tech.mistermel.edisoncontrol.serial.transport.SerialTransport;
 
-public class SerialInterface extends Thread {
+public class SerialInterface {
 
-	private static final int START_FRAME = 0xABCD;
 	private static final int SEND_INTERVAL = 50;
-	private static final int MAX_RECEIVE_INTERVAL = 300;
+	private static final long MAX_RECEIVE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(300);
+	private static final int DEFAULT_MIN_SEND_SPACING = 10;
+	private static final String CONFIG_SECTION = "motherboard_serial";
 	
 	private static final Logger logger = LoggerFactory.getLogger(SerialInterface.class);
 	
-	private SerialPort port;
+	private SerialTransport port;
+	private ScheduledLoop sendLoop;
 	private long lastMessage;
 	
-	private short speed, steer;
+	private boolean immediateSend;
+	private long minSendSpacing;
+	private volatile long lastSendTime;
+	private final AtomicBoolean flushPending = new AtomicBoolean();
+	private final Object sendLock = new Object();
+	
+	private final MotherboardFrameCodec sendCodec = new MotherboardFrameCodec();
+	private final FeedbackFrameParser feedbackParser = new FeedbackFrameParser(this::onFeedback);
+	
+	private final ControlWord controlWord = new ControlWord(EdisonControl.getInstance().getClock());
+	private volatile int lastSentSequence = -1;
+	private long commandTimeout;
+	
+	private final Histogram commandAge = new Histogram();
+	private final Histogram sensorToWrite = new Histogram();
+	private volatile long duplicateSends, supersededCommands, staleCommands;
 	
 	private int speedR, speedL;
 	private double battVoltage, boardTemp;
 
-	public SerialInterface() {
-		super("SerialThread");
-	}
-	
-	@Override
-	public void run() {
+	public void initialize() {
 		EdisonControl.setStatus(Service.SERIAL_MOBO, HealthStatusType.INITIALIZING);
 		
-		this.port = SerialUtil.openSerial("motherboard_serial", "/dev/ttyS0", 38400);
+		this.port = SerialUtil.openSerial(CONFIG_SECTION, Service.SERIAL_MOBO, "/dev/ttyS0", 38400);
 		if(port == null) {
 			EdisonControl.setStatus(Service.SERIAL_MOBO, HealthStatusType.FAULT, "Failed to open port");
 			return;
 		}
 		
-		port.addDataListener(new SerialPortMessageListenerWithExceptions() {
+		JSONObject configJson = EdisonControl.getInstance().getConfigHandler().getJson().optJSONObject(CONFIG_SECTION);
+		this.immediateSend = configJson.optBoolean("immediate_send", false);
+		this.minSendSpacing = TimeUnit.MILLISECONDS.toNanos(configJson.optLong("min_send_spacing", DEFAULT_MIN_SEND_SPACING));
+		this.commandTimeout = TimeUnit.MILLISECONDS.toNanos(configJson.optLong("command_timeout", 0));
+		
+		port.setListener(feedbackParser::feed);
+		
+		EdisonControl.setStatus(Service.SERIAL_MOBO, HealthStatusType.RUNNING);
+		
+		this.sendLoop = EdisonControl.getInstance().getScheduler().schedule("serial_send", SEND_INTERVAL, MissedDeadlinePolicy.SKIP, this::send);
+	}
+	
+	private void onFeedback(MotherboardFrameCodec frame) {
+		long receivedTime = EdisonControl.getInstance().getClock().nanoTime();
+		this.lastMessage = receivedTime;
+		
+		this.speedR = frame.getSpeedR();
+		this.speedL = frame.getSpeedL();
+		this.battVoltage = frame.getBattVoltage();
+		this.boardTemp = frame.getBoardTemp();
+		
+		EdisonControl.getInstance().getTelemetryRecorder().getFeedback().record(receivedTime, speedR, speedL, (float) battVoltage, (float) boardTemp);
+		EdisonControl.getInstance().getBlackBoxRecorder().recordFeedbackFrame(receivedTime, feedbackParser.getFrame());
+		
+		// Feedback can arrive before the navigation handler has been created
+		NavigationHandler navHandler = EdisonControl.getInstance().getNavHandler();
+		if(navHandler != null) {
+			navHandler.onWheelSpeedsReceived(speedR, speedL, receivedTime);
+		}
+	}
+	
+	public boolean isCommunicationWorking() {
+		return lastMessage != 0 && EdisonControl.getInstance().getClock().nanoTime() - lastMessage < MAX_RECEIVE_INTERVAL;
+	}
+	
+	public void setControls(int speed, int steer) {
+		this.setControls(speed, steer, ControlSource.SYSTEM);
+	}
+	
+	public void setControls(int speed, int steer, ControlSource source) {
+		this.setControls(speed, steer, source, 0);
+	}
+	
+	// sensorTime is when the sensor data the command was calculated from arrived, see ControlWord
+	public void setControls(int speed, int steer, ControlSource source, long sensorTime) {
+		long previous = controlWord.get();
+		controlWord.publish(speed, steer, source, sensorTime);
+		
+		boolean changed = speed != ControlWord.speed(previous) || steer != ControlWord.steer(previous);
+		if(changed && immediateSend) {
+			this.requestFlush();
+		}
+	}
+	
+	// Sends the current command as soon as the minimum spacing allows it. Changes that
+	// arrive while a flush is already pending are coalesced into that flush.
+	private void requestFlush() {
+		if(!flushPending.compareAndSet(false, true)) {
+			return;
+		}
+		
+		long wait = lastSendTime + minSendSpacing - EdisonControl.getInstance().getClock().nanoTime();
+		if(wait <= 0) {
+			this.flush();
+			return;
+		}
+		
+		EdisonControl.getInstance().getScheduler().scheduleOnce("serial_flush", wait, this::flush);
+	}
+	
+	private void flush() {
+		flushPending.set(false);
+		
+		// The keep-alive loop may already have sent this command in the meantime
+		if(ControlWord.sequence(controlWord.get()) == lastSentSequence) {
+			return;
+		}
+		
+		this.send();
+	}
+	
+	private void send() {
+		synchronized(sendLock) {
+			long word = controlWord.get();
+			int sequence = ControlWord.sequence(word);
+			long now = EdisonControl.getInstance().getClock().nanoTime();
+			long publishTime = controlWord.getPublishTime(word);
+			long age = publishTime == 0 ? 0 : now - publishTime;
 			
-			@Override
-			public void serialEvent(SerialPortEvent event) {
-				if(event.getReceivedData().length != 18) {
-					return;
-				}
-				
-				ByteBuffer buffer = ByteBuffer.wrap(event.getReceivedData());
-				buffer.order(ByteOrder.LITTLE_ENDIAN);
+			short speed = ControlWord.speed(word);
+			short steer = ControlWord.steer(word);
+			
+			if(sequence == lastSentSequence) {
+				duplicateSends++;
+			} else if(publishTime != 0) {
+				commandAge.record(age);
 				
-				int start = toSigned(buffer.getShort());
-				if(start != START_FRAME) {
-					logger.warn("Received message with incorrect start frame, skipping");
-					return;
+				long sensorTime = controlWord.getSensorTime(word);
+				if(sensorTime != 0) {
+					sensorToWrite.record(now - sensorTime);
 				}
 				
-				SerialInterface.this.lastMessage = System.currentTimeMillis();
-				
-				buffer.position(buffer.position() + 4);
-				speedR = (int) buffer.getShort();
-				speedL = (int) buffer.getShort();
-				battVoltage = ((double) buffer.getShort()) / 100;
-				boardTemp = ((double) buffer.getShort()) / 10;
-			}
-			
-			@Override
-			public void catchException(Exception e) {
-				logger.error("Error occurred in serial interface", e);
-			}
-			
-			@Override
-			public int getListeningEvents() {
-				return SerialPort.LISTENING_EVENT_DATA_RECEIVED;
-			}
-			
-			@Override
-			public byte[] getMessageDelimiter() {
-				return new byte[] { (byte) START_FRAME };
+				int skipped = ((sequence - lastSentSequence) & ControlWord.SEQUENCE_MASK) - 1;
+				if(lastSentSequence != -1 && skipped > 0) {
+					supersededCommands += skipped;
+				}
 			}
 			
-			@Override
-			public boolean delimiterIndicatesEndOfMessage() {
-				return false;
+			if(commandTimeout > 0 && age > commandTimeout && (speed != 0 || steer != 0)) {
+				if(sequence != lastSentSequence) {
+					logger.warn("Command from {} is {}ms old, sending stop instead", ControlWord.source(word).name(), TimeUnit.NANOSECONDS.toMillis(age));
+					staleCommands++;
+				}
+				
+				speed = 0;
+				steer = 0;
 			}
-		});
-		
-		EdisonControl.setStatus(Service.SERIAL_MOBO, HealthStatusType.RUNNING);
-		
-		while(true) {
-			long nextRun = System.currentTimeMillis() + SEND_INTERVAL;
 			
-			this.send();
+			byte[] frame = sendCodec.encodeCommand(steer, speed);
+			port.write(frame, frame.length);
+			EdisonControl.getInstance().getBlackBoxRecorder().recordCommandFrame(now, frame);
 			
-			long sleepTime = nextRun - System.currentTimeMillis();
-			try {
-				Thread.sleep(sleepTime);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				break;
-			}
+			lastSentSequence = sequence;
+			lastSendTime = now;
 		}
-		
-		logger.warn("SerialInterface send loop exited");
 	}
 	
-	public boolean isCommunicationWorking() {
-		return System.currentTimeMillis() - lastMessage < MAX_RECEIVE_INTERVAL;
+	public ScheduledLoop getSendLoop() {
+		return sendLoop;
 	}
 	
-	private int toSigned(int unsigned) {
-		return unsigned & 0xFFFF;
+	// Time between a command being set and it being written to the port
+	public Histogram getCommandAge() {
+		return commandAge;
 	}
 	
-	public void setControls(short speed, short steer) {
-		this.speed = speed;
-		this.steer = steer;
+	// Time between the sensor data a command was based on arriving and the command being written
+	public Histogram getSensorToWrite() {
+		return sensorToWrite;
 	}
 	
-	public void setControls(int speed, int steer) {
-		this.speed = (short) speed;
-		this.steer = (short) steer;
+	public long getDuplicateSends() {
+		return duplicateSends;
 	}
 	
-	private void send() {
-		short startFrame = (short) toSigned(START_FRAME);
-		short checksum = (short) toSigned(startFrame ^ steer ^ speed);
-		
-		ByteBuffer buf = ByteBuffer.allocate(8);
-		buf.order(ByteOrder.LITTLE_ENDIAN);
-		buf.putShort(startFrame);
-		buf.putShort(steer);
-		buf.putShort(speed);
-		buf.putShort(checksum);
-		
-		buf.rewind();
-		byte[] bytes = new byte[buf.remaining()];
-		buf.get(bytes);
-
-		port.writeBytes(bytes, bytes.length);
+	public long getSupersededCommands() {
+		return supersededCommands;
+	}
+	
+	public long getStaleCommands() {
+		return staleCommands;
+	}
+	
+	public FeedbackFrameParser getFeedbackParser() {
+		return feedbackParser;
 	}
 	
 	public int getSpeedR() {
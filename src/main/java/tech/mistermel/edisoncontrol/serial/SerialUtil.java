@@ -4,9 +4,14 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fazecast.jSerialComm.SerialPort;
-
 import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.SystemHealthHandler.HealthStatusType;
+import tech.mistermel.edisoncontrol.SystemHealthHandler.Service;
+import tech.mistermel.edisoncontrol.serial.transport.JSerialCommTransport;
+import tech.mistermel.edisoncontrol.serial.transport.LoopbackTransport;
+import tech.mistermel.edisoncontrol.serial.transport.PtyTransport;
+import tech.mistermel.edisoncontrol.serial.transport.SerialTransport;
+import tech.mistermel.edisoncontrol.serial.transport.TcpTransport;
 
 public class SerialUtil {
 
@@ -14,26 +19,57 @@ public class SerialUtil {
 	
 	private static final Logger logger = LoggerFactory.getLogger(SerialUtil.class);
 	
-	public static SerialPort openSerial(String configSection, String defaultPort, int defaultBaudrate) {
+	// The status of the service follows the connection of transports that can reconnect
+	public static SerialTransport openSerial(String configSection, Service service, String defaultPort, int defaultBaudrate) {
 		JSONObject configJson = EdisonControl.getInstance().getConfigHandler().getJson().optJSONObject(configSection);
 		if(configJson == null) {
 			logger.warn("Serial port initialization failed, no '{}' config section", configSection);
 			return null;
 		}
 		
-		String serialPortName = configJson.optString("port_name", defaultPort);
-		int baudrate = configJson.optInt("baudrate", defaultBaudrate);
-		
-		SerialPort port = SerialPort.getCommPort(serialPortName);
-		port.setBaudRate(baudrate);
+		SerialTransport transport = createTransport(configSection, configJson, defaultPort, defaultBaudrate);
+		if(transport == null) {
+			return null;
+		}
 		
-		if(!port.openPort()) {
-			logger.warn("Failed to open serial port ({}: {} at {} baud)", configSection, serialPortName, baudrate);
+		if(!transport.open()) {
+			logger.warn("Failed to open serial port ({}: {})", configSection, transport.getDescription());
 			return null;
 		}
-		logger.info("Serial port opened ({}: {} at {} baud)", configSection, serialPortName, baudrate);
+		logger.info("Serial port opened ({}: {})", configSection, transport.getDescription());
+		
+		transport.setConnectionListener(connected -> {
+			if(connected) {
+				EdisonControl.setStatus(service, HealthStatusType.RUNNING);
+			} else {
+				EdisonControl.setStatus(service, HealthStatusType.FAULT, "Connection lost, reconnecting");
+			}
+		});
 		
-		return port;
+		return transport;
+	}
+	
+	private static SerialTransport createTransport(String configSection, JSONObject configJson, String defaultPort, int defaultBaudrate) {
+		String type = configJson.optString("transport", "serial");
+		
+		switch(type) {
+		case "serial":
+			return new JSerialCommTransport(configJson.optString("port_name", defaultPort), configJson.optInt("baudrate", defaultBaudrate));
+		case "tcp":
+			return new TcpTransport(configJson.optString("host", "localhost"), configJson.optInt("tcp_port"));
+		case "pty":
+			return new PtyTransport(configJson.optString("pty_path", configJson.optString("port_name", defaultPort)));
+		case "loopback":
+			String name = configJson.optString("loopback_name", configSection);
+			SerialTransport transport = LoopbackTransport.connect(name);
+			if(transport == null) {
+				logger.warn("No loopback device registered with name '{}' ({})", name, configSection);
+			}
+			return transport;
+		default:
+			logger.warn("Unknown transport type '{}' ({})", type, configSection);
+			return null;
+		}
 	}
 	
 }
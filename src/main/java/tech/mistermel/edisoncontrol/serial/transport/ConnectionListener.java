@@ -0,0 +1,8 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+public interface ConnectionListener {
+
+	// Called on the reader thread of the transport when the connection is lost or comes back
+	public void onConnectionChanged(boolean connected);
+	
+}
@@ -0,0 +1,89 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListenerWithExceptions;
+import com.fazecast.jSerialComm.SerialPortEvent;
+
+public class JSerialCommTransport implements SerialTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(JSerialCommTransport.class);
+	
+	private final String portName;
+	private final int baudrate;
+	private final byte[] receiveBuffer = new byte[256];
+	
+	private SerialPort port;
+	private TransportListener listener;
+	
+	public JSerialCommTransport(String portName, int baudrate) {
+		this.portName = portName;
+		this.baudrate = baudrate;
+	}
+	
+	@Override
+	public boolean open() {
+		this.port = SerialPort.getCommPort(portName);
+		port.setBaudRate(baudrate);
+		
+		if(!port.openPort()) {
+			return false;
+		}
+		
+		port.addDataListener(new SerialPortDataListenerWithExceptions() {
+			
+			@Override
+			public void serialEvent(SerialPortEvent event) {
+				int available;
+				while((available = port.bytesAvailable()) > 0) {
+					int read = port.readBytes(receiveBuffer, Math.min(available, receiveBuffer.length));
+					if(read <= 0) {
+						break;
+					}
+					
+					if(listener != null) {
+						listener.onDataReceived(receiveBuffer, read);
+					}
+				}
+			}
+			
+			@Override
+			public void catchException(Exception e) {
+				logger.error("Error occurred in serial port listener ({})", portName, e);
+			}
+			
+			@Override
+			public int getListeningEvents() {
+				return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+			}
+		});
+		
+		return true;
+	}
+	
+	@Override
+	public void close() {
+		if(port != null) {
+			port.removeDataListener();
+			port.closePort();
+		}
+	}
+	
+	@Override
+	public void setListener(TransportListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public void write(byte[] data, int length) {
+		port.writeBytes(data, length);
+	}
+	
+	@Override
+	public String getDescription() {
+		return portName + " at " + baudrate + " baud";
+	}
+	
+}
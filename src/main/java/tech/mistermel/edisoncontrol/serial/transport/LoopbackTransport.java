@@ -0,0 +1,74 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory transport, data written to one end is delivered synchronously to the
+// listener of the other end on the writing thread. Device stand-ins register their
+// end under a name, so that a config section with "transport": "loopback" can
+// connect to them.
+public class LoopbackTransport implements SerialTransport {
+
+	private static final Map<String, LoopbackTransport> registeredDevices = new ConcurrentHashMap<>();
+	
+	private final String name;
+	private LoopbackTransport peer;
+	private TransportListener listener;
+	private volatile boolean open;
+	
+	private LoopbackTransport(String name) {
+		this.name = name;
+	}
+	
+	public static LoopbackTransport[] createPair(String name) {
+		LoopbackTransport host = new LoopbackTransport(name);
+		LoopbackTransport device = new LoopbackTransport(name + "-device");
+		host.peer = device;
+		device.peer = host;
+		return new LoopbackTransport[] { host, device };
+	}
+	
+	public static void registerDevice(String name, LoopbackTransport device) {
+		registeredDevices.put(name, device);
+	}
+	
+	public static void unregisterDevice(String name) {
+		registeredDevices.remove(name);
+	}
+	
+	public static LoopbackTransport connect(String name) {
+		LoopbackTransport device = registeredDevices.get(name);
+		return device == null ? null : device.peer;
+	}
+	
+	@Override
+	public boolean open() {
+		this.open = true;
+		return true;
+	}
+	
+	@Override
+	public void close() {
+		this.open = false;
+	}
+	
+	@Override
+	public void setListener(TransportListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public void write(byte[] data, int length) {
+		if(!open || !peer.open || peer.listener == null) {
+			return;
+		}
+		
+		peer.listener.onDataReceived(data, length);
+	}
+	
+	@Override
+	public String getDescription() {
+		return "loopback:" + name;
+	}
+	
+}
@@ -0,0 +1,52 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Linux pseudo terminal, for example one end of a pair created with
+// socat -d -d pty,raw,echo=0 pty,raw,echo=0
+public class PtyTransport extends StreamTransport {
+
+	private final String path;
+	
+	private FileInputStream in;
+	private FileOutputStream out;
+	
+	public PtyTransport(String path) {
+		this.path = path;
+	}
+	
+	@Override
+	protected InputStream openInput() throws IOException {
+		this.in = new FileInputStream(path);
+		return in;
+	}
+	
+	@Override
+	protected OutputStream openOutput() throws IOException {
+		this.out = new FileOutputStream(path);
+		return out;
+	}
+	
+	@Override
+	protected void closeStreams() throws IOException {
+		try {
+			if(in != null) {
+				in.close();
+			}
+		} finally {
+			if(out != null) {
+				out.close();
+			}
+		}
+	}
+	
+	@Override
+	public String getDescription() {
+		return "pty:" + path;
+	}
+	
+}
@@ -0,0 +1,15 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+public interface SerialTransport {
+
+	public boolean open();
+	public void close();
+	
+	public void setListener(TransportListener listener);
+	// Only transports that can lose their connection and reconnect report it
+	public default void setConnectionListener(ConnectionListener listener) {}
+	public void write(byte[] data, int length);
+	
+	public String getDescription();
+	
+}
@@ -0,0 +1,190 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Base for transports on a pair of streams. The streams are read on a thread of their own,
+// and when the remote end goes away they are reopened with an increasing delay until it
+// comes back or the transport is closed.
+public abstract class StreamTransport implements SerialTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(StreamTransport.class);
+	
+	private static final long MIN_RECONNECT_DELAY = 500;
+	private static final long MAX_RECONNECT_DELAY = 10000;
+	
+	private final byte[] receiveBuffer = new byte[256];
+	
+	private volatile InputStream in;
+	private volatile OutputStream out;
+	private TransportListener listener;
+	private volatile ConnectionListener connectionListener;
+	private volatile boolean open, connected;
+	private Thread readerThread;
+	
+	protected abstract InputStream openInput() throws IOException;
+	protected abstract OutputStream openOutput() throws IOException;
+	protected abstract void closeStreams() throws IOException;
+	
+	@Override
+	public boolean open() {
+		try {
+			this.openStreams();
+		} catch(IOException e) {
+			logger.warn("Failed to open transport ({})", this.getDescription(), e);
+			this.closeQuietly();
+			return false;
+		}
+		
+		this.open = true;
+		this.connected = true;
+		
+		this.readerThread = new Thread(this::run, "TransportReader-" + this.getDescription());
+		readerThread.setDaemon(true);
+		readerThread.start();
+		
+		return true;
+	}
+	
+	private void openStreams() throws IOException {
+		this.in = this.openInput();
+		this.out = this.openOutput();
+	}
+	
+	private void run() {
+		while(open) {
+			this.read();
+			if(!open) {
+				return;
+			}
+			
+			this.connected = false;
+			this.closeQuietly();
+			this.notifyConnection(false);
+			
+			if(!this.reconnect()) {
+				return;
+			}
+			
+			this.connected = true;
+			this.notifyConnection(true);
+			logger.info("Transport reconnected ({})", this.getDescription());
+		}
+	}
+	
+	private void read() {
+		try {
+			int read;
+			while(open && (read = in.read(receiveBuffer)) != -1) {
+				if(read > 0 && listener != null) {
+					this.dispatch(read);
+				}
+			}
+			
+			if(open) {
+				logger.warn("Transport closed by remote end, reconnecting ({})", this.getDescription());
+			}
+		} catch(IOException e) {
+			if(open) {
+				logger.error("Error occurred while reading from transport, reconnecting ({})", this.getDescription(), e);
+			}
+		}
+	}
+	
+	// Returns false if the transport was closed before it could reconnect
+	private boolean reconnect() {
+		long delay = MIN_RECONNECT_DELAY;
+		while(open) {
+			try {
+				Thread.sleep(delay);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			
+			try {
+				this.openStreams();
+				return open;
+			} catch(IOException e) {
+				logger.debug("Reconnect failed, retrying in {}ms ({})", delay, this.getDescription(), e);
+				this.closeQuietly();
+				delay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+			}
+		}
+		return false;
+	}
+	
+	private void notifyConnection(boolean connected) {
+		ConnectionListener listener = connectionListener;
+		if(listener == null) {
+			return;
+		}
+		
+		try {
+			listener.onConnectionChanged(connected);
+		} catch(RuntimeException e) {
+			logger.error("Error occurred in connection listener ({})", this.getDescription(), e);
+		}
+	}
+	
+	private void dispatch(int length) {
+		try {
+			listener.onDataReceived(receiveBuffer, length);
+		} catch(RuntimeException e) {
+			logger.error("Error occurred in transport listener ({})", this.getDescription(), e);
+		}
+	}
+	
+	@Override
+	public void close() {
+		this.open = false;
+		this.connected = false;
+		if(readerThread != null) {
+			readerThread.interrupt();
+		}
+		
+		try {
+			this.closeStreams();
+		} catch(IOException e) {
+			logger.error("Error occurred while closing transport ({})", this.getDescription(), e);
+		}
+	}
+	
+	private void closeQuietly() {
+		try {
+			this.closeStreams();
+		} catch(IOException e) {
+			logger.debug("Error occurred while closing transport ({})", this.getDescription(), e);
+		}
+	}
+	
+	@Override
+	public void setListener(TransportListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public void setConnectionListener(ConnectionListener connectionListener) {
+		this.connectionListener = connectionListener;
+	}
+	
+	// Data written while the connection is down is dropped, the control loops send fresh data anyway
+	@Override
+	public void write(byte[] data, int length) {
+		if(!connected) {
+			return;
+		}
+		
+		try {
+			out.write(data, 0, length);
+			out.flush();
+		} catch(IOException e) {
+			logger.error("Error occurred while writing to transport ({})", this.getDescription(), e);
+		}
+	}
+	
+}
@@ -0,0 +1,56 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+// Raw TCP connection to a serial server such as ser2net in raw mode
+public class TcpTransport extends StreamTransport {
+
+	private static final int CONNECT_TIMEOUT = 3000;
+	
+	private final String host;
+	private final int port;
+	
+	private Socket socket;
+	
+	public TcpTransport(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+	
+	private Socket connect() throws IOException {
+		if(socket == null) {
+			this.socket = new Socket();
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+		}
+		return socket;
+	}
+	
+	@Override
+	protected InputStream openInput() throws IOException {
+		return this.connect().getInputStream();
+	}
+	
+	@Override
+	protected OutputStream openOutput() throws IOException {
+		return this.connect().getOutputStream();
+	}
+	
+	@Override
+	protected void closeStreams() throws IOException {
+		if(socket != null) {
+			socket.close();
+			socket = null;
+		}
+	}
+	
+	@Override
+	public String getDescription() {
+		return "tcp://" + host + ":" + port;
+	}
+	
+}
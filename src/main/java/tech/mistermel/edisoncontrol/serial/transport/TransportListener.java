@@ -0,0 +1,8 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+public interface TransportListener {
+
+	// The buffer is reused by the transport, so it is only valid during this call
+	public void onDataReceived(byte[] buffer, int length);
+	
+}
@@ -0,0 +1,82 @@
+package tech.mistermel.edisoncontrol.simulation;
+
+// Kinematic model of the robot. Each wheel follows its commanded RPM with a first order lag,
+// and the robot moves along the arc the two wheel speeds make. Uses the same convention as
+// navigation: x to the east, y down on the map, heading 0 to the north and clockwise.
+public class DifferentialDriveModel {
+
+	private final double wheelCircumference;
+	private final double trackWidth;
+	private final double motorTimeConstant;
+	private final int maxRpm;
+	
+	private double x, y, heading;
+	private double leftRpm, rightRpm;
+	private double targetLeftRpm, targetRightRpm;
+	
+	public DifferentialDriveModel(double wheelDiameter, double trackWidth, double motorTimeConstant, int maxRpm) {
+		this.wheelCircumference = Math.PI * wheelDiameter;
+		this.trackWidth = trackWidth;
+		this.motorTimeConstant = motorTimeConstant;
+		this.maxRpm = maxRpm;
+	}
+	
+	public void setPose(double x, double y, double heading) {
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+	}
+	
+	// Speed and steer as sent to the motherboard, mixed into wheel speeds the way its firmware does
+	public void setCommand(int speed, int steer) {
+		this.targetLeftRpm = Math.max(-maxRpm, Math.min(maxRpm, speed + steer));
+		this.targetRightRpm = Math.max(-maxRpm, Math.min(maxRpm, speed - steer));
+	}
+	
+	public void step(double dt) {
+		double blend = motorTimeConstant > 0 ? 1 - Math.exp(-dt / motorTimeConstant) : 1;
+		leftRpm += (targetLeftRpm - leftRpm) * blend;
+		rightRpm += (targetRightRpm - rightRpm) * blend;
+		
+		double left = leftRpm * wheelCircumference / 60;
+		double right = rightRpm * wheelCircumference / 60;
+		double velocity = (left + right) / 2;
+		double turnRate = (left - right) / trackWidth;
+		
+		// Moving along the heading halfway through the step is close enough to the arc for short steps
+		double middleHeading = Math.toRadians(heading) + turnRate * dt / 2;
+		x += velocity * Math.sin(middleHeading) * dt;
+		y -= velocity * Math.cos(middleHeading) * dt;
+		
+		heading = (heading + Math.toDegrees(turnRate * dt)) % 360;
+		if(heading < 0) {
+			heading += 360;
+		}
+	}
+	
+	public double getX() {
+		return x;
+	}
+	
+	public double getY() {
+		return y;
+	}
+	
+	public double getHeading() {
+		return heading;
+	}
+	
+	// Clockwise in degrees per second
+	public double getTurnRate() {
+		return Math.toDegrees((leftRpm - rightRpm) * wheelCircumference / 60 / trackWidth);
+	}
+	
+	public double getLeftRpm() {
+		return leftRpm;
+	}
+	
+	public double getRightRpm() {
+		return rightRpm;
+	}
+	
+}
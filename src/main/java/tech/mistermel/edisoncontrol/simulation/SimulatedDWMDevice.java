@@ -0,0 +1,111 @@
+package tech.mistermel.edisoncontrol.simulation;
+
+import tech.mistermel.edisoncontrol.serial.DWMTlvParser;
+import tech.mistermel.edisoncontrol.serial.transport.LoopbackTransport;
+
+// In-process stand-in for a DWM1001 tag in TLV (generic API) mode. It registers
+// itself as a loopback device, so a config section with "transport": "loopback"
+// and "mode": "tlv" talks to it instead of real hardware.
+public class SimulatedDWMDevice {
+
+	private static final int RET_OK = 0;
+	private static final int RET_UNKNOWN_COMMAND = 1;
+	
+	private final String name;
+	private final LoopbackTransport device;
+	
+	private final byte[] request = new byte[257];
+	private int requestLength;
+	private final byte[] response = new byte[32];
+	
+	private volatile int xMillis, yMillis, zMillis, quality;
+	private volatile int updateRate, stationaryUpdateRate;
+	private volatile long requestsHandled;
+	
+	public SimulatedDWMDevice(String name) {
+		this.name = name;
+		
+		LoopbackTransport[] pair = LoopbackTransport.createPair(name);
+		this.device = pair[1];
+		device.setListener(this::onDataReceived);
+		device.open();
+	}
+	
+	public void register() {
+		LoopbackTransport.registerDevice(name, device);
+	}
+	
+	public void unregister() {
+		LoopbackTransport.unregisterDevice(name);
+	}
+	
+	public void setPosition(float x, float y, float z, int quality) {
+		this.xMillis = Math.round(x * 1000);
+		this.yMillis = Math.round(y * 1000);
+		this.zMillis = Math.round(z * 1000);
+		this.quality = quality;
+	}
+	
+	private synchronized void onDataReceived(byte[] data, int length) {
+		for(int i = 0; i < length; i++) {
+			if(requestLength < request.length) {
+				request[requestLength++] = data[i];
+			}
+			
+			if(requestLength >= 2 && requestLength == 2 + (request[1] & 0xFF)) {
+				this.handleRequest(request[0] & 0xFF);
+				requestLength = 0;
+			}
+		}
+	}
+	
+	private void handleRequest(int type) {
+		requestsHandled++;
+		
+		switch(type) {
+		case DWMTlvParser.CMD_POS_GET:
+			int length = this.putReturnValue(RET_OK);
+			length = this.putPosition(length);
+			device.write(response, length);
+			break;
+		case DWMTlvParser.CMD_UPD_RATE_SET:
+			this.updateRate = (request[2] & 0xFF) | ((request[3] & 0xFF) << 8);
+			this.stationaryUpdateRate = (request[4] & 0xFF) | ((request[5] & 0xFF) << 8);
+			device.write(response, this.putReturnValue(RET_OK));
+			break;
+		default:
+			device.write(response, this.putReturnValue(RET_UNKNOWN_COMMAND));
+			break;
+		}
+	}
+	
+	private int putReturnValue(int code) {
+		response[0] = (byte) DWMTlvParser.TYPE_RET_VAL;
+		response[1] = 1;
+		response[2] = (byte) code;
+		return 3;
+	}
+	
+	private int putPosition(int offset) {
+		response[offset] = (byte) DWMTlvParser.TYPE_POS_XYZ;
+		response[offset + 1] = DWMTlvParser.POS_XYZ_LENGTH;
+		DWMTlvParser.putInt(response, offset + 2, xMillis);
+		DWMTlvParser.putInt(response, offset + 6, yMillis);
+		DWMTlvParser.putInt(response, offset + 10, zMillis);
+		response[offset + 14] = (byte) quality;
+		return offset + 2 + DWMTlvParser.POS_XYZ_LENGTH;
+	}
+	
+	public int getUpdateRate() {
+		return updateRate;
+	}
+	
+	public int getStationaryUpdateRate() {
+		return stationaryUpdateRate;
+	}
+	
+	public long getRequestsHandled() {
+		return requestsHandled;
+	}
+	
+}
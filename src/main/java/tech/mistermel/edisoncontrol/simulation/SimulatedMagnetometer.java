@@ -0,0 +1,45 @@
+package tech.mistermel.edisoncontrol.simulation;
+
+import java.util.Random;
+
+import org.json.JSONObject;
+
+import tech.mistermel.edisoncontrol.navigation.magnetometer.MagnetometerInterface;
+import tech.mistermel.edisoncontrol.navigation.magnetometer.SystemStatus;
+
+// Compass that reads the heading and turn rate of the model, with noise
+public class SimulatedMagnetometer implements MagnetometerInterface {
+
+	private final DifferentialDriveModel model;
+	private final Random random;
+	private final double headingSigma, turnRateSigma;
+	
+	public SimulatedMagnetometer(DifferentialDriveModel model, Random random, double headingSigma, double turnRateSigma) {
+		this.model = model;
+		this.random = random;
+		this.headingSigma = headingSigma;
+		this.turnRateSigma = turnRateSigma;
+	}
+	
+	@Override
+	public boolean initialize(JSONObject settings) {
+		return true;
+	}
+	
+	@Override
+	public SystemStatus getStatus() {
+		return new SystemStatus(3, 3, 3, 3);
+	}
+	
+	@Override
+	public float getHeading() {
+		double heading = (model.getHeading() + random.nextGaussian() * headingSigma) % 360;
+		return (float) (heading < 0 ? heading + 360 : heading);
+	}
+	
+	@Override
+	public float getTurnRate() {
+		return (float) (model.getTurnRate() + random.nextGaussian() * turnRateSigma);
+	}
+	
+}
@@ -0,0 +1,87 @@
+package tech.mistermel.edisoncontrol.simulation;
+
+import java.util.Random;
+
+import tech.mistermel.edisoncontrol.serial.MotherboardFrameCodec;
+import tech.mistermel.edisoncontrol.serial.transport.LoopbackTransport;
+
+// In-process stand-in for the hoverboard motherboard. Command frames from SerialInterface drive
+// the model, and sendFeedback() reports its wheel speeds back the way the firmware does.
+public class SimulatedMotherboard {
+
+	private static final double BATTERY_VOLTAGE = 39.6;
+	private static final double BOARD_TEMPERATURE = 30;
+	
+	private final String name;
+	private final LoopbackTransport device;
+	private final MotherboardFrameCodec codec = new MotherboardFrameCodec();
+	
+	private final DifferentialDriveModel model;
+	private final Random random;
+	private final double wheelSpeedSigma;
+	private final int leftSign, rightSign;
+	
+	private final byte[] request = new byte[MotherboardFrameCodec.COMMAND_FRAME_LENGTH];
+	private int requestLength;
+	private int speed, steer;
+	private volatile long framesReceived;
+	
+	// The signs are those of the motors as mounted, the right one usually reports forward as negative
+	public SimulatedMotherboard(String name, DifferentialDriveModel model, Random random, double wheelSpeedSigma, boolean invertLeft, boolean invertRight) {
+		this.name = name;
+		this.model = model;
+		this.random = random;
+		this.wheelSpeedSigma = wheelSpeedSigma;
+		this.leftSign = invertLeft ? -1 : 1;
+		this.rightSign = invertRight ? -1 : 1;
+		
+		LoopbackTransport[] pair = LoopbackTransport.createPair(name);
+		this.device = pair[1];
+		device.setListener(this::onDataReceived);
+		device.open();
+	}
+	
+	public void register() {
+		LoopbackTransport.registerDevice(name, device);
+	}
+	
+	public void unregister() {
+		LoopbackTransport.unregisterDevice(name);
+	}
+	
+	private void onDataReceived(byte[] data, int length) {
+		for(int i = 0; i < length; i++) {
+			request[requestLength++] = data[i];
+			
+			// Drop bytes until the start of a frame
+			if(requestLength == 1 && request[0] != (byte) MotherboardFrameCodec.START_FRAME
+					|| requestLength == 2 && request[1] != (byte) (MotherboardFrameCodec.START_FRAME >> 8)) {
+				requestLength = 0;
+				continue;
+			}
+			
+			if(requestLength == request.length) {
+				if(codec.decodeCommand(request, 0)) {
+					this.speed = codec.getSpeed();
+					this.steer = codec.getSteer();
+					model.setCommand(speed, steer);
+					framesReceived++;
+				}
+				requestLength = 0;
+			}
+		}
+	}
+	
+	public void sendFeedback() {
+		int speedR = (int) Math.round(rightSign * (model.getRightRpm() + random.nextGaussian() * wheelSpeedSigma));
+		int speedL = (int) Math.round(leftSign * (model.getLeftRpm() + random.nextGaussian() * wheelSpeedSigma));
+		
+		byte[] frame = codec.encodeFeedback(steer, speed, speedR, speedL, BATTERY_VOLTAGE, BOARD_TEMPERATURE, 0);
+		device.write(frame, frame.length);
+	}
+	
+	public long getFramesReceived() {
+		return framesReceived;
+	}
+	
+}
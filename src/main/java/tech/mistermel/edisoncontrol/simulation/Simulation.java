@@ -0,0 +1,140 @@
+package tech.mistermel.edisoncontrol.simulation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+import tech.mistermel.edisoncontrol.scheduler.LoopScheduler;
+import tech.mistermel.edisoncontrol.scheduler.ManualClock;
+import tech.mistermel.edisoncontrol.scheduler.MissedDeadlinePolicy;
+
+// A robot on simulated hardware: the drive model, the devices standing in for the motherboard,
+// the DWM tag and the compass, and the clock they run on. Every task runs on the thread that
+// advances the simulation and all noise comes from one seeded generator, so the same settings
+// always give the same run.
+public class Simulation {
+
+	private static final String MOTHERBOARD_NAME = "sim_motherboard";
+	private static final String DWM_NAME = "sim_dwm";
+	private static final long START_TIME = TimeUnit.SECONDS.toNanos(1);
+	
+	private final ManualClock clock = new ManualClock(START_TIME);
+	private final Random random;
+	
+	private final DifferentialDriveModel model;
+	private final SimulatedMotherboard motherboard;
+	private final SimulatedDWMDevice dwm;
+	private final SimulatedMagnetometer magnetometer;
+	
+	private final int physicsInterval, feedbackInterval, positionInterval;
+	private final float positionSigma;
+	private final int positionQuality;
+	
+	private LoopScheduler scheduler;
+	
+	// Reads the "simulation" section of the config. The robot itself defaults to the
+	// dimensions the pose estimator is configured with.
+	public Simulation(JSONObject config) {
+		JSONObject settings = config.optJSONObject("simulation");
+		if(settings == null) {
+			settings = new JSONObject();
+		}
+		
+		JSONObject navigationSection = config.optJSONObject("navigation");
+		JSONObject poseSection = navigationSection == null ? null : navigationSection.optJSONObject("pose_estimator");
+		if(poseSection == null) {
+			poseSection = new JSONObject();
+		}
+		
+		this.random = new Random(settings.optLong("seed", 1));
+		this.physicsInterval = settings.optInt("physics_interval", 5);
+		this.feedbackInterval = settings.optInt("feedback_interval", 20);
+		this.positionInterval = settings.optInt("position_interval", 100);
+		this.positionSigma = settings.optFloat("position_sigma", 0.05f);
+		this.positionQuality = settings.optInt("position_quality", 80);
+		
+		this.model = new DifferentialDriveModel(settings.optDouble("wheel_diameter", poseSection.optDouble("wheel_diameter", 0.165)),
+				settings.optDouble("track_width", poseSection.optDouble("track_width", 0.5)),
+				settings.optDouble("motor_time_constant", 0.15), settings.optInt("max_rpm", 1000));
+		model.setPose(settings.optDouble("start_x", 0), settings.optDouble("start_y", 0), settings.optDouble("start_heading", 0));
+		
+		this.motherboard = new SimulatedMotherboard(MOTHERBOARD_NAME, model, random, settings.optDouble("wheel_speed_sigma", 1),
+				poseSection.optBoolean("invert_left", false), poseSection.optBoolean("invert_right", true));
+		this.dwm = new SimulatedDWMDevice(DWM_NAME);
+		this.magnetometer = new SimulatedMagnetometer(model, random, settings.optDouble("heading_sigma", 1),
+				settings.optDouble("turn_rate_sigma", 0.5));
+	}
+	
+	// Copy of the config with the serial ports pointed at the simulated devices
+	public JSONObject configure(JSONObject config) {
+		JSONObject result = new JSONObject(config.toString());
+		
+		result.put("motherboard_serial", new JSONObject()
+				.put("transport", "loopback")
+				.put("loopback_name", MOTHERBOARD_NAME)
+				.put("immediate_send", true));
+		
+		result.put("dwm_serial", new JSONObject()
+				.put("transport", "loopback")
+				.put("loopback_name", DWM_NAME)
+				.put("mode", "tlv")
+				.put("update_rate", positionInterval));
+		
+		// Parameter sweeps would fill the disk
+		result.put("blackbox", new JSONObject().put("enabled", false));
+		
+		return result;
+	}
+	
+	// Has to be called before the serial interfaces are initialized, so they find the devices
+	public void start(LoopScheduler scheduler) {
+		this.scheduler = scheduler;
+		
+		motherboard.register();
+		dwm.register();
+		this.updatePosition();
+		
+		scheduler.schedule("sim_physics", physicsInterval, MissedDeadlinePolicy.CATCH_UP, () -> model.step(physicsInterval / 1000.0));
+		scheduler.schedule("sim_feedback", feedbackInterval, MissedDeadlinePolicy.CATCH_UP, motherboard::sendFeedback);
+		scheduler.schedule("sim_position", positionInterval, MissedDeadlinePolicy.CATCH_UP, this::updatePosition);
+	}
+	
+	public void stop() {
+		motherboard.unregister();
+		dwm.unregister();
+	}
+	
+	// Runs everything that happens in the given amount of simulated time
+	public void advance(long nanos) {
+		scheduler.runUntil(clock.nanoTime() + nanos);
+	}
+	
+	// The tag measures once per interval and answers polls with the latest measurement
+	private void updatePosition() {
+		float x = (float) (model.getX() + random.nextGaussian() * positionSigma);
+		float y = (float) (model.getY() + random.nextGaussian() * positionSigma);
+		dwm.setPosition(x, y, 0, positionQuality);
+	}
+	
+	public ManualClock getClock() {
+		return clock;
+	}
+	
+	public DifferentialDriveModel getModel() {
+		return model;
+	}
+	
+	public SimulatedMotherboard getMotherboard() {
+		return motherboard;
+	}
+	
+	public SimulatedDWMDevice getDWMDevice() {
+		return dwm;
+	}
+	
+	public SimulatedMagnetometer getMagnetometer() {
+		return magnetometer;
+	}
+	
+}
@@ -0,0 +1,171 @@
+package tech.mistermel.edisoncontrol.simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.mistermel.edisoncontrol.ConfigHandler;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.navigation.Location;
+import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath;
+
+// Drives missions on simulated hardware as fast as the computer allows, one after another.
+// Usage: SimulationRunner [config.json] [-runs <count>] [-timeout <seconds>] x,y x,y ...
+// Every run uses the next seed, so a batch shows how a configuration copes with different noise.
+public class SimulationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(SimulationRunner.class);
+	
+	private static final long SETTLE_TIME = TimeUnit.SECONDS.toNanos(1);
+	private static final long STEP = TimeUnit.MILLISECONDS.toNanos(10);
+	
+	public static class Result {
+		
+		private boolean completed;
+		private long simulatedTime, wallTime;
+		private double maxCrossTrackError, meanCrossTrackError;
+		private double endX, endY;
+		
+		// Whether every waypoint was reached before the timeout
+		public boolean isCompleted() {
+			return completed;
+		}
+		
+		// Nanoseconds from starting navigation until it finished
+		public long getSimulatedTime() {
+			return simulatedTime;
+		}
+		
+		public long getWallTime() {
+			return wallTime;
+		}
+		
+		// Distance of the actual robot to the route, rather than of the estimated pose
+		public double getMaxCrossTrackError() {
+			return maxCrossTrackError;
+		}
+		
+		public double getMeanCrossTrackError() {
+			return meanCrossTrackError;
+		}
+		
+		public double getEndX() {
+			return endX;
+		}
+		
+		public double getEndY() {
+			return endY;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s in %.1fs (%.0fx real time), cross-track error max %.3fm mean %.3fm, ended at (%.2f, %.2f)",
+					completed ? "Completed" : "Timed out", simulatedTime / 1e9, (double) simulatedTime / Math.max(1, wallTime),
+					maxCrossTrackError, meanCrossTrackError, endX, endY);
+		}
+		
+	}
+	
+	public static Result run(JSONObject config, List<Location> waypoints, long timeout) {
+		long wallStart = System.nanoTime();
+		
+		Simulation simulation = new Simulation(config);
+		EdisonControl edisonControl = EdisonControl.startSimulation(config, simulation);
+		NavigationHandler navHandler = edisonControl.getNavHandler();
+		
+		try {
+			// Give the pose estimator a few readings before starting
+			simulation.advance(SETTLE_TIME);
+			
+			for(Location waypoint : waypoints) {
+				navHandler.createWaypoint(waypoint.getX(), waypoint.getY());
+			}
+			
+			Result result = new Result();
+			if(!navHandler.setActive(true)) {
+				result.wallTime = System.nanoTime() - wallStart;
+				return result;
+			}
+			
+			ArcLengthPath path = navHandler.getState().getPath();
+			ArcLengthPath.Projection projection = new ArcLengthPath.Projection();
+			DifferentialDriveModel model = simulation.getModel();
+			
+			long startTime = simulation.getClock().nanoTime();
+			double errorSum = 0;
+			int samples = 0;
+			
+			while(navHandler.isActive() && simulation.getClock().nanoTime() - startTime < timeout) {
+				simulation.advance(STEP);
+				
+				path.project((float) model.getX(), (float) model.getY(), projection);
+				double error = Math.abs(projection.getCrossTrackError());
+				result.maxCrossTrackError = Math.max(result.maxCrossTrackError, error);
+				errorSum += error;
+				samples++;
+			}
+			
+			result.completed = !navHandler.isActive() && navHandler.getWaypoints().isEmpty();
+			result.simulatedTime = simulation.getClock().nanoTime() - startTime;
+			result.meanCrossTrackError = samples == 0 ? 0 : errorSum / samples;
+			result.endX = model.getX();
+			result.endY = model.getY();
+			result.wallTime = System.nanoTime() - wallStart;
+			return result;
+		} finally {
+			simulation.stop();
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		String configFile = null;
+		int runs = 1;
+		long timeout = TimeUnit.MINUTES.toNanos(10);
+		List<Location> waypoints = new ArrayList<>();
+		
+		for(int i = 0; i < args.length; i++) {
+			if(args[i].equals("-runs")) {
+				runs = Integer.parseInt(args[++i]);
+			} else if(args[i].equals("-timeout")) {
+				timeout = TimeUnit.SECONDS.toNanos(Long.parseLong(args[++i]));
+			} else if(args[i].contains(",")) {
+				String[] parts = args[i].split(",");
+				waypoints.add(new Location(Float.parseFloat(parts[0]), Float.parseFloat(parts[1])));
+			} else {
+				configFile = args[i];
+			}
+		}
+		
+		if(waypoints.size() < 2) {
+			logger.error("At least two waypoints are needed, given as x,y");
+			return;
+		}
+		
+		JSONObject config = ConfigHandler.read(configFile);
+		JSONObject settings = config.optJSONObject("simulation");
+		if(settings == null) {
+			settings = new JSONObject();
+			config.put("simulation", settings);
+		}
+		long seed = settings.optLong("seed", 1);
+		
+		int completed = 0;
+		for(int i = 0; i < runs; i++) {
+			settings.put("seed", seed + i);
+			Result result = run(config, waypoints, timeout);
+			logger.info("Run {} (seed {}): {}", i + 1, seed + i, result);
+			
+			if(result.isCompleted()) {
+				completed++;
+			}
+		}
+		logger.info("{} of {} runs completed", completed, runs);
+	}
+	
+}
@@ -0,0 +1,79 @@
+package tech.mistermel.edisoncontrol.startup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class BootStage {
+
+	public enum State {
+		PENDING, RUNNING, DONE, FAILED, SKIPPED;
+	}
+	
+	private final String name;
+	private final List<String> dependencies;
+	private final Runnable task;
+	
+	private volatile State state = State.PENDING;
+	private volatile long startTime, endTime;
+	private volatile String threadName, error;
+	
+	BootStage(String name, List<String> dependencies, Runnable task) {
+		this.name = name;
+		this.dependencies = dependencies;
+		this.task = task;
+	}
+	
+	void onStart(long time) {
+		this.startTime = time;
+		this.threadName = Thread.currentThread().getName();
+		this.state = State.RUNNING;
+	}
+	
+	void onEnd(long time, State state, String error) {
+		this.endTime = time;
+		this.error = error;
+		this.state = state;
+	}
+	
+	Runnable getTask() {
+		return task;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public List<String> getDependencies() {
+		return dependencies;
+	}
+	
+	public State getState() {
+		return state;
+	}
+	
+	public boolean isFinished() {
+		return state == State.DONE || state == State.FAILED || state == State.SKIPPED;
+	}
+	
+	// Timestamps are System.nanoTime() values, only meaningful relative to the boot start
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	public long getEndTime() {
+		return endTime;
+	}
+	
+	public long getDurationMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
+	}
+	
+	public String getThreadName() {
+		return threadName;
+	}
+	
+	public String getError() {
+		return error;
+	}
+	
+}
@@ -0,0 +1,147 @@
+package tech.mistermel.edisoncontrol.startup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.mistermel.edisoncontrol.startup.BootStage.State;
+
+// Runs the startup stages as soon as everything they depend on has finished, so slow
+// device initialisation (I2C polling, serial handshakes) happens in parallel instead
+// of one after the other. A stage is skipped if any of its dependencies failed.
+public class StartupOrchestrator {
+
+	private static final Logger logger = LoggerFactory.getLogger(StartupOrchestrator.class);
+	
+	private final Map<String, BootStage> stages = new LinkedHashMap<>();
+	
+	private volatile long bootStart, bootEnd;
+	
+	// Dependencies have to be added before the stages that need them, which also rules out cycles
+	public void addStage(String name, Runnable task, String... dependencies) {
+		if(stages.containsKey(name)) {
+			throw new IllegalArgumentException("Duplicate boot stage '" + name + "'");
+		}
+		
+		for(String dependency : dependencies) {
+			if(!stages.containsKey(dependency)) {
+				throw new IllegalArgumentException("Boot stage '" + name + "' depends on unknown stage '" + dependency + "'");
+			}
+		}
+		
+		stages.put(name, new BootStage(name, Collections.unmodifiableList(Arrays.asList(dependencies)), task));
+	}
+	
+	// Blocks until every stage has finished, returns whether all of them succeeded
+	public boolean run() {
+		AtomicInteger threadNum = new AtomicInteger();
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "StartupThread-" + threadNum.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		this.bootStart = System.nanoTime();
+		
+		Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+		for(BootStage stage : stages.values()) {
+			CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[stage.getDependencies().size()];
+			for(int i = 0; i < dependencyFutures.length; i++) {
+				dependencyFutures[i] = futures.get(stage.getDependencies().get(i));
+			}
+			
+			futures.put(stage.getName(), CompletableFuture.allOf(dependencyFutures).thenRunAsync(() -> this.runStage(stage), executor));
+		}
+		
+		CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+		executor.shutdown();
+		
+		this.bootEnd = System.nanoTime();
+		this.logTimeline();
+		
+		for(BootStage stage : stages.values()) {
+			if(stage.getState() != State.DONE) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void runStage(BootStage stage) {
+		for(String dependency : stage.getDependencies()) {
+			if(stages.get(dependency).getState() != State.DONE) {
+				long now = System.nanoTime();
+				stage.onStart(now);
+				stage.onEnd(now, State.SKIPPED, "Dependency '" + dependency + "' did not start");
+				logger.warn("Skipping boot stage '{}' because '{}' did not start", stage.getName(), dependency);
+				return;
+			}
+		}
+		
+		stage.onStart(System.nanoTime());
+		try {
+			stage.getTask().run();
+			stage.onEnd(System.nanoTime(), State.DONE, null);
+		} catch(Exception e) {
+			stage.onEnd(System.nanoTime(), State.FAILED, e.toString());
+			logger.error("Boot stage '{}' failed", stage.getName(), e);
+		}
+	}
+	
+	private void logTimeline() {
+		logger.info("Startup completed in {}ms", TimeUnit.NANOSECONDS.toMillis(bootEnd - bootStart));
+		
+		for(BootStage stage : stages.values()) {
+			BootStage blocker = this.getBlockingDependency(stage);
+			logger.info("  {} {}ms -> {}ms ({}ms, {}{})", stage.getName(),
+					this.toBootMillis(stage.getStartTime()), this.toBootMillis(stage.getEndTime()),
+					stage.getDurationMillis(), stage.getState().name(),
+					blocker == null ? "" : ", after " + blocker.getName());
+		}
+	}
+	
+	// The dependency that finished last, and so determined when a stage could start
+	public BootStage getBlockingDependency(BootStage stage) {
+		BootStage blocker = null;
+		for(String dependency : stage.getDependencies()) {
+			BootStage dependencyStage = stages.get(dependency);
+			if(blocker == null || dependencyStage.getEndTime() > blocker.getEndTime()) {
+				blocker = dependencyStage;
+			}
+		}
+		return blocker;
+	}
+	
+	public long toBootMillis(long time) {
+		return TimeUnit.NANOSECONDS.toMillis(time - bootStart);
+	}
+	
+	public Collection<BootStage> getStages() {
+		return new ArrayList<>(stages.values());
+	}
+	
+	public boolean isComplete() {
+		return bootEnd != 0;
+	}
+	
+	public long getBootStart() {
+		return bootStart;
+	}
+	
+	public long getBootEnd() {
+		return bootEnd;
+	}
+	
+}
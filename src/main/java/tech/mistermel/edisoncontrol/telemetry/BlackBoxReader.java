@@ -0,0 +1,150 @@
+package tech.mistermel.edisoncontrol.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Reads the segments written by BlackBoxRecorder back in the order they were recorded.
+// Usage as a program: BlackBoxReader [directory], prints every record as a line of text.
+public class BlackBoxReader {
+
+	private static final Logger logger = LoggerFactory.getLogger(BlackBoxReader.class);
+	
+	public interface RecordListener {
+		// The payload is positioned at the start of the data and limited to its end, and is
+		// only valid during the call
+		public void onRecord(int type, long time, ByteBuffer payload);
+	}
+	
+	private final File directory;
+	
+	private long segmentWallClock, segmentClock;
+	private long recordsRead, recordsSkipped;
+	
+	public BlackBoxReader(File directory) {
+		this.directory = directory;
+	}
+	
+	public void read(RecordListener listener) throws IOException {
+		for(File file : BlackBoxRecorder.listSegments(directory)) {
+			this.readSegment(file, listener);
+		}
+	}
+	
+	private void readSegment(File file, RecordListener listener) throws IOException {
+		ByteBuffer buffer;
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		
+		if(buffer.limit() < BlackBoxRecorder.SEGMENT_HEADER_SIZE || buffer.getInt(0) != BlackBoxRecorder.FILE_MAGIC) {
+			logger.warn("{} is not a black box segment, skipping it", file.getName());
+			return;
+		}
+		
+		if(buffer.getInt(4) != BlackBoxRecorder.FILE_VERSION) {
+			logger.warn("{} was written by an unsupported version, skipping it", file.getName());
+			return;
+		}
+		
+		this.segmentWallClock = buffer.getLong(16);
+		this.segmentClock = buffer.getLong(24);
+		
+		ByteBuffer payload = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int offset = BlackBoxRecorder.SEGMENT_HEADER_SIZE;
+		while(offset + BlackBoxRecorder.RECORD_HEADER_SIZE <= buffer.limit()) {
+			// Zero is where the recorder stopped writing, the file was empty before that
+			int length = buffer.getInt(offset);
+			if(length == 0) {
+				break;
+			}
+			
+			int size = Math.abs(length);
+			if(size < BlackBoxRecorder.RECORD_HEADER_SIZE || offset + size > buffer.limit()) {
+				logger.warn("Invalid record length {} in {} at offset {}, skipping the rest of it", length, file.getName(), offset);
+				break;
+			}
+			
+			// A negative length is a record that was claimed, but never finished
+			if(length > 0) {
+				payload.limit(offset + size).position(offset + BlackBoxRecorder.RECORD_HEADER_SIZE);
+				listener.onRecord(buffer.getInt(offset + 4), buffer.getLong(offset + 8), payload);
+				recordsRead++;
+			} else {
+				recordsSkipped++;
+			}
+			
+			offset += (size + 7) & ~7;
+		}
+	}
+	
+	// Converts a record time to wall clock millis, using the clock reading stored with the segment
+	// that is currently being read. Only valid during a call to the listener.
+	public long toWallClock(long time) {
+		return segmentWallClock + (time - segmentClock) / 1000000;
+	}
+	
+	public long getRecordsRead() {
+		return recordsRead;
+	}
+	
+	// Records that were never finished, because the program stopped while they were being written
+	public long getRecordsSkipped() {
+		return recordsSkipped;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		BlackBoxReader reader = new BlackBoxReader(new File(args.length == 0 ? "blackbox" : args[0]));
+		SimpleDateFormat format = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss.SSS");
+		
+		reader.read((type, time, payload) -> {
+			StringBuilder line = new StringBuilder(format.format(new Date(reader.toWallClock(time))));
+			switch(type) {
+			case BlackBoxRecorder.TYPE_POSITION:
+				line.append(" position ").append(payload.getFloat()).append(' ').append(payload.getFloat()).append(' ').append(payload.getInt());
+				break;
+			case BlackBoxRecorder.TYPE_HEADING:
+				line.append(" heading ").append(payload.getFloat());
+				if(payload.hasRemaining()) {
+					line.append(' ').append(payload.getFloat());
+				}
+				break;
+			case BlackBoxRecorder.TYPE_FEEDBACK_FRAME:
+				appendHex(line.append(" feedback "), payload);
+				break;
+			case BlackBoxRecorder.TYPE_COMMAND_FRAME:
+				appendHex(line.append(" command "), payload);
+				break;
+			case BlackBoxRecorder.TYPE_PACKET_RECEIVED:
+				line.append(" received ").append(StandardCharsets.UTF_8.decode(payload));
+				break;
+			case BlackBoxRecorder.TYPE_PACKET_SENT:
+				line.append(" sent ").append(StandardCharsets.UTF_8.decode(payload));
+				break;
+			default:
+				line.append(" unknown type ").append(type);
+				break;
+			}
+			System.out.println(line);
+		});
+		
+		logger.info("Read {} records, skipped {} unfinished ones", reader.getRecordsRead(), reader.getRecordsSkipped());
+	}
+	
+	private static void appendHex(StringBuilder line, ByteBuffer payload) {
+		while(payload.hasRemaining()) {
+			line.append(String.format("%02X", payload.get()));
+		}
+	}
+	
+}
@@ -0,0 +1,308 @@
+package tech.mistermel.edisoncontrol.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.mistermel.edisoncontrol.EdisonControl;
+
+// Records all sensor readings, motherboard frames and websocket packets to disk, so there is
+// something to look at after a problem in the field. Records are appended to memory-mapped
+// segment files of a fixed size, and only the newest segments are kept.
+//
+// Writers claim space in the current segment with a compare-and-set on its write position and
+// then fill it in, so any thread can record without taking a lock or making a system call.
+// The length of a record is written negated first and made positive as the last write, so a
+// record that was claimed but never finished can be recognized and skipped, see BlackBoxReader.
+public class BlackBoxRecorder {
+
+	private static final Logger logger = LoggerFactory.getLogger(BlackBoxRecorder.class);
+	
+	public static final int FILE_MAGIC = 0x42424F58;
+	public static final int FILE_VERSION = 1;
+	
+	// Magic, version, sequence, wall clock millis and clock nanos at creation, padding
+	public static final int SEGMENT_HEADER_SIZE = 32;
+	// Length, type and timestamp, followed by the payload and padded to a multiple of 8
+	public static final int RECORD_HEADER_SIZE = 16;
+	
+	public static final int TYPE_POSITION = 1;
+	public static final int TYPE_HEADING = 2;
+	public static final int TYPE_FEEDBACK_FRAME = 3;
+	public static final int TYPE_COMMAND_FRAME = 4;
+	public static final int TYPE_PACKET_RECEIVED = 5;
+	public static final int TYPE_PACKET_SENT = 6;
+	
+	private static final int POSITION_SIZE = RECORD_HEADER_SIZE + 12;
+	private static final int HEADING_SIZE = RECORD_HEADER_SIZE + 8;
+	
+	private static final String FILE_PREFIX = "blackbox-";
+	private static final String FILE_SUFFIX = ".bin";
+	
+	private final boolean enabled;
+	private final File directory;
+	private final int segmentSize;
+	private final int maxSegments;
+	
+	private final AtomicReference<Segment> current = new AtomicReference<>();
+	// Mapped ahead of time by the scheduler, so writers never have to create a file
+	private volatile Segment next;
+	private long nextSequence;
+	
+	private final AtomicLong droppedRecords = new AtomicLong();
+	
+	public BlackBoxRecorder(JSONObject settings) {
+		if(settings == null) {
+			settings = new JSONObject();
+		}
+		
+		this.enabled = settings.optBoolean("enabled", true);
+		this.directory = new File(settings.optString("directory", "blackbox"));
+		this.segmentSize = settings.optInt("segment_size", 8 * 1024 * 1024);
+		this.maxSegments = Math.max(2, settings.optInt("max_segments", 16));
+	}
+	
+	public void start() {
+		if(!enabled) {
+			logger.info("Black box recorder disabled");
+			return;
+		}
+		
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			logger.error("Could not create black box directory {}, nothing will be recorded", directory.getPath());
+			return;
+		}
+		
+		// Continue after the segments of earlier runs
+		File[] files = listSegments(directory);
+		this.nextSequence = files.length == 0 ? 0 : getSequence(files[files.length - 1]) + 1;
+		
+		try {
+			Segment first = this.createSegment();
+			this.next = this.createSegment();
+			current.set(first);
+		} catch(IOException e) {
+			logger.error("Error occurred while attempting to create black box segment, nothing will be recorded", e);
+			return;
+		}
+		
+		this.deleteOldSegments();
+		logger.info("Black box recording to {} ({} segments of {} KiB)", directory.getPath(), maxSegments, segmentSize / 1024);
+	}
+	
+	public void recordPosition(long time, float x, float y, int quality) {
+		Segment segment = current.get();
+		int offset = -1;
+		while(segment != null && (offset = segment.claim(POSITION_SIZE)) < 0) {
+			segment = this.rotate(segment);
+		}
+		if(segment == null) {
+			return;
+		}
+		
+		ByteBuffer buffer = segment.buffer;
+		buffer.putInt(offset + 4, TYPE_POSITION);
+		buffer.putLong(offset + 8, time);
+		buffer.putFloat(offset + 16, x);
+		buffer.putFloat(offset + 20, y);
+		buffer.putInt(offset + 24, quality);
+		buffer.putInt(offset, POSITION_SIZE);
+	}
+	
+	// The turn rate is NaN when the compass does not measure it
+	public void recordHeading(long time, float heading, float turnRate) {
+		Segment segment = current.get();
+		int offset = -1;
+		while(segment != null && (offset = segment.claim(HEADING_SIZE)) < 0) {
+			segment = this.rotate(segment);
+		}
+		if(segment == null) {
+			return;
+		}
+		
+		ByteBuffer buffer = segment.buffer;
+		buffer.putInt(offset + 4, TYPE_HEADING);
+		buffer.putLong(offset + 8, time);
+		buffer.putFloat(offset + 16, heading);
+		buffer.putFloat(offset + 20, turnRate);
+		buffer.putInt(offset, HEADING_SIZE);
+	}
+	
+	public void recordFeedbackFrame(long time, byte[] frame) {
+		this.recordBytes(TYPE_FEEDBACK_FRAME, time, frame, frame.length);
+	}
+	
+	public void recordCommandFrame(long time, byte[] frame) {
+		this.recordBytes(TYPE_COMMAND_FRAME, time, frame, frame.length);
+	}
+	
+	public void recordPacketReceived(long time, byte[] payload) {
+		this.recordBytes(TYPE_PACKET_RECEIVED, time, payload, payload.length);
+	}
+	
+	public void recordPacketSent(long time, String payload) {
+		if(current.get() == null) {
+			return;
+		}
+		
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		this.recordBytes(TYPE_PACKET_SENT, time, bytes, bytes.length);
+	}
+	
+	private void recordBytes(int type, long time, byte[] data, int length) {
+		int size = RECORD_HEADER_SIZE + length;
+		if(((size + 7) & ~7) > segmentSize - SEGMENT_HEADER_SIZE) {
+			droppedRecords.incrementAndGet();
+			return;
+		}
+		
+		Segment segment = current.get();
+		int offset = -1;
+		while(segment != null && (offset = segment.claim(size)) < 0) {
+			segment = this.rotate(segment);
+		}
+		if(segment == null) {
+			return;
+		}
+		
+		ByteBuffer buffer = segment.buffer;
+		buffer.putInt(offset + 4, type);
+		buffer.putLong(offset + 8, time);
+		
+		// There is no absolute bulk put, so the bytes go through a view of the buffer
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + RECORD_HEADER_SIZE);
+		view.put(data, 0, length);
+		
+		buffer.putInt(offset, size);
+	}
+	
+	// Called by every writer that finds the segment full. One of them switches to the prepared
+	// segment and has the one after it prepared, the others continue in the segment it switched
+	// to. Returns null if no segment was prepared in time, in which case the record is dropped.
+	private Segment rotate(Segment full) {
+		Segment prepared = next;
+		if(prepared != null && current.compareAndSet(full, prepared)) {
+			this.next = null;
+			EdisonControl.getInstance().getScheduler().scheduleOnce("blackbox_rotate", 0, this::prepareNext);
+		}
+		
+		Segment segment = current.get();
+		if(segment == full) {
+			droppedRecords.incrementAndGet();
+			return null;
+		}
+		return segment;
+	}
+	
+	private void prepareNext() {
+		try {
+			this.next = this.createSegment();
+		} catch(IOException e) {
+			logger.error("Error occurred while attempting to create black box segment", e);
+			return;
+		}
+		
+		this.deleteOldSegments();
+	}
+	
+	private Segment createSegment() throws IOException {
+		long sequence = nextSequence++;
+		File file = new File(directory, String.format("%s%08d%s", FILE_PREFIX, sequence, FILE_SUFFIX));
+		
+		// The file is created sparse and reads as zeroes, which marks the end of the records.
+		// The mapping stays valid after the channel is closed.
+		MappedByteBuffer buffer;
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(segmentSize);
+			buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		
+		buffer.putInt(0, FILE_MAGIC);
+		buffer.putInt(4, FILE_VERSION);
+		buffer.putLong(8, sequence);
+		buffer.putLong(16, System.currentTimeMillis());
+		buffer.putLong(24, EdisonControl.getInstance().getClock().nanoTime());
+		
+		return new Segment(buffer, segmentSize);
+	}
+	
+	private void deleteOldSegments() {
+		File[] files = listSegments(directory);
+		for(int i = 0; i < files.length - maxSegments; i++) {
+			if(!files[i].delete()) {
+				logger.warn("Could not delete old black box segment {}", files[i].getName());
+			}
+		}
+	}
+	
+	// Segment files in the directory, oldest first
+	public static File[] listSegments(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+		if(files == null) {
+			return new File[0];
+		}
+		
+		Arrays.sort(files, (a, b) -> Long.compare(getSequence(a), getSequence(b)));
+		return files;
+	}
+	
+	private static long getSequence(File file) {
+		String name = file.getName();
+		try {
+			return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	// Records that could not be written, because no segment was ready or they were too large
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+	
+	private static class Segment {
+		
+		private final MappedByteBuffer buffer;
+		private final int capacity;
+		private final AtomicInteger position = new AtomicInteger(SEGMENT_HEADER_SIZE);
+		
+		private Segment(MappedByteBuffer buffer, int capacity) {
+			this.buffer = buffer;
+			this.capacity = capacity;
+		}
+		
+		// Offset of the claimed space, or -1 if the record does not fit anymore. The negated
+		// length is written straight away, so readers can skip the record if it is never finished.
+		private int claim(int size) {
+			int padded = (size + 7) & ~7;
+			while(true) {
+				int offset = position.get();
+				if(offset + padded > capacity) {
+					return -1;
+				}
+				
+				if(position.compareAndSet(offset, offset + padded)) {
+					buffer.putInt(offset, -size);
+					return offset;
+				}
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,144 @@
+package tech.mistermel.edisoncontrol.telemetry;
+
+public class TelemetryChannel {
+
+	private final String name;
+	private final String[] fieldNames;
+	private final int fieldCount;
+	private final int capacity;
+	private final int mask;
+	
+	private final long[] timestamps;
+	private final float[] values;
+	
+	// Each channel has a single producer thread. Readers copy a window and then
+	// discard whatever the producer may have overwritten while they were copying.
+	private volatile long writeCount;
+	
+	public TelemetryChannel(String name, int capacity, String... fieldNames) {
+		if(Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two");
+		}
+		
+		this.name = name;
+		this.fieldNames = fieldNames;
+		this.fieldCount = fieldNames.length;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		
+		this.timestamps = new long[capacity];
+		this.values = new float[capacity * fieldCount];
+	}
+	
+	public void record(long nanos, float a) {
+		int slot = this.claim(nanos);
+		values[slot] = a;
+		writeCount++;
+	}
+	
+	public void record(long nanos, float a, float b, float c) {
+		int slot = this.claim(nanos);
+		values[slot] = a;
+		values[slot + 1] = b;
+		values[slot + 2] = c;
+		writeCount++;
+	}
+	
+	public void record(long nanos, float a, float b, float c, float d) {
+		int slot = this.claim(nanos);
+		values[slot] = a;
+		values[slot + 1] = b;
+		values[slot + 2] = c;
+		values[slot + 3] = d;
+		writeCount++;
+	}
+	
+	private int claim(long nanos) {
+		int index = (int) (writeCount & mask);
+		timestamps[index] = nanos;
+		return index * fieldCount;
+	}
+	
+	public Window query(long fromNanos, long toNanos) {
+		long end = writeCount;
+		long start = Math.max(0, end - capacity);
+		
+		int maxCount = (int) (end - start);
+		long[] windowTimestamps = new long[maxCount];
+		float[] windowValues = new float[maxCount * fieldCount];
+		long[] sequence = new long[maxCount];
+		
+		int count = 0;
+		for(long i = start; i < end; i++) {
+			int index = (int) (i & mask);
+			long timestamp = timestamps[index];
+			if(timestamp < fromNanos || timestamp > toNanos) {
+				continue;
+			}
+			
+			windowTimestamps[count] = timestamp;
+			System.arraycopy(values, index * fieldCount, windowValues, count * fieldCount, fieldCount);
+			sequence[count] = i;
+			count++;
+		}
+		
+		// Drop entries the producer overwrote while they were being copied
+		long oldestValid = writeCount - capacity + 1;
+		int skip = 0;
+		while(skip < count && sequence[skip] < oldestValid) {
+			skip++;
+		}
+		
+		return new Window(this, windowTimestamps, windowValues, skip, count - skip);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String[] getFieldNames() {
+		return fieldNames;
+	}
+	
+	public int getFieldCount() {
+		return fieldCount;
+	}
+	
+	public long getWriteCount() {
+		return writeCount;
+	}
+	
+	public static class Window {
+		
+		private final TelemetryChannel channel;
+		private final long[] timestamps;
+		private final float[] values;
+		private final int offset, count;
+		
+		private Window(TelemetryChannel channel, long[] timestamps, float[] values, int offset, int count) {
+			this.channel = channel;
+			this.timestamps = timestamps;
+			this.values = values;
+			this.offset = offset;
+			this.count = count;
+		}
+		
+		public TelemetryChannel getChannel() {
+			return channel;
+		}
+		
+		public int getCount() {
+			return count;
+		}
+		
+		public long getTimestamp(int i) {
+			return timestamps[offset + i];
+		}
+		
+		public float getValue(int i, int field) {
+			return values[(offset + i) * channel.getFieldCount() + field];
+		}
+		
+	}
+	
+}
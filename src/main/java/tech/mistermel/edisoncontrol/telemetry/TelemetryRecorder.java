@@ -0,0 +1,57 @@
+package tech.mistermel.edisoncontrol.telemetry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+public class TelemetryRecorder {
+
+	private static final int DEFAULT_CAPACITY = 32768;
+	
+	private final Map<String, TelemetryChannel> channels = new LinkedHashMap<>();
+	
+	private final TelemetryChannel feedback;
+	private final TelemetryChannel position;
+	private final TelemetryChannel heading;
+	private final TelemetryChannel pose;
+	
+	public TelemetryRecorder(JSONObject settings) {
+		int capacity = settings == null ? DEFAULT_CAPACITY : settings.optInt("capacity", DEFAULT_CAPACITY);
+		
+		this.feedback = this.addChannel(new TelemetryChannel("feedback", capacity, "speedR", "speedL", "battVoltage", "boardTemp"));
+		this.position = this.addChannel(new TelemetryChannel("position", capacity, "x", "y", "quality"));
+		this.heading = this.addChannel(new TelemetryChannel("heading", capacity, "heading"));
+		this.pose = this.addChannel(new TelemetryChannel("pose", capacity, "x", "y", "heading", "velocity"));
+	}
+	
+	private TelemetryChannel addChannel(TelemetryChannel channel) {
+		channels.put(channel.getName(), channel);
+		return channel;
+	}
+	
+	public TelemetryChannel getChannel(String name) {
+		return channels.get(name);
+	}
+	
+	public Map<String, TelemetryChannel> getChannels() {
+		return channels;
+	}
+	
+	public TelemetryChannel getFeedback() {
+		return feedback;
+	}
+	
+	public TelemetryChannel getPosition() {
+		return position;
+	}
+	
+	public TelemetryChannel getHeading() {
+		return heading;
+	}
+	
+	public TelemetryChannel getPose() {
+		return pose;
+	}
+	
+}
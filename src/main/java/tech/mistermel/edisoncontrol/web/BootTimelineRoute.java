@@ -0,0 +1,61 @@
+package tech.mistermel.edisoncontrol.web;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.startup.BootStage;
+import tech.mistermel.edisoncontrol.startup.StartupOrchestrator;
+import tech.mistermel.edisoncontrol.web.WebHandler.WebRoute;
+
+public class BootTimelineRoute implements WebRoute {
+
+	@Override
+	public Response serve(IHTTPSession session) {
+		StartupOrchestrator orchestrator = EdisonControl.getInstance().getStartupOrchestrator();
+		
+		JSONArray stagesJson = new JSONArray();
+		for(BootStage stage : orchestrator.getStages()) {
+			JSONObject stageJson = new JSONObject();
+			stageJson.put("name", stage.getName());
+			stageJson.put("dependencies", new JSONArray(stage.getDependencies()));
+			stageJson.put("state", stage.getState().name());
+			
+			if(stage.getState() != BootStage.State.PENDING) {
+				stageJson.put("startMs", orchestrator.toBootMillis(stage.getStartTime()));
+				stageJson.put("thread", stage.getThreadName());
+			}
+			
+			if(stage.isFinished()) {
+				stageJson.put("endMs", orchestrator.toBootMillis(stage.getEndTime()));
+				stageJson.put("durationMs", stage.getDurationMillis());
+				
+				BootStage blocker = orchestrator.getBlockingDependency(stage);
+				if(blocker != null) {
+					stageJson.put("blockedBy", blocker.getName());
+				}
+			}
+			
+			if(stage.getError() != null) {
+				stageJson.put("error", stage.getError());
+			}
+			
+			stagesJson.put(stageJson);
+		}
+		
+		JSONObject json = new JSONObject();
+		json.put("complete", orchestrator.isComplete());
+		if(orchestrator.isComplete()) {
+			json.put("totalMs", TimeUnit.NANOSECONDS.toMillis(orchestrator.getBootEnd() - orchestrator.getBootStart()));
+		}
+		json.put("stages", stagesJson);
+		
+		return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", json.toString());
+	}
+	
+}
@@ -0,0 +1,35 @@
+package tech.mistermel.edisoncontrol.web;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.metrics.Histogram;
+import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.web.WebHandler.WebRoute;
+
+public class LatencyRoute implements WebRoute {
+
+	@Override
+	public Response serve(IHTTPSession session) {
+		JSONObject stagesJson = new JSONObject();
+		
+		// The navigation handler is only created late during startup
+		NavigationHandler navHandler = EdisonControl.getInstance().getNavHandler();
+		if(navHandler != null) {
+			for(Map.Entry<String, Histogram> stage : navHandler.getLatencyStages().entrySet()) {
+				stagesJson.put(stage.getKey(), stage.getValue().toJson());
+			}
+		}
+		
+		JSONObject json = new JSONObject();
+		json.put("stages", stagesJson);
+		
+		return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", json.toString());
+	}
+	
+}
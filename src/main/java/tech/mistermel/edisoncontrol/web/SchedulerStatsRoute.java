@@ -0,0 +1,38 @@
+package tech.mistermel.edisoncontrol.web;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.scheduler.ScheduledLoop;
+import tech.mistermel.edisoncontrol.web.WebHandler.WebRoute;
+
+public class SchedulerStatsRoute implements WebRoute {
+
+	@Override
+	public Response serve(IHTTPSession session) {
+		JSONArray loopsJson = new JSONArray();
+		for(ScheduledLoop loop : EdisonControl.getInstance().getScheduler().getLoops()) {
+			JSONObject loopJson = new JSONObject();
+			loopJson.put("name", loop.getName());
+			loopJson.put("periodMs", loop.getPeriodMillis());
+			loopJson.put("policy", loop.getPolicy().name());
+			loopJson.put("runs", loop.getRuns());
+			loopJson.put("missedDeadlines", loop.getMissedDeadlines());
+			loopJson.put("jitter", loop.getJitter().toJson());
+			loopJson.put("executionTime", loop.getExecutionTime().toJson());
+			loopJson.put("overrun", loop.getOverrun().toJson());
+			
+			loopsJson.put(loopJson);
+		}
+		
+		JSONObject json = new JSONObject();
+		json.put("loops", loopsJson);
+		
+		return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", json.toString());
+	}
+	
+}
@@ -0,0 +1,47 @@
+package tech.mistermel.edisoncontrol.web;
+
+import org.json.JSONObject;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.serial.DWMSerialInterface;
+import tech.mistermel.edisoncontrol.serial.FeedbackFrameParser;
+import tech.mistermel.edisoncontrol.serial.SerialInterface;
+import tech.mistermel.edisoncontrol.web.WebHandler.WebRoute;
+
+public class SerialStatsRoute implements WebRoute {
+
+	@Override
+	public Response serve(IHTTPSession session) {
+		SerialInterface serialInterface = EdisonControl.getInstance().getSerialInterface();
+		FeedbackFrameParser parser = serialInterface.getFeedbackParser();
+		
+		JSONObject feedbackJson = new JSONObject();
+		feedbackJson.put("bytesReceived", parser.getBytesReceived());
+		feedbackJson.put("framesParsed", parser.getFramesParsed());
+		feedbackJson.put("bytesSkipped", parser.getBytesSkipped());
+		feedbackJson.put("checksumFailures", parser.getChecksumFailures());
+		
+		JSONObject commandsJson = new JSONObject();
+		commandsJson.put("duplicateSends", serialInterface.getDuplicateSends());
+		commandsJson.put("supersededCommands", serialInterface.getSupersededCommands());
+		commandsJson.put("staleCommands", serialInterface.getStaleCommands());
+		commandsJson.put("commandAge", serialInterface.getCommandAge().toJson());
+		
+		DWMSerialInterface dwmSerialInterface = EdisonControl.getInstance().getDWMSerialInterface();
+		JSONObject dwmJson = new JSONObject();
+		dwmJson.put("mode", dwmSerialInterface.isTlvMode() ? "tlv" : "shell");
+		dwmJson.put("tlvFramesParsed", dwmSerialInterface.getTlvParser().getFramesParsed());
+		dwmJson.put("tlvFramesDropped", dwmSerialInterface.getTlvParser().getFramesDropped());
+		
+		JSONObject json = new JSONObject();
+		json.put("motherboard", feedbackJson);
+		json.put("commands", commandsJson);
+		json.put("dwm", dwmJson);
+		
+		return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", json.toString());
+	}
+	
+}
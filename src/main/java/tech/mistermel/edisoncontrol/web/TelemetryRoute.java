@@ -0,0 +1,118 @@
+package tech.mistermel.edisoncontrol.web;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import fi.iki.elonen.NanoHTTPD;
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.telemetry.TelemetryChannel;
+import tech.mistermel.edisoncontrol.telemetry.TelemetryChannel.Window;
+import tech.mistermel.edisoncontrol.web.WebHandler.WebRoute;
+
+public class TelemetryRoute implements WebRoute {
+
+	private static final String TEXT_MIME_TYPE = "text/plain";
+	private static final long DEFAULT_WINDOW = 10000;
+	
+	// Query parameters:
+	// - channel: name of the channel (feedback, position or heading)
+	// - last: window ending now, in milliseconds (default 10000)
+	// - from/to: absolute window in nanoseconds on the clock of the scheduler, overrides last
+	// - format: json (columnar) or binary
+	@Override
+	public Response serve(IHTTPSession session) {
+		Map<String, String> params = session.getParms();
+		
+		TelemetryChannel channel = EdisonControl.getInstance().getTelemetryRecorder().getChannel(this.getParam(params, "channel", ""));
+		if(channel == null) {
+			return NanoHTTPD.newFixedLengthResponse(Response.Status.BAD_REQUEST, TEXT_MIME_TYPE, "Unknown or missing channel");
+		}
+		
+		long now = EdisonControl.getInstance().getClock().nanoTime();
+		long from, to;
+		try {
+			long last = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(this.getParam(params, "last", Long.toString(DEFAULT_WINDOW))));
+			from = Long.parseLong(this.getParam(params, "from", Long.toString(now - last)));
+			to = Long.parseLong(this.getParam(params, "to", Long.toString(now)));
+		} catch(NumberFormatException e) {
+			return NanoHTTPD.newFixedLengthResponse(Response.Status.BAD_REQUEST, TEXT_MIME_TYPE, "Invalid window parameters");
+		}
+		
+		Window window = channel.query(from, to);
+		if(this.getParam(params, "format", "json").equals("binary")) {
+			return this.serveBinary(window, now);
+		}
+		
+		return this.serveJson(window, now);
+	}
+	
+	private Response serveJson(Window window, long now) {
+		TelemetryChannel channel = window.getChannel();
+		
+		JSONObject json = new JSONObject();
+		json.put("channel", channel.getName());
+		json.put("now", now);
+		json.put("count", window.getCount());
+		
+		JSONArray timestampsJson = new JSONArray();
+		for(int i = 0; i < window.getCount(); i++) {
+			timestampsJson.put(window.getTimestamp(i));
+		}
+		json.put("t", timestampsJson);
+		
+		String[] fieldNames = channel.getFieldNames();
+		for(int field = 0; field < fieldNames.length; field++) {
+			JSONArray fieldJson = new JSONArray();
+			for(int i = 0; i < window.getCount(); i++) {
+				fieldJson.put(window.getValue(i, field));
+			}
+			json.put(fieldNames[field], fieldJson);
+		}
+		
+		return NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/json", json.toString());
+	}
+	
+	// Little endian: now (int64), count (int32), field count (int32), count timestamps
+	// (int64), then one column of count floats (float32) per field. The field names
+	// are listed in the X-Telemetry-Fields header.
+	private Response serveBinary(Window window, long now) {
+		TelemetryChannel channel = window.getChannel();
+		int count = window.getCount();
+		int fieldCount = channel.getFieldCount();
+		
+		ByteBuffer buffer = ByteBuffer.allocate(16 + count * 8 + count * fieldCount * 4);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(now);
+		buffer.putInt(count);
+		buffer.putInt(fieldCount);
+		
+		for(int i = 0; i < count; i++) {
+			buffer.putLong(window.getTimestamp(i));
+		}
+		
+		for(int field = 0; field < fieldCount; field++) {
+			for(int i = 0; i < count; i++) {
+				buffer.putFloat(window.getValue(i, field));
+			}
+		}
+		
+		byte[] bytes = buffer.array();
+		Response response = NanoHTTPD.newFixedLengthResponse(Response.Status.OK, "application/octet-stream", new ByteArrayInputStream(bytes), bytes.length);
+		response.addHeader("X-Telemetry-Fields", String.join(",", channel.getFieldNames()));
+		return response;
+	}
+	
+	private String getParam(Map<String, String> params, String name, String defaultValue) {
+		String value = params.get(name);
+		return value == null || value.isEmpty() ? defaultValue : value;
+	}
+
+}
@@ -13,7 +13,11 @@ import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.NanoWSD;
 import tech.mistermel.edisoncontrol.EdisonControl;
 import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.navigation.map.ObstacleMap;
+import tech.mistermel.edisoncontrol.scheduler.MissedDeadlinePolicy;
 import tech.mistermel.edisoncontrol.serial.SerialInterface;
+import tech.mistermel.edisoncontrol.web.packet.LatencyPacket;
+import tech.mistermel.edisoncontrol.web.packet.MapPacket;
 import tech.mistermel.edisoncontrol.web.packet.Packet;
 import tech.mistermel.edisoncontrol.web.packet.TelemetryPacket;
 
@@ -25,6 +29,7 @@ public class WebHandler extends NanoWSD {
 	private static final String DEFAULT_MIME_TYPE = "text/plain";
 	private static final String INDEX_FILE = "/index.html";
 	private static final byte[] PING_PAYLOAD = "1889BEJANDJKM859".getBytes();
+	private static final int TELEMETRY_INTERVAL = 1000;
 	
 	static {
 		MIME_TYPES.put("html", "text/html");
@@ -58,7 +63,7 @@ public class WebHandler extends NanoWSD {
 	public void startWeb() {
 		try {
 			this.start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
-			new TelemetryThread().start();
+			EdisonControl.getInstance().getScheduler().schedule("telemetry", TELEMETRY_INTERVAL, MissedDeadlinePolicy.SKIP, this::sendTelemetry);
 			
 			logger.info("Webserver started on port {}", this.getListeningPort());
 		} catch (IOException e) {
@@ -69,6 +74,12 @@ public class WebHandler extends NanoWSD {
 	protected void onPacketReceive(JSONObject json) {
 		String packetType = json.optString("type");
 		
+		// The webserver comes up before navigation, which most packets need
+		if(!EdisonControl.getInstance().isStartupComplete()) {
+			logger.warn("Ignoring '{}' packet received during startup", packetType);
+			return;
+		}
+		
 		Class<? extends Packet> packetClass = packetTypes.get(packetType);
 		if(packetClass == null) {
 			logger.warn("Received packet with invalid type ('{}')", packetType);
@@ -99,43 +110,35 @@ public class WebHandler extends NanoWSD {
 		}
 	}
 	
-	private class TelemetryThread extends Thread {
-		
-		public TelemetryThread() {
-			super("TelemetryThread");
-		}
-		
-		@Override
-		public void run() {
-			SerialInterface serialInterface = EdisonControl.getInstance().getSerialInterface();
-			while(true) {
-				if(webSocketHandler != null) {
-					if(!webSocketHandler.isCheckboxesSent()) {
-						webSocketHandler.sendCheckboxes();
-						EdisonControl.getInstance().getSystemHealthHandler().sendPacket();
-					}
-					
-					TelemetryPacket packet = new TelemetryPacket(serialInterface.getBattVoltage(), EdisonControl.getInstance().getINA219Interface().readVoltage(), serialInterface.getBoardTemp());
-					sendPacket(packet);
-					
-					try {
-						webSocketHandler.ping(PING_PAYLOAD);
-					} catch (IOException e) {
-						logger.error("Error occurred while attempting to send ping", e);
-					}
-				}
-				
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					break;
-				}
-			}
+	private void sendTelemetry() {
+		if(webSocketHandler == null || !EdisonControl.getInstance().isStartupComplete()) {
+			return;
+		}
+		
+		if(!webSocketHandler.isCheckboxesSent()) {
+			webSocketHandler.sendCheckboxes();
+			EdisonControl.getInstance().getSystemHealthHandler().sendPacket();
 			
-			logger.warn("Telemetry packet send loop exited");
+			ObstacleMap obstacleMap = EdisonControl.getInstance().getObstacleMap();
+			if(obstacleMap != null) {
+				sendPacket(new MapPacket(obstacleMap, null));
+			}
+		}
+		
+		SerialInterface serialInterface = EdisonControl.getInstance().getSerialInterface();
+		TelemetryPacket packet = new TelemetryPacket(serialInterface.getBattVoltage(), EdisonControl.getInstance().getINA219Interface().readVoltage(), serialInterface.getBoardTemp());
+		sendPacket(packet);
+		
+		NavigationHandler navHandler = EdisonControl.getInstance().getNavHandler();
+		if(navHandler != null) {
+			sendPacket(new LatencyPacket(navHandler.getLatencyStages()));
 		}
 		
+		try {
+			webSocketHandler.ping(PING_PAYLOAD);
+		} catch (IOException e) {
+			logger.error("Error occurred while attempting to send ping", e);
+		}
 	}
 	
 	@Override
@@ -195,6 +198,10 @@ public class WebHandler extends NanoWSD {
 		this.webSocketHandler = null;
 		
 		NavigationHandler navHandler = EdisonControl.getInstance().getNavHandler();
+		if(navHandler == null) {
+			return;
+		}
+		
 		if(navHandler.isActive()) {
 			logger.info("Disabling navigation handler because client disconnected");
 			navHandler.setActive(false);
@@ -55,8 +55,16 @@ public class WebSocketHandler extends WebSocket {
 		EdisonControl.getInstance().getWebHandler().onWebSocketClose();
 	}
 
+	@Override
+	public void send(String payload) throws IOException {
+		EdisonControl.getInstance().getBlackBoxRecorder().recordPacketSent(EdisonControl.getInstance().getClock().nanoTime(), payload);
+		super.send(payload);
+	}
+	
 	@Override
 	protected void onMessage(WebSocketFrame message) {
+		EdisonControl.getInstance().getBlackBoxRecorder().recordPacketReceived(EdisonControl.getInstance().getClock().nanoTime(), message.getBinaryPayload());
+		
 		try {
 			EdisonControl.getInstance().getWebHandler().onPacketReceive(new JSONObject(message.getTextPayload()));
 		} catch(Exception e) {
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.serial.ControlSource;
 
 public class ControlPacket implements Packet {
 
@@ -36,7 +37,7 @@ public class ControlPacket implements Packet {
 			return;
 		}
 		
-		EdisonControl.getInstance().getSerialInterface().setControls(speed, steer);
+		EdisonControl.getInstance().getSerialInterface().setControls(speed, steer, ControlSource.WEB);
 	}
 
 	@Override
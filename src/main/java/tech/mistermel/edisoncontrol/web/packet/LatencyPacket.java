@@ -0,0 +1,46 @@
+package tech.mistermel.edisoncontrol.web.packet;
+
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import tech.mistermel.edisoncontrol.metrics.Histogram;
+
+public class LatencyPacket implements Packet {
+
+	public static final String PACKET_NAME = "latency";
+	
+	private Map<String, Histogram> stages;
+	
+	public LatencyPacket() {}
+	
+	public LatencyPacket(Map<String, Histogram> stages) {
+		this.stages = stages;
+	}
+	
+	@Override
+	public void send(JSONObject json) {
+		// Only the summary, the full histograms are available from /latency
+		JSONArray stagesJson = new JSONArray();
+		for(Map.Entry<String, Histogram> stage : stages.entrySet()) {
+			JSONObject stageJson = new JSONObject();
+			stageJson.put("name", stage.getKey());
+			stageJson.put("p50", stage.getValue().getPercentileMicros(50));
+			stageJson.put("p99", stage.getValue().getPercentileMicros(99));
+			stagesJson.put(stageJson);
+		}
+		json.put("stages", stagesJson);
+	}
+	
+	@Override
+	public void receive(JSONObject json) {
+		// This packet is outgoing only
+	}
+	
+	@Override
+	public String getPacketName() {
+		return PACKET_NAME;
+	}
+	
+}
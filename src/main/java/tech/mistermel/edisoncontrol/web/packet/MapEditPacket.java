@@ -0,0 +1,63 @@
+package tech.mistermel.edisoncontrol.web.packet;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.navigation.NavigationHandler;
+import tech.mistermel.edisoncontrol.navigation.map.ObstacleMap;
+
+public class MapEditPacket implements Packet {
+
+	public static final String PACKET_NAME = "map_edit";
+	private static final Logger logger = LoggerFactory.getLogger(MapEditPacket.class);
+	
+	private static final float DEFAULT_RADIUS = 0.1f;
+	
+	@Override
+	public void send(JSONObject json) {
+		// This packet is incoming only
+	}
+	
+	@Override
+	public void receive(JSONObject json) {
+		ObstacleMap map = EdisonControl.getInstance().getObstacleMap();
+		if(map == null) {
+			logger.warn("Cannot edit obstacle map, it is not loaded");
+			return;
+		}
+		
+		String action = json.optString("action");
+		int[] region;
+		if(action.equals("paint") || action.equals("erase")) {
+			float x = json.optFloat("x");
+			float y = json.optFloat("y");
+			float radius = json.optFloat("radius", DEFAULT_RADIUS);
+			
+			region = map.paint(x, y, radius, action.equals("paint"));
+			if(region == null) {
+				return;
+			}
+		} else if(action.equals("clear")) {
+			map.clear();
+			region = null;
+		} else {
+			logger.warn("Unknown map edit action '{}'", action);
+			return;
+		}
+		
+		EdisonControl.getInstance().getWebHandler().sendPacket(new MapPacket(map, region));
+		
+		NavigationHandler navHandler = EdisonControl.getInstance().getNavHandler();
+		if(navHandler != null) {
+			navHandler.onMapChanged();
+		}
+	}
+	
+	@Override
+	public String getPacketName() {
+		return PACKET_NAME;
+	}
+	
+}
@@ -0,0 +1,60 @@
+package tech.mistermel.edisoncontrol.web.packet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import tech.mistermel.edisoncontrol.navigation.map.ObstacleMap;
+
+public class MapPacket implements Packet {
+
+	public static final String PACKET_NAME = "map";
+	
+	private ObstacleMap map;
+	private int[] region;
+	
+	// The region is { firstColumn, firstRow, lastColumn, lastRow }, or null to send the whole map
+	public MapPacket(ObstacleMap map, int[] region) {
+		this.map = map;
+		this.region = region;
+	}
+	
+	// The client clears the region and then fills in the occupied runs, sent as one flat
+	// row, column, length, row, column, length, ... array
+	@Override
+	public void send(JSONObject json) {
+		json.put("width", map.getWidth());
+		json.put("height", map.getHeight());
+		json.put("resolution", map.getResolution());
+		json.put("originX", map.getOriginX());
+		json.put("originY", map.getOriginY());
+		
+		if(region != null) {
+			json.put("region", new JSONArray(region));
+		}
+		
+		int[] runs = map.getRuns(region);
+		json.put("runs", (JSONString) () -> {
+			StringBuilder builder = new StringBuilder(runs.length * 5 + 2);
+			builder.append('[');
+			for(int i = 0; i < runs.length; i++) {
+				if(i > 0) {
+					builder.append(',');
+				}
+				builder.append(runs[i]);
+			}
+			return builder.append(']').toString();
+		});
+	}
+	
+	@Override
+	public void receive(JSONObject json) {
+		// This packet is outgoing only
+	}
+	
+	@Override
+	public String getPacketName() {
+		return PACKET_NAME;
+	}
+	
+}
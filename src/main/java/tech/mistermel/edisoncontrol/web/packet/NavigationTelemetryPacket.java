@@ -8,13 +8,21 @@ public class NavigationTelemetryPacket implements Packet {
 	
 	private float x, y, d;
 	private int heading, targetHeading;
+	private float lookaheadX, lookaheadY;
+	private float crossTrackError, progress, length, eta;
 	
-	public NavigationTelemetryPacket(float x, float y, float d, int heading, int targetHeading) {
+	public NavigationTelemetryPacket(float x, float y, float d, int heading, int targetHeading, float lookaheadX, float lookaheadY, float crossTrackError, float progress, float length, float eta) {
 		this.x = x;
 		this.y = y;
 		this.d = d;
 		this.heading = heading;
 		this.targetHeading = targetHeading;
+		this.lookaheadX = lookaheadX;
+		this.lookaheadY = lookaheadY;
+		this.crossTrackError = crossTrackError;
+		this.progress = progress;
+		this.length = length;
+		this.eta = eta;
 	}
 	
 	@Override
@@ -24,6 +32,12 @@ public class NavigationTelemetryPacket implements Packet {
 		json.put("d", d);
 		json.put("h", heading);
 		json.put("th", targetHeading);
+		json.put("lx", lookaheadX);
+		json.put("ly", lookaheadY);
+		json.put("cte", crossTrackError);
+		json.put("p", progress);
+		json.put("l", length);
+		json.put("eta", eta);
 	}
 
 	@Override
@@ -1,46 +1,59 @@
 package tech.mistermel.edisoncontrol.web.packet;
 
-import java.util.List;
-
-import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONString;
 
-import tech.mistermel.edisoncontrol.navigation.Location;
+import tech.mistermel.edisoncontrol.navigation.route.PackedRoute;
+import tech.mistermel.edisoncontrol.navigation.route.RouteChange;
 
 public class RoutePacket implements Packet {
 
 	public static final String PACKET_NAME = "route";
 	
-	private List<Location> curvePoints;
+	private PackedRoute addedPoints;
+	private RouteChange change;
 	
-	public RoutePacket(List<Location> curvePoints) {
-		this.curvePoints = curvePoints;
+	// The added points only, the points at change.getFirstPoint() onwards in the route
+	public RoutePacket(PackedRoute addedPoints, RouteChange change) {
+		this.addedPoints = addedPoints;
+		this.change = change;
 	}
 	
+	// Only the points that changed are sent, the client replaces the removed points with them.
+	// Points are sent as one flat x, y, x, y, ... array, written straight from the packed route
+	// rather than through a JSONArray per point.
 	@Override
 	public void send(JSONObject json) {
-		JSONArray curvePointsJson = new JSONArray();
-		json.put("curve_points", curvePointsJson);
+		json.put("start", change.getFirstPoint());
+		json.put("remove", change.getRemovedPoints());
 		
-		if(curvePoints != null) {
-			for(Location curvePoint : curvePoints) {
-				JSONArray curvePointJson = new JSONArray();
-				curvePointJson.put(curvePoint.getX());
-				curvePointJson.put(curvePoint.getY());
-				
-				curvePointsJson.put(curvePointJson);
-			}
+		if(addedPoints == null) {
+			json.put("curve_points", (JSONString) () -> "[]");
+			return;
 		}
+		
+		json.put("curve_points", (JSONString) () -> {
+			PackedRoute.Cursor cursor = addedPoints.cursor();
+			StringBuilder builder = new StringBuilder(addedPoints.size() * 20 + 2);
+			builder.append('[');
+			while(cursor.next()) {
+				if(builder.length() > 1) {
+					builder.append(',');
+				}
+				builder.append(cursor.getX()).append(',').append(cursor.getY());
+			}
+			return builder.append(']').toString();
+		});
 	}
-
+	
 	@Override
 	public void receive(JSONObject json) {
 		// This packet is outgoing only
 	}
-
+	
 	@Override
 	public String getPacketName() {
 		return PACKET_NAME;
 	}
-
+	
 }
@@ -123,6 +123,11 @@ socket.addEventListener("message", function(event) {
         return;
     }
 
+    if(msgType == "latency") {
+        setLatencyInfo(json.stages);
+        return;
+    }
+
     if(msgType == "checkboxes") {
         lightsToggle.checked = json.isLightingEnabled;
         streamToggle.checked = json.isStreamEnabled;
@@ -131,6 +136,7 @@ socket.addEventListener("message", function(event) {
 
     if(msgType == "nav") {
         setCanvasInfo(json.x, json.y, json.h, json.th);
+        setFollowerInfo(json.lx, json.ly, json.cte, json.p, json.l, json.eta);
         return;
     }
 
@@ -170,8 +176,14 @@ socket.addEventListener("message", function(event) {
         return;
     }
 
+    if(msgType == "map") {
+        setMapInfo(json);
+        return;
+    }
+
     if(msgType == "route") {
-        curvePoints = json.curve_points;
+        // Points are sent as a flat x, y, x, y, ... array
+        curvePoints = curvePoints.slice(0, json.start * 2).concat(json.curve_points, curvePoints.slice((json.start + json.remove) * 2));
         return;
     }
 });
@@ -301,6 +313,7 @@ function onImgError(e) {
 const navToggleButton = document.getElementById("nav-toggle");
 const waypointBtn = document.getElementById("waypoint-btn");
 const movementToggleButton = document.getElementById("movement-toggle");
+const obstacleButton = document.getElementById("obstacle-btn");
 let navigationEnabled = false;
 let movementEnabled = false;
 
@@ -312,6 +325,7 @@ function setNavigationEnabled(enabled) {
     mapCanvas.style.display = enabled ? "block" : "none";
     waypointBtn.style.display = enabled ? "inline-block" : "none";
     movementToggleButton.style.display = enabled ? "inline-block" : "none";
+    obstacleButton.style.display = enabled ? "inline-block" : "none";
 }
 
 navToggleButton.addEventListener("click", function(e) {
@@ -338,6 +352,13 @@ movementToggleButton.addEventListener("click", function(e) {
     setMovementEnabled(!movementEnabled, true);
 });
 
+let editingObstacles = false;
+
+obstacleButton.addEventListener("click", function(e) {
+    editingObstacles = !editingObstacles;
+    obstacleButton.innerHTML = editingObstacles ? "Stop editing obstacles" : "Edit obstacles";
+});
+
 waypointBtn.addEventListener("click", function(e) {
     let json = {
         type: "nav_createwaypoint",
@@ -361,13 +382,24 @@ ctx.font = "12px Arial";
 ctx.textAlign = "center";
 
 var x = 0, y = 0, h = 0, th = 0;
+var lookaheadX = 0, lookaheadY = 0, crossTrackError = 0, progress = 0, routeLength = 0, eta = -1;
 var waypoints = {}, waypointLength = 0;
 
 var curvePoints = [];
 
+// Occupied cells of the obstacle map, one byte per cell, and an image of them to draw
+var map = null, mapCells = null;
+const mapImage = document.createElement("canvas");
+const mapImageCtx = mapImage.getContext("2d");
+
 function draw() {
     ctx.clearRect(0, 0, mapCanvas.width, mapCanvas.height);
 
+    if(map) {
+        ctx.imageSmoothingEnabled = false;
+        ctx.drawImage(mapImage, map.originX * mapRatio, map.originY * mapRatio, map.width * map.resolution * mapRatio, map.height * map.resolution * mapRatio);
+    }
+
     let drawX = this.x * mapRatio;
     let drawY = this.y * mapRatio;
     let hRadians = degToRad(h - 90);
@@ -380,11 +412,11 @@ function draw() {
     ctx.fill();
 
     ctx.strokeStyle = "#808080";
-    curvePoints.forEach((curvePoint) => {
+    for(let i = 0; i < curvePoints.length; i += 2) {
         ctx.beginPath();
-        ctx.arc(curvePoint[0] * mapRatio, curvePoint[1] * mapRatio, 0.5, 0, 2 * Math.PI);
+        ctx.arc(curvePoints[i] * mapRatio, curvePoints[i + 1] * mapRatio, 0.5, 0, 2 * Math.PI);
         ctx.stroke();
-    });
+    }
 
     for(let i = 0; i < waypointLength; i++) {
         let waypoint = waypoints[i];
@@ -407,12 +439,49 @@ function draw() {
     ctx.lineTo(drawX + Math.cos(thRadians) * headingIndicatorLength, drawY + Math.sin(thRadians) * headingIndicatorLength);
     ctx.strokeStyle = "#ff0000";
     ctx.stroke();
+
+    if(routeLength > 0) {
+        ctx.beginPath();
+        ctx.arc(lookaheadX * mapRatio, lookaheadY * mapRatio, dotSize - 1, 0, 2 * Math.PI);
+        ctx.strokeStyle = "#ff0000";
+        ctx.stroke();
+
+        let etaText = eta < 0 ? "--" : Math.round(eta) + "s";
+        ctx.fillText("CTE " + crossTrackError.toFixed(2) + "m, " + Math.round(progress / routeLength * 100) + "%, ETA " + etaText, mapCanvas.width / 2, mapCanvas.height - 5);
+    }
 }
 setInterval(draw, 50);
 
 var draggingWaypoint = null, draggingWaypointIndex = -1;
 
+const brushRadius = 0.1;
+const minEditInterval = 50;
+var painting = false, lastEditTime = 0;
+
+// Paints obstacles while the mouse is held down, erases with shift
+function sendMapEdit(e) {
+    let now = Date.now();
+    if(now - lastEditTime < minEditInterval) {
+        return;
+    }
+    lastEditTime = now;
+
+    let mousePos = getCursorPosition(mapCanvas, e);
+    socket.send(JSON.stringify({
+        type: "map_edit",
+        action: e.shiftKey ? "erase" : "paint",
+        x: mousePos.x / mapRatio,
+        y: mousePos.y / mapRatio,
+        radius: brushRadius
+    }));
+}
+
 function handleMouseMove(e) {
+    if(painting) {
+        sendMapEdit(e);
+        return;
+    }
+
     if(!draggingWaypoint) {
         return;
     }
@@ -424,6 +493,13 @@ function handleMouseMove(e) {
 mapCanvas.onmousemove = handleMouseMove;
 
 function handleMouseDown(e) {
+    if(editingObstacles) {
+        painting = true;
+        lastEditTime = 0;
+        sendMapEdit(e);
+        return;
+    }
+
     let mousePos = getCursorPosition(mapCanvas, e);
     for(let i = 0; i < waypointLength; i++) {
         let waypoint = waypoints[i];
@@ -449,6 +525,8 @@ function handleMouseDown(e) {
 mapCanvas.onmousedown = handleMouseDown;
 
 function handleMouseUp(e) {
+    painting = false;
+
     if(!draggingWaypoint) {
         return;
     }
@@ -480,6 +558,79 @@ function setCanvasInfo(x, y, h, th) {
     this.y = y;
 }
 
+function setFollowerInfo(lx, ly, cte, p, l, eta) {
+    this.lookaheadX = lx;
+    this.lookaheadY = ly;
+    this.crossTrackError = cte;
+    this.progress = p;
+    this.routeLength = l;
+    this.eta = eta;
+}
+
+// A region of the map (or all of it) is sent as flat row, column, length runs of occupied cells
+function setMapInfo(json) {
+    if(!map || map.width != json.width || map.height != json.height) {
+        mapCells = new Uint8Array(json.width * json.height);
+        mapImage.width = json.width;
+        mapImage.height = json.height;
+    }
+    map = json;
+
+    let region = json.region ? json.region : [0, 0, json.width - 1, json.height - 1];
+    for(let row = region[1]; row <= region[3]; row++) {
+        mapCells.fill(0, row * json.width + region[0], row * json.width + region[2] + 1);
+    }
+    for(let i = 0; i < json.runs.length; i += 3) {
+        let start = json.runs[i] * json.width + json.runs[i + 1];
+        mapCells.fill(1, start, start + json.runs[i + 2]);
+    }
+
+    let regionWidth = region[2] - region[0] + 1;
+    let regionHeight = region[3] - region[1] + 1;
+    let image = mapImageCtx.createImageData(regionWidth, regionHeight);
+    for(let row = 0; row < regionHeight; row++) {
+        for(let column = 0; column < regionWidth; column++) {
+            if(mapCells[(region[1] + row) * json.width + region[0] + column]) {
+                let index = (row * regionWidth + column) * 4;
+                image.data[index] = 96;
+                image.data[index + 1] = 96;
+                image.data[index + 2] = 96;
+                image.data[index + 3] = 255;
+            }
+        }
+    }
+    mapImageCtx.putImageData(image, region[0], region[1]);
+}
+
+const latencyLabels = {
+    "positionAge": "Position",
+    "headingAge": "Heading",
+    "feedbackAge": "Feedback",
+    "tickTime": "Tick",
+    "commandQueueing": "Queue",
+    "sensorToWrite": "Total"
+};
+
+function setLatencyInfo(stages) {
+    let latencyElement = document.getElementById("latency");
+    latencyElement.innerHTML = "";
+
+    // Median and 99th percentile of every stage, in milliseconds
+    for(let i = 0; i < stages.length; i++) {
+        let stage = stages[i];
+
+        let spanElement = document.createElement("span");
+        spanElement.innerHTML = latencyLabels[stage.name] + " " + (stage.p50 / 1000).toFixed(1) + "/" + (stage.p99 / 1000).toFixed(1) + "ms ";
+        spanElement.title = "Median / 99th percentile";
+        latencyElement.appendChild(spanElement);
+    }
+
+    let iconElement = document.createElement("i");
+    iconElement.classList.add("fas");
+    iconElement.classList.add("fa-stopwatch");
+    latencyElement.prepend(iconElement);
+}
+
 function degToRad(degrees) {
     return degrees * (Math.PI / 180);
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+package tech.mistermel.edisoncontrol.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath;
+import tech.mistermel.edisoncontrol.navigation.route.PackedRoute;
+
+public class PurePursuitFollowerTest {
+
+	private static final long TICK = TimeUnit.MILLISECONDS.toNanos(20);
+	
+	private final PurePursuitFollower follower = new PurePursuitFollower(null, 0.5f, Math.PI * 0.165);
+	
+	// Position and time of the robot, advanced by drive
+	private float x;
+	private long time;
+	
+	@Test
+	public void replacingThePathKeepsSpeedAndProgress() {
+		follower.start(straightPath(0, 40));
+		this.drive(200);
+		
+		int speedBefore = follower.getSpeedCommand();
+		float progressBefore = follower.getProgress();
+		assertTrue(speedBefore > 100);
+		
+		// The same line, starting 5 meters earlier, so the distance along it is 5 meters more
+		follower.setPath(straightPath(-5, 40));
+		assertEquals(progressBefore + 5, follower.getProgress(), 0.01);
+		
+		this.drive(1);
+		assertTrue(follower.getSpeedCommand() >= speedBefore);
+		assertEquals(x + 5, follower.getProgress(), 0.05);
+	}
+	
+	@Test
+	public void startingBeginsFromStandstill() {
+		follower.start(straightPath(0, 40));
+		this.drive(200);
+		assertTrue(follower.getSpeedCommand() > 100);
+		
+		follower.start(straightPath(0, 40));
+		this.drive(1);
+		assertTrue(follower.getSpeedCommand() < 50);
+	}
+	
+	// Drives along the x axis (heading 90) at the commanded speed
+	private void drive(int ticks) {
+		for(int i = 0; i < ticks; i++) {
+			time += TICK;
+			assertTrue(follower.update(new Pose(x, 0, 90, 0, time, true)));
+			x += follower.getSpeedCommand() / 60f * Math.PI * 0.165 * TICK / 1e9;
+		}
+	}
+	
+	private static ArcLengthPath straightPath(float from, float to) {
+		PackedRoute.Builder builder = new PackedRoute.Builder();
+		for(float x = from; x <= to; x += 1) {
+			builder.add(x, 0);
+		}
+		return new ArcLengthPath(builder.build());
+	}
+	
+}
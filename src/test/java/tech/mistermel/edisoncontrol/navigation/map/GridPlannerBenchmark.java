@@ -0,0 +1,99 @@
+package tech.mistermel.edisoncontrol.navigation.map;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Planning across the default 100x100 m map at 5 cm, inflated by the default robot radius.
+// "trap" is the worst case: the goal lies behind a U-shaped wall around the start, so the
+// search has to cover the whole inside of it before it finds the way out.
+// Run like DWMPositionParserBenchmark, with GridPlannerBenchmark as the pattern.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridPlannerBenchmark {
+
+	private static final int SIZE = 2000;
+	private static final float RESOLUTION = 0.05f;
+	private static final int INFLATION = 7;
+	
+	@Param({ "open", "cluttered", "trap" })
+	private String map;
+	
+	private final GridPlanner planner = new GridPlanner();
+	private OccupancyGrid grid;
+	private float startX, startY, goalX, goalY;
+	
+	@Setup
+	public void setup() {
+		OccupancyGrid obstacles = new OccupancyGrid(SIZE, SIZE, RESOLUTION, 0, 0);
+		Random random = new Random(1);
+		
+		switch(map) {
+		case "open":
+			addObstacles(obstacles, random, 400, 0.2f, 1.5f);
+			this.setRoute(2, 2, 98, 98);
+			break;
+		case "cluttered":
+			addObstacles(obstacles, random, 20000, 0.05f, 0.3f);
+			this.setRoute(2, 2, 98, 98);
+			break;
+		case "trap":
+			addWall(obstacles, 10, 10, 90, 10);
+			addWall(obstacles, 90, 10, 90, 90);
+			addWall(obstacles, 10, 90, 90, 90);
+			this.setRoute(50, 50, 98, 50);
+			break;
+		default:
+			throw new IllegalArgumentException(map);
+		}
+		
+		this.grid = obstacles.inflate(INFLATION);
+		if(planner.plan(grid, startX, startY, goalX, goalY) == null) {
+			throw new IllegalStateException("No path on the " + map + " map");
+		}
+	}
+	
+	private void setRoute(float startX, float startY, float goalX, float goalY) {
+		this.startX = startX;
+		this.startY = startY;
+		this.goalX = goalX;
+		this.goalY = goalY;
+	}
+	
+	@Benchmark
+	public float[] plan() {
+		return planner.plan(grid, startX, startY, goalX, goalY);
+	}
+	
+	private static void addObstacles(OccupancyGrid grid, Random random, int count, float minRadius, float maxRadius) {
+		for(int i = 0; i < count; i++) {
+			float x = 5 + random.nextFloat() * 90, y = 5 + random.nextFloat() * 90;
+			grid.fillCircle(x, y, minRadius + random.nextFloat() * (maxRadius - minRadius), true);
+		}
+	}
+	
+	// A wall of 20 cm thick
+	private static void addWall(OccupancyGrid grid, float x0, float y0, float x1, float y1) {
+		int steps = (int) Math.ceil(Math.hypot(x1 - x0, y1 - y0) / RESOLUTION);
+		for(int i = 0; i <= steps; i++) {
+			float t = (float) i / steps;
+			grid.fillCircle(x0 + (x1 - x0) * t, y0 + (y1 - y0) * t, 0.1f, true);
+		}
+	}
+	
+}
@@ -0,0 +1,177 @@
+package tech.mistermel.edisoncontrol.navigation.map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GridPlannerTest {
+
+	private final GridPlanner planner = new GridPlanner();
+	
+	@Test
+	public void straightLineOverOpenGround() {
+		OccupancyGrid grid = new OccupancyGrid(20, 20, 1, 0, 0);
+		
+		float[] corners = planner.plan(grid, 2.5f, 2.5f, 17.5f, 12.5f);
+		assertNotNull(corners);
+		assertEquals(0, corners.length);
+	}
+	
+	@Test
+	public void passesThroughTheGapInAWall() {
+		// A wall along column 10 with a single free cell at row 3, start and goal on either side of it
+		OccupancyGrid grid = new OccupancyGrid(20, 20, 1, 0, 0);
+		for(int row = 0; row < 20; row++) {
+			if(row != 3) {
+				grid.set(10, row, true);
+			}
+		}
+		
+		float[] corners = planner.plan(grid, 5.5f, 15.5f, 15.5f, 15.5f);
+		assertArrayEquals(new float[] { 9.5f, 3.5f, 11.5f, 3.5f }, corners, 1e-6f);
+		assertPathIsFree(grid, 5.5f, 15.5f, corners, 15.5f, 15.5f);
+	}
+	
+	@Test
+	public void noPathIntoAClosedRoom() {
+		OccupancyGrid grid = new OccupancyGrid(20, 20, 1, 0, 0);
+		for(int i = 5; i <= 15; i++) {
+			grid.set(i, 5, true);
+			grid.set(i, 15, true);
+			grid.set(5, i, true);
+			grid.set(15, i, true);
+		}
+		
+		assertNull(planner.plan(grid, 1.5f, 1.5f, 10.5f, 10.5f));
+		
+		// The planner can be used again after a failed search
+		assertNotNull(planner.plan(grid, 1.5f, 1.5f, 18.5f, 18.5f));
+	}
+	
+	@Test
+	public void doesNotCutCornersBetweenDiagonalCells() {
+		// Two blocked cells touching at a corner, the diagonal between them is not a way through
+		OccupancyGrid grid = new OccupancyGrid(3, 3, 1, 0, 0);
+		grid.set(1, 0, true);
+		grid.set(0, 1, true);
+		grid.set(2, 1, true);
+		grid.set(1, 2, true);
+		
+		assertNull(planner.plan(grid, 0.5f, 0.5f, 1.5f, 1.5f));
+	}
+	
+	@Test
+	public void findsAPathWheneverThereIsOneAndItIsNoLonger() {
+		// Wider than a word, so the scans cross word boundaries
+		Random random = new Random(1);
+		for(int i = 0; i < 500; i++) {
+			OccupancyGrid grid = new OccupancyGrid(150, 100, 1, 0, 0);
+			int obstacles = random.nextInt(150);
+			for(int j = 0; j < obstacles; j++) {
+				grid.fillCircle(random.nextFloat() * 150, random.nextFloat() * 100, 0.5f + random.nextFloat() * 6, true);
+			}
+			
+			int startColumn = random.nextInt(150), startRow = random.nextInt(100);
+			int goalColumn = random.nextInt(150), goalRow = random.nextInt(100);
+			if(grid.isBlocked(startColumn, startRow) || grid.isBlocked(goalColumn, goalRow)) {
+				continue;
+			}
+			
+			float startX = grid.toX(startColumn), startY = grid.toY(startRow);
+			float goalX = grid.toX(goalColumn), goalY = grid.toY(goalRow);
+			float shortest = shortestPath(grid, startColumn, startRow, goalColumn, goalRow);
+			float[] corners = planner.plan(grid, startX, startY, goalX, goalY);
+			
+			if(shortest == Float.POSITIVE_INFINITY) {
+				assertNull(corners);
+				continue;
+			}
+			
+			assertNotNull("No path found on grid " + i, corners);
+			assertPathIsFree(grid, startX, startY, corners, goalX, goalY);
+			
+			// Pulling the path straight only makes it shorter than the shortest path over the grid
+			assertTrue("Path on grid " + i + " is longer than " + shortest, length(startX, startY, corners, goalX, goalY) <= shortest + 1e-3f);
+		}
+	}
+	
+	// Dijkstra over the same moves as the planner, diagonals may not cut the corner of a blocked cell
+	private static float shortestPath(OccupancyGrid grid, int startColumn, int startRow, int goalColumn, int goalRow) {
+		int width = grid.getWidth();
+		float[] cost = new float[width * grid.getHeight()];
+		Arrays.fill(cost, Float.POSITIVE_INFINITY);
+		cost[startRow * width + startColumn] = 0;
+		
+		PriorityQueue<float[]> queue = new PriorityQueue<>((a, b) -> Float.compare(a[0], b[0]));
+		queue.add(new float[] { 0, startColumn, startRow });
+		
+		while(!queue.isEmpty()) {
+			float[] entry = queue.poll();
+			int column = (int) entry[1], row = (int) entry[2];
+			if(entry[0] > cost[row * width + column]) {
+				continue;
+			}
+			
+			for(int dx = -1; dx <= 1; dx++) {
+				for(int dy = -1; dy <= 1; dy++) {
+					if((dx == 0 && dy == 0) || grid.isBlocked(column + dx, row + dy)) {
+						continue;
+					}
+					if(dx != 0 && dy != 0 && (grid.isBlocked(column + dx, row) || grid.isBlocked(column, row + dy))) {
+						continue;
+					}
+					
+					float next = entry[0] + (dx != 0 && dy != 0 ? (float) Math.sqrt(2) : 1);
+					int neighbour = (row + dy) * width + column + dx;
+					if(next < cost[neighbour]) {
+						cost[neighbour] = next;
+						queue.add(new float[] { next, column + dx, row + dy });
+					}
+				}
+			}
+		}
+		
+		return cost[goalRow * width + goalColumn];
+	}
+	
+	private static float length(float startX, float startY, float[] corners, float goalX, float goalY) {
+		float length = 0;
+		float x = startX, y = startY;
+		for(int i = 0; i <= corners.length; i += 2) {
+			float nextX = i < corners.length ? corners[i] : goalX;
+			float nextY = i < corners.length ? corners[i + 1] : goalY;
+			length += (float) Math.hypot(nextX - x, nextY - y);
+			x = nextX;
+			y = nextY;
+		}
+		return length;
+	}
+	
+	// Samples every leg of the path finely, every cell it passes through has to be free
+	private static void assertPathIsFree(OccupancyGrid grid, float startX, float startY, float[] corners, float goalX, float goalY) {
+		float x = startX, y = startY;
+		for(int i = 0; i <= corners.length; i += 2) {
+			float nextX = i < corners.length ? corners[i] : goalX;
+			float nextY = i < corners.length ? corners[i + 1] : goalY;
+			
+			int steps = (int) Math.ceil(Math.hypot(nextX - x, nextY - y) / grid.getResolution() * 20);
+			for(int step = 0; step <= steps; step++) {
+				float t = steps == 0 ? 0 : (float) step / steps;
+				float sampleX = x + (nextX - x) * t, sampleY = y + (nextY - y) * t;
+				assertTrue("Path passes through (" + sampleX + ", " + sampleY + ")", !grid.isBlocked(grid.toColumn(sampleX), grid.toRow(sampleY)));
+			}
+			
+			x = nextX;
+			y = nextY;
+		}
+	}
+	
+}
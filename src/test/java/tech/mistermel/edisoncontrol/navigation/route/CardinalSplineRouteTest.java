@@ -0,0 +1,81 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import tech.mistermel.edisoncontrol.navigation.Waypoint;
+
+public class CardinalSplineRouteTest {
+
+	private static final float MAX_ERROR = 0.01f;
+	
+	@Test
+	public void pathFromTheCachedPointsMatchesTessellatingAgain() {
+		Random random = new Random(1);
+		CardinalSplineRoute route = new CardinalSplineRoute(MAX_ERROR);
+		List<Waypoint> waypoints = new ArrayList<>();
+		for(int i = 0; i < 8; i++) {
+			waypoints.add(createWaypoint(random));
+		}
+		route.updateWaypoints(waypoints);
+		
+		for(int i = 0; i < 50; i++) {
+			// Moves, inserts and removals, so only some of the segments are tessellated again
+			int index = random.nextInt(waypoints.size());
+			int edit = random.nextInt(3);
+			if(edit == 0) {
+				waypoints.set(index, createWaypoint(random));
+			} else if(edit == 1 || waypoints.size() <= 3) {
+				waypoints.add(index, createWaypoint(random));
+			} else {
+				waypoints.remove(index);
+			}
+			route.updateWaypoints(waypoints);
+			
+			ArcLengthPath cached = route.createPath();
+			ArcLengthPath tessellated = new ArcLengthPath(route.getSpline(), MAX_ERROR);
+			assertEquals(tessellated.getPointCount(), cached.getPointCount());
+			for(int j = 0; j < cached.getPointCount(); j++) {
+				float distance = tessellated.getPointDistance(j);
+				assertEquals(distance, cached.getPointDistance(j), 0);
+				assertEquals(tessellated.getX(distance), cached.getX(distance), 0);
+				assertEquals(tessellated.getY(distance), cached.getY(distance), 0);
+				assertEquals(tessellated.getPointCurvature(j), cached.getPointCurvature(j), 0);
+			}
+		}
+	}
+	
+	@Test
+	public void pointsInARangeAreTheSameAsInTheWholeRoute() {
+		Random random = new Random(2);
+		CardinalSplineRoute route = new CardinalSplineRoute(MAX_ERROR);
+		List<Waypoint> waypoints = new ArrayList<>();
+		for(int i = 0; i < 6; i++) {
+			waypoints.add(createWaypoint(random));
+		}
+		route.updateWaypoints(waypoints);
+		
+		PackedRoute all = route.calculatePoints();
+		for(int i = 0; i < 100; i++) {
+			int from = random.nextInt(all.size() + 1);
+			int to = from + random.nextInt(all.size() - from + 1);
+			
+			PackedRoute range = route.calculatePoints(from, to);
+			assertEquals(to - from, range.size());
+			for(int j = 0; j < range.size(); j++) {
+				assertEquals(all.getX(from + j), range.getX(j), 0);
+				assertEquals(all.getY(from + j), range.getY(j), 0);
+			}
+		}
+	}
+	
+	private static Waypoint createWaypoint(Random random) {
+		return new Waypoint(random.nextFloat() * 20, random.nextFloat() * 20);
+	}
+	
+}
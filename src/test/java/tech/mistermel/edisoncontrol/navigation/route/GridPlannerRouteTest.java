@@ -0,0 +1,141 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tech.mistermel.edisoncontrol.navigation.Waypoint;
+import tech.mistermel.edisoncontrol.navigation.map.ObstacleMap;
+import tech.mistermel.edisoncontrol.navigation.map.OccupancyGrid;
+
+public class GridPlannerRouteTest {
+
+	private static final float RESOLUTION = 0.05f;
+	private static final float ROBOT_RADIUS = 0.3f;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void smoothedRouteKeepsClearOfObstacles() throws IOException {
+		Random random = new Random(1);
+		for(int i = 0; i < 50; i++) {
+			OccupancyGrid grid = createObstacles(random);
+			OccupancyGrid clearance = grid.inflate((int) Math.ceil(ROBOT_RADIUS / RESOLUTION));
+			GridPlannerRoute route = new GridPlannerRoute(new CardinalSplineRoute(0.01f), this.createMap(grid), ROBOT_RADIUS);
+			
+			List<Waypoint> waypoints = new ArrayList<>();
+			while(waypoints.size() < 5) {
+				waypoints.add(createWaypoint(random, clearance));
+			}
+			
+			route.updateWaypoints(waypoints);
+			assertClear(clearance, route.calculatePoints());
+		}
+	}
+	
+	@Test
+	public void mergedChangesGiveTheNewRoute() throws IOException {
+		Random random = new Random(2);
+		OccupancyGrid grid = createObstacles(random);
+		OccupancyGrid clearance = grid.inflate((int) Math.ceil(ROBOT_RADIUS / RESOLUTION));
+		GridPlannerRoute route = new GridPlannerRoute(new CardinalSplineRoute(0.01f), this.createMap(grid), ROBOT_RADIUS);
+		
+		List<Waypoint> waypoints = new ArrayList<>();
+		while(waypoints.size() < 5) {
+			waypoints.add(createWaypoint(random, clearance));
+		}
+		
+		// The points the interface has, kept up to date with the changes only
+		float[] client = new float[0];
+		
+		for(int i = 0; i < 40; i++) {
+			waypoints.set(random.nextInt(waypoints.size()), createWaypoint(random, clearance));
+			
+			RouteChange change = route.updateWaypoints(waypoints);
+			PackedRoute points = route.calculatePoints();
+			client = apply(client, change, points);
+			
+			assertEquals(points.size() * 2, client.length);
+			for(int j = 0; j < points.size(); j++) {
+				assertEquals(points.getX(j), client[j * 2], 0);
+				assertEquals(points.getY(j), client[j * 2 + 1], 0);
+			}
+			assertClear(clearance, points);
+		}
+	}
+	
+	// 20x20 m with obstacles of up to 1.6 m across
+	private static OccupancyGrid createObstacles(Random random) {
+		OccupancyGrid grid = new OccupancyGrid(400, 400, RESOLUTION, 0, 0);
+		for(int i = 0; i < 60; i++) {
+			grid.fillCircle(1 + random.nextFloat() * 18, 1 + random.nextFloat() * 18, 0.2f + random.nextFloat() * 0.6f, true);
+		}
+		return grid;
+	}
+	
+	// Waypoints right against the clearance cannot be passed through without touching it,
+	// so they are kept as far away as the planner keeps its corners
+	private static Waypoint createWaypoint(Random random, OccupancyGrid clearance) {
+		OccupancyGrid margin = clearance.inflate(2);
+		while(true) {
+			float x = 1 + random.nextFloat() * 18, y = 1 + random.nextFloat() * 18;
+			if(!margin.isBlocked(margin.toColumn(x), margin.toRow(y))) {
+				return new Waypoint(x, y);
+			}
+		}
+	}
+	
+	private ObstacleMap createMap(OccupancyGrid grid) throws IOException {
+		File file = folder.newFile();
+		try(DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			grid.write(out);
+		}
+		
+		ObstacleMap map = new ObstacleMap(new JSONObject().put("file", file.getPath()));
+		map.load();
+		return map;
+	}
+	
+	// Replaces the removed points by the added ones, like the interface does
+	private static float[] apply(float[] points, RouteChange change, PackedRoute route) {
+		int first = change.getFirstPoint() * 2;
+		float[] result = new float[points.length + (change.getAddedPoints() - change.getRemovedPoints()) * 2];
+		System.arraycopy(points, 0, result, 0, first);
+		for(int i = 0; i < change.getAddedPoints(); i++) {
+			result[first + i * 2] = route.getX(change.getFirstPoint() + i);
+			result[first + i * 2 + 1] = route.getY(change.getFirstPoint() + i);
+		}
+		
+		int removedEnd = first + change.getRemovedPoints() * 2;
+		System.arraycopy(points, removedEnd, result, first + change.getAddedPoints() * 2, points.length - removedEnd);
+		return result;
+	}
+	
+	// The points are at most 1 cm from the spline, so checking them and the lines between them is enough
+	private static void assertClear(OccupancyGrid clearance, PackedRoute points) {
+		for(int i = 1; i < points.size(); i++) {
+			float x0 = points.getX(i - 1), y0 = points.getY(i - 1);
+			float x1 = points.getX(i), y1 = points.getY(i);
+			
+			int steps = Math.max(1, (int) Math.ceil(Math.hypot(x1 - x0, y1 - y0) * 4 / RESOLUTION));
+			for(int step = 0; step <= steps; step++) {
+				float x = x0 + (x1 - x0) * step / steps, y = y0 + (y1 - y0) * step / steps;
+				assertFalse("Route passes through (" + x + ", " + y + ")", clearance.isBlocked(clearance.toColumn(x), clearance.toRow(y)));
+			}
+		}
+	}
+	
+}
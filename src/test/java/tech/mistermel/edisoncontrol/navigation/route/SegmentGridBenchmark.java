@@ -0,0 +1,94 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath.Projection;
+
+// Nearest-point and within-radius queries through the segment grid, against a scan over every
+// segment. Run like DWMPositionParserBenchmark, with SegmentGridBenchmark as the pattern.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentGridBenchmark {
+
+	private static final int QUERY_COUNT = 1024;
+	
+	// Waypoints of a random route, with 100 points per leg like the spline route
+	@Param({ "20", "200" })
+	private int waypoints;
+	
+	private ArcLengthPath path;
+	private final float[] queryX = new float[QUERY_COUNT];
+	private final float[] queryY = new float[QUERY_COUNT];
+	private final int[] within = new int[4096];
+	private final Projection projection = new Projection();
+	private int query;
+	
+	@Setup
+	public void setup() {
+		path = createRoute(new Random(1), waypoints, 100);
+		
+		Random random = new Random(2);
+		for(int i = 0; i < QUERY_COUNT; i++) {
+			float distance = random.nextFloat() * path.getLength();
+			queryX[i] = path.getX(distance) + (random.nextFloat() - 0.5f) * 4;
+			queryY[i] = path.getY(distance) + (random.nextFloat() - 0.5f) * 4;
+		}
+	}
+	
+	@Benchmark
+	public float gridNearest() {
+		int i = query++ & (QUERY_COUNT - 1);
+		path.project(queryX[i], queryY[i], projection);
+		return projection.getDistanceAlong();
+	}
+	
+	@Benchmark
+	public float linearNearest() {
+		int i = query++ & (QUERY_COUNT - 1);
+		path.project(queryX[i], queryY[i], 0, path.getLength(), projection);
+		return projection.getDistanceAlong();
+	}
+	
+	@Benchmark
+	public int gridWithinRadius() {
+		int i = query++ & (QUERY_COUNT - 1);
+		return path.findWithinRadius(queryX[i], queryY[i], 1, within);
+	}
+	
+	// Random walk between waypoints up to 10 meters apart, with straight legs
+	static ArcLengthPath createRoute(Random random, int waypoints, int pointsPerLeg) {
+		PackedRoute.Builder builder = new PackedRoute.Builder();
+		float x = 0, y = 0;
+		builder.add(x, y);
+		
+		for(int i = 1; i < waypoints; i++) {
+			float nextX = x + (random.nextFloat() - 0.5f) * 20;
+			float nextY = y + (random.nextFloat() - 0.5f) * 20;
+			for(int j = 1; j <= pointsPerLeg; j++) {
+				float t = (float) j / pointsPerLeg;
+				builder.add(x + (nextX - x) * t, y + (nextY - y) * t);
+			}
+			x = nextX;
+			y = nextY;
+		}
+		return new ArcLengthPath(builder.build());
+	}
+	
+}
@@ -0,0 +1,62 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import tech.mistermel.edisoncontrol.navigation.route.ArcLengthPath.Projection;
+
+public class SegmentGridTest {
+
+	@Test
+	public void gridFindsTheSameNearestPointAsAScan() {
+		ArcLengthPath path = SegmentGridBenchmark.createRoute(new Random(1), 50, 20);
+		Projection grid = new Projection();
+		Projection scan = new Projection();
+		
+		Random random = new Random(2);
+		for(int i = 0; i < 2000; i++) {
+			float distance = random.nextFloat() * path.getLength();
+			float x = path.getX(distance) + (random.nextFloat() - 0.5f) * 10;
+			float y = path.getY(distance) + (random.nextFloat() - 0.5f) * 10;
+			
+			path.project(x, y, grid);
+			path.project(x, y, 0, path.getLength(), scan);
+			assertEquals(Math.abs(scan.getCrossTrackError()), Math.abs(grid.getCrossTrackError()), 1e-4);
+		}
+	}
+	
+	@Test
+	public void withinRadiusFindsEverySegmentInTheCircle() {
+		ArcLengthPath path = SegmentGridBenchmark.createRoute(new Random(3), 50, 20);
+		int[] result = new int[path.getPointCount()];
+		
+		Random random = new Random(4);
+		for(int i = 0; i < 200; i++) {
+			float x = path.getX(random.nextFloat() * path.getLength());
+			float y = path.getY(random.nextFloat() * path.getLength());
+			int found = path.findWithinRadius(x, y, 2, result);
+			
+			// Checked against the points of the path, every point within the radius belongs to a found segment
+			for(int point = 0; point < path.getPointCount(); point++) {
+				float distance = path.getPointDistance(point);
+				if(Math.hypot(path.getX(distance) - x, path.getY(distance) - y) < 2) {
+					assertTrue(contains(result, found, point) || contains(result, found, point - 1));
+				}
+			}
+		}
+	}
+	
+	private static boolean contains(int[] values, int count, int value) {
+		for(int i = 0; i < count; i++) {
+			if(values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,90 @@
+package tech.mistermel.edisoncontrol.navigation.route;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class VelocityProfileTest {
+
+	private static final float MAX_SPEED = 1.5f;
+	private static final float MIN_SPEED = 0.1f;
+	private static final float MAX_ACCELERATION = 0.5f;
+	private static final float MAX_DECELERATION = 0.8f;
+	private static final float MAX_LATERAL_ACCELERATION = 0.5f;
+	private static final float TOLERANCE = 1e-3f;
+	
+	@Test
+	public void straightPathStaysWithinTheSpeedAndAccelerationLimits() {
+		// 40 meters in pieces of a meter, a single straight piece would be tessellated into its end points only
+		List<CubicSpline> pieces = new ArrayList<>();
+		for(int i = 0; i < 40; i++) {
+			pieces.add(CubicSpline.hermite(i, 0, i + 1, 0, 1, 0, 1, 0));
+		}
+		ArcLengthPath path = new ArcLengthPath(CubicSpline.concat(pieces), 0.01f);
+		VelocityProfile profile = createProfile(path);
+		
+		assertEquals(MIN_SPEED, profile.getSpeed(0), TOLERANCE);
+		assertEquals(MIN_SPEED, profile.getSpeed(path.getLength()), TOLERANCE);
+		assertEquals(MAX_SPEED, profile.getSpeed(path.getLength() / 2), TOLERANCE);
+		
+		for(int i = 0; i < path.getPointCount(); i++) {
+			float distance = path.getPointDistance(i);
+			float remaining = path.getLength() - distance;
+			float speed = profile.getSpeed(distance);
+			
+			assertTrue(speed <= MAX_SPEED + TOLERANCE);
+			assertTrue(speed <= Math.sqrt(MIN_SPEED * MIN_SPEED + 2 * MAX_ACCELERATION * distance) + TOLERANCE);
+			assertTrue(speed <= Math.sqrt(MIN_SPEED * MIN_SPEED + 2 * MAX_DECELERATION * remaining) + TOLERANCE);
+		}
+	}
+	
+	@Test
+	public void curveIsLimitedByLateralAcceleration() {
+		// Three quarters of a circle with a radius of 2 meters, long enough to get up to the speed of the curve
+		float radius = 2;
+		ArcLengthPath path = new ArcLengthPath(createArc(radius, 270, 27), 0.001f);
+		VelocityProfile profile = createProfile(path);
+		
+		for(int i = 0; i < path.getPointCount(); i++) {
+			float curvature = Math.abs(path.getPointCurvature(i));
+			float speed = profile.getSpeed(path.getPointDistance(i));
+			if(curvature > 0) {
+				assertTrue(speed <= Math.max(MIN_SPEED, Math.sqrt(MAX_LATERAL_ACCELERATION / curvature)) + TOLERANCE);
+			}
+			
+			// Speeding up and slowing down between points stays within the limits
+			if(i > 0) {
+				float distance = path.getPointDistance(i) - path.getPointDistance(i - 1);
+				float previous = profile.getSpeed(path.getPointDistance(i - 1));
+				assertTrue(speed * speed <= previous * previous + 2 * MAX_ACCELERATION * distance + TOLERANCE);
+				assertTrue(previous * previous <= speed * speed + 2 * MAX_DECELERATION * distance + TOLERANCE);
+			}
+		}
+		
+		// Halfway around the circle, v = sqrt(a * r)
+		assertEquals(Math.sqrt(MAX_LATERAL_ACCELERATION * radius), profile.getSpeed(path.getLength() / 2), 0.01);
+	}
+	
+	// Circle around the origin from angle 0, every segment is the usual cubic approximation of its part of the arc
+	private static CubicSpline createArc(float radius, float degrees, int segments) {
+		double step = Math.toRadians(degrees) / segments;
+		float tangent = (float) (4 * Math.tan(step / 4) * radius);
+		
+		List<CubicSpline> curves = new ArrayList<>();
+		for(int i = 0; i < segments; i++) {
+			double from = i * step, to = (i + 1) * step;
+			curves.add(CubicSpline.hermite((float) (radius * Math.cos(from)), (float) (radius * Math.sin(from)), (float) (radius * Math.cos(to)), (float) (radius * Math.sin(to)),
+					(float) (-Math.sin(from) * tangent), (float) (Math.cos(from) * tangent), (float) (-Math.sin(to) * tangent), (float) (Math.cos(to) * tangent)));
+		}
+		return CubicSpline.concat(curves);
+	}
+	
+	private static VelocityProfile createProfile(ArcLengthPath path) {
+		return new VelocityProfile(path, MAX_SPEED, MIN_SPEED, MAX_ACCELERATION, MAX_DECELERATION, MAX_LATERAL_ACCELERATION);
+	}
+	
+}
@@ -0,0 +1,85 @@
+package tech.mistermel.edisoncontrol.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tech.mistermel.edisoncontrol.ConfigHandler;
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.scheduler.ManualClock;
+import tech.mistermel.edisoncontrol.serial.SerialInterface;
+import tech.mistermel.edisoncontrol.telemetry.BlackBoxRecorder;
+
+public class ReplayEngineTest {
+
+	private static final long START_TIME = TimeUnit.SECONDS.toNanos(100);
+	private static final long POSITION_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void replayGivesTheSameCommandsAtAnySpeed() throws IOException {
+		JSONObject config = ConfigHandler.read(null);
+		File directory = this.record(config);
+		
+		// As fast as possible, and paced at a hundred times real time
+		List<ReplayEngine.Output> first = new ReplayEngine(config, 0).run(directory);
+		List<ReplayEngine.Output> second = new ReplayEngine(config, 100).run(directory);
+		
+		assertFalse(first.isEmpty());
+		assertTrue(first.stream().anyMatch(output -> output.getSpeed() != 0));
+		
+		assertEquals(first.size(), second.size());
+		for(int i = 0; i < first.size(); i++) {
+			ReplayEngine.Output expected = first.get(i), actual = second.get(i);
+			assertEquals(expected.getTime(), actual.getTime());
+			assertEquals(expected.getSpeed(), actual.getSpeed());
+			assertEquals(expected.getSteer(), actual.getSteer());
+			assertEquals(expected.getSource(), actual.getSource());
+		}
+	}
+	
+	// Ten seconds of a robot driving along the y axis, with a position every 100 ms and a heading
+	// in between. Navigation is started once it reaches the first waypoint.
+	private File record(JSONObject config) throws IOException {
+		File directory = folder.newFolder();
+		
+		// The recorder reads the clock of the instance when it creates a segment
+		ManualClock clock = new ManualClock(START_TIME);
+		EdisonControl.startReplay(new JSONObject(config.toString()).put("blackbox", new JSONObject().put("enabled", false)), clock, SerialInterface::new);
+		BlackBoxRecorder recorder = new BlackBoxRecorder(new JSONObject().put("directory", directory.getPath()));
+		recorder.start();
+		
+		long time = START_TIME;
+		recorder.recordPacketReceived(time, packet("nav_createwaypoint").put("x", 0).put("y", 1).toString().getBytes());
+		recorder.recordPacketReceived(time, packet("nav_createwaypoint").put("x", 0).put("y", 10).toString().getBytes());
+		
+		for(int i = 0; i < 100; i++) {
+			time += POSITION_INTERVAL;
+			recorder.recordPosition(time, 0, i * 0.05f, 80);
+			// A heading of 0 points along the negative y axis and 90 along the positive x axis
+			recorder.recordHeading(time + POSITION_INTERVAL / 2, 180, 0);
+			
+			if(i == 20) {
+				recorder.recordPacketReceived(time, packet("nav_toggle").put("enabled", true).toString().getBytes());
+			}
+		}
+		return directory;
+	}
+	
+	private static JSONObject packet(String type) {
+		return new JSONObject().put("type", type);
+	}
+	
+}
@@ -0,0 +1,59 @@
+package tech.mistermel.edisoncontrol.serial;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Compares the byte-level lep parser with the String based parsing it replaced.
+// Run with: mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+// java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main DWMPositionParserBenchmark -prof gc
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DWMPositionParserBenchmark {
+
+	private final byte[] line = " POS,12.34,-5.67,0.89,87\r".getBytes(StandardCharsets.US_ASCII);
+	private final int length = line.length - 1;
+	private final DWMPositionParser parser = new DWMPositionParser();
+	
+	@Benchmark
+	public void byteParser(Blackhole blackhole) {
+		if(parser.parse(line, 0, length)) {
+			blackhole.consume(parser.getX());
+			blackhole.consume(parser.getY());
+			blackhole.consume(parser.getQuality());
+		}
+	}
+	
+	// The path DWMSerialInterface used before: trim, split and parse every field from a String
+	@Benchmark
+	public void stringSplit(Blackhole blackhole) {
+		String str = new String(line, 0, length).trim();
+		if(str.equals("dwm>")) {
+			return;
+		}
+		
+		String[] args = str.split(",");
+		if(args.length != 5 || !args[0].equals("POS")) {
+			return;
+		}
+		
+		blackhole.consume(Float.parseFloat(args[1]));
+		blackhole.consume(Float.parseFloat(args[2]));
+		blackhole.consume(Integer.parseInt(args[4]));
+	}
+	
+}
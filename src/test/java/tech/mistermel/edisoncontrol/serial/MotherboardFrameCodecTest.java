@@ -0,0 +1,103 @@
+package tech.mistermel.edisoncontrol.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+public class MotherboardFrameCodecTest {
+
+	private static final int WARMUP_ITERATIONS = 200000;
+	private static final int MEASURED_ITERATIONS = 100000;
+	private static final int MEASURED_ROUNDS = 3;
+	
+	private final MotherboardFrameCodec encoder = new MotherboardFrameCodec();
+	private final MotherboardFrameCodec decoder = new MotherboardFrameCodec();
+	private final FeedbackFrameParser parser = new FeedbackFrameParser(frame -> {});
+	
+	@Test
+	public void commandRoundTrip() {
+		byte[] frame = encoder.encodeCommand((short) -120, (short) 300);
+		
+		assertTrue(decoder.decodeCommand(frame, 0));
+		assertEquals(-120, decoder.getSteer());
+		assertEquals(300, decoder.getSpeed());
+	}
+	
+	@Test
+	public void feedbackRoundTrip() {
+		byte[] frame = encoder.encodeFeedback(10, -20, 150, -140, 36.54, 31.2, 1);
+		
+		assertTrue(decoder.decodeFeedback(frame, 0));
+		assertEquals(10, decoder.getCmd1());
+		assertEquals(-20, decoder.getCmd2());
+		assertEquals(150, decoder.getSpeedR());
+		assertEquals(-140, decoder.getSpeedL());
+		assertEquals(36.54, decoder.getBattVoltage(), 1e-9);
+		assertEquals(31.2, decoder.getBoardTemp(), 1e-9);
+		assertEquals(1, decoder.getCmdLed());
+	}
+	
+	@Test
+	public void rejectsBadChecksum() {
+		byte[] frame = encoder.encodeFeedback(10, -20, 150, -140, 36.54, 31.2, 1);
+		frame[6] ^= 0x01;
+		
+		assertFalse(decoder.decodeFeedback(frame, 0));
+	}
+	
+	@Test
+	public void warmedUpPathDoesNotAllocate() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		
+		long threadId = Thread.currentThread().getId();
+		
+		this.exercise(WARMUP_ITERATIONS);
+		
+		// Measures the cost of the measurement itself, so only the loop is left
+		long overheadStart = threadBean.getThreadAllocatedBytes(threadId);
+		long overhead = threadBean.getThreadAllocatedBytes(threadId) - overheadStart;
+		
+		// The JIT can allocate a few bytes once when it recompiles during a round, for example after
+		// other tests in the same JVM used these classes differently. An allocation in the path
+		// itself shows up in every round.
+		long allocated = 0;
+		for(int round = 0; round < MEASURED_ROUNDS; round++) {
+			long start = threadBean.getThreadAllocatedBytes(threadId);
+			long checksum = this.exercise(MEASURED_ITERATIONS);
+			allocated = threadBean.getThreadAllocatedBytes(threadId) - start - overhead;
+			
+			assertTrue(checksum != 0);
+			if(allocated == 0) {
+				break;
+			}
+		}
+		assertEquals("Bytes allocated by " + MEASURED_ITERATIONS + " encode/decode iterations", 0, allocated);
+	}
+	
+	// Encodes and decodes both frame types, and feeds the feedback frames through the parser
+	private long exercise(int iterations) {
+		long checksum = 0;
+		for(int i = 0; i < iterations; i++) {
+			byte[] command = encoder.encodeCommand((short) i, (short) -i);
+			if(decoder.decodeCommand(command, 0)) {
+				checksum += decoder.getSteer() - decoder.getSpeed();
+			}
+			
+			byte[] feedback = encoder.encodeFeedback(i, -i, i & 0xFF, -(i & 0xFF), 36.5, 30.1, 0);
+			if(decoder.decodeFeedback(feedback, 0)) {
+				checksum += decoder.getSpeedR();
+			}
+			parser.feed(feedback, feedback.length);
+		}
+		return checksum + parser.getFramesParsed();
+	}
+	
+}
@@ -0,0 +1,58 @@
+package tech.mistermel.edisoncontrol.serial.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TcpTransportTest {
+
+	@Test(timeout = 10000)
+	public void reconnectsAfterRemoteClose() throws Exception {
+		BlockingQueue<Boolean> connectionChanges = new LinkedBlockingQueue<>();
+		BlockingQueue<Byte> received = new LinkedBlockingQueue<>();
+		
+		try(ServerSocket server = new ServerSocket(0)) {
+			TcpTransport transport = new TcpTransport("localhost", server.getLocalPort());
+			transport.setListener((buffer, length) -> {
+				for(int i = 0; i < length; i++) {
+					received.add(buffer[i]);
+				}
+			});
+			transport.setConnectionListener(connectionChanges::add);
+			
+			assertTrue(transport.open());
+			try {
+				try(Socket first = server.accept()) {
+					this.send(first, 1);
+					assertEquals(Byte.valueOf((byte) 1), received.poll(5, TimeUnit.SECONDS));
+				}
+				
+				assertEquals(Boolean.FALSE, connectionChanges.poll(5, TimeUnit.SECONDS));
+				
+				try(Socket second = server.accept()) {
+					assertEquals(Boolean.TRUE, connectionChanges.poll(5, TimeUnit.SECONDS));
+					
+					this.send(second, 2);
+					assertEquals(Byte.valueOf((byte) 2), received.poll(5, TimeUnit.SECONDS));
+				}
+			} finally {
+				transport.close();
+			}
+		}
+	}
+	
+	private void send(Socket socket, int value) throws Exception {
+		OutputStream out = socket.getOutputStream();
+		out.write(value);
+		out.flush();
+	}
+	
+}
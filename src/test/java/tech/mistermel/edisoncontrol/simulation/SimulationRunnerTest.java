@@ -0,0 +1,33 @@
+package tech.mistermel.edisoncontrol.simulation;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import tech.mistermel.edisoncontrol.ConfigHandler;
+import tech.mistermel.edisoncontrol.navigation.Location;
+
+public class SimulationRunnerTest {
+
+	private static final long TIMEOUT = TimeUnit.MINUTES.toNanos(2);
+	
+	// The bundled configuration with its simulation settings, about 15 seconds of driving
+	@Test
+	public void smallMissionIsCompletedCloseToTheRoute() throws IOException {
+		JSONObject config = ConfigHandler.read(null);
+		List<Location> waypoints = Arrays.asList(new Location(0, 0), new Location(6, 0), new Location(6, 4), new Location(0, 4));
+		
+		SimulationRunner.Result result = SimulationRunner.run(config, waypoints, TIMEOUT);
+		assertTrue(result.toString(), result.isCompleted());
+		assertTrue(result.toString(), result.getMaxCrossTrackError() < 0.3);
+		assertTrue(result.toString(), result.getMeanCrossTrackError() < 0.1);
+		assertTrue(result.toString(), Math.hypot(result.getEndX(), result.getEndY() - 4) < 0.5);
+	}
+	
+}
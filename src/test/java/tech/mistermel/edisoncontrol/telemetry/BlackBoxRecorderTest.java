@@ -0,0 +1,155 @@
+package tech.mistermel.edisoncontrol.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tech.mistermel.edisoncontrol.EdisonControl;
+import tech.mistermel.edisoncontrol.scheduler.LoopScheduler;
+import tech.mistermel.edisoncontrol.scheduler.ManualClock;
+import tech.mistermel.edisoncontrol.serial.SerialInterface;
+
+public class BlackBoxRecorderTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+	// A position record takes 32 bytes, so a segment holds 127 of them
+	private static final int POSITIONS_PER_SEGMENT = (SEGMENT_SIZE - BlackBoxRecorder.SEGMENT_HEADER_SIZE) / 32;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ManualClock clock;
+	private LoopScheduler scheduler;
+	private File directory;
+	
+	// The recorder takes its clock and the scheduler that prepares segments from the instance
+	@Before
+	public void setup() throws IOException {
+		this.clock = new ManualClock(0);
+		EdisonControl edisonControl = EdisonControl.startReplay(new JSONObject().put("blackbox", new JSONObject().put("enabled", false)), clock, SerialInterface::new);
+		this.scheduler = edisonControl.getScheduler();
+		this.directory = folder.newFolder();
+	}
+	
+	@Test
+	public void recordsAreReadBackAcrossSegments() throws IOException {
+		BlackBoxRecorder recorder = this.createRecorder(16);
+		recorder.start();
+		
+		// About 88 bytes a round, enough for eight segments
+		int count = POSITIONS_PER_SEGMENT * 3;
+		for(int i = 0; i < count; i++) {
+			this.step();
+			recorder.recordPosition(clock.nanoTime(), i, -i, i % 100);
+			recorder.recordHeading(clock.nanoTime(), i * 0.5f, Float.NaN);
+			recorder.recordPacketSent(clock.nanoTime(), "{\"type\":" + i + "}");
+		}
+		
+		assertEquals(0, recorder.getDroppedRecords());
+		assertTrue(BlackBoxRecorder.listSegments(directory).length > 2);
+		
+		List<String> records = new ArrayList<>();
+		BlackBoxReader reader = new BlackBoxReader(directory);
+		reader.read((type, time, payload) -> records.add(describe(type, time, payload)));
+		
+		assertEquals(count * 3, records.size());
+		for(int i = 0; i < count; i++) {
+			long time = (i + 1) * 1000000L;
+			assertEquals("position " + time + " " + (float) i + " " + (float) -i + " " + i % 100, records.get(i * 3));
+			assertEquals("heading " + time + " " + i * 0.5f + " NaN", records.get(i * 3 + 1));
+			assertEquals("sent " + time + " {\"type\":" + i + "}", records.get(i * 3 + 2));
+		}
+		assertEquals(count * 3, reader.getRecordsRead());
+		assertEquals(0, reader.getRecordsSkipped());
+	}
+	
+	@Test
+	public void onlyTheNewestSegmentsAreKept() throws IOException {
+		BlackBoxRecorder recorder = this.createRecorder(3);
+		recorder.start();
+		
+		int count = POSITIONS_PER_SEGMENT * 10;
+		for(int i = 0; i < count; i++) {
+			this.step();
+			recorder.recordPosition(clock.nanoTime(), i, 0, 0);
+		}
+		
+		// Up to one more while the next segment is prepared ahead of time
+		assertTrue(BlackBoxRecorder.listSegments(directory).length <= 4);
+		
+		List<Float> xs = new ArrayList<>();
+		new BlackBoxReader(directory).read((type, time, payload) -> xs.add(payload.getFloat()));
+		
+		// The oldest records are gone, the rest ends at the last one without gaps
+		assertTrue(xs.size() >= POSITIONS_PER_SEGMENT * 2 && xs.size() < count);
+		for(int i = 0; i < xs.size(); i++) {
+			assertEquals(count - xs.size() + i, xs.get(i), 0);
+		}
+	}
+	
+	@Test
+	public void unfinishedRecordIsSkipped() throws IOException {
+		BlackBoxRecorder recorder = this.createRecorder(16);
+		recorder.start();
+		for(int i = 0; i < 3; i++) {
+			this.step();
+			recorder.recordPosition(clock.nanoTime(), i, 0, 0);
+		}
+		
+		// As if the program stopped while writing the second record, which starts after the header and the first one
+		File segment = BlackBoxRecorder.listSegments(directory)[0];
+		try(RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.seek(BlackBoxRecorder.SEGMENT_HEADER_SIZE + 32);
+			file.writeInt(Integer.reverseBytes(-(BlackBoxRecorder.RECORD_HEADER_SIZE + 12)));
+		}
+		
+		List<Float> xs = new ArrayList<>();
+		BlackBoxReader reader = new BlackBoxReader(directory);
+		reader.read((type, time, payload) -> xs.add(payload.getFloat()));
+		
+		assertEquals(2, xs.size());
+		assertEquals(0, xs.get(0), 0);
+		assertEquals(2, xs.get(1), 0);
+		assertEquals(1, reader.getRecordsSkipped());
+	}
+	
+	private BlackBoxRecorder createRecorder(int maxSegments) {
+		return new BlackBoxRecorder(new JSONObject()
+				.put("directory", directory.getPath())
+				.put("segment_size", SEGMENT_SIZE)
+				.put("max_segments", maxSegments));
+	}
+	
+	// A millisecond further, running the segment preparation the recorder scheduled
+	private void step() {
+		clock.advance(1000000);
+		scheduler.runUntil(clock.nanoTime());
+	}
+	
+	private static String describe(int type, long time, ByteBuffer payload) {
+		switch(type) {
+		case BlackBoxRecorder.TYPE_POSITION:
+			return "position " + time + " " + payload.getFloat() + " " + payload.getFloat() + " " + payload.getInt();
+		case BlackBoxRecorder.TYPE_HEADING:
+			return "heading " + time + " " + payload.getFloat() + " " + payload.getFloat();
+		case BlackBoxRecorder.TYPE_PACKET_SENT:
+			return "sent " + time + " " + StandardCharsets.UTF_8.decode(payload);
+		default:
+			return "unknown " + type;
+		}
+	}
+	
+}